@@ -13,6 +13,8 @@ import system.TransitSystem;
 /** An application of transit system. */
 public class Start extends Application {
 
+  private TransitSystem transitSystem; // the transit system model of this application
+
   /**
    * Launch this application.
    *
@@ -31,7 +33,7 @@ public class Start extends Application {
   @Override
   public void start(Stage primaryStage) throws IOException {
     /* get an instance of the transit system model */
-    TransitSystem transitSystem = TransitSystem.getInstance();
+    transitSystem = TransitSystem.getInstance();
 
     /* load view from fxml file and set up view of this scene */
     FXMLLoader loginPageLoader =
@@ -49,4 +51,12 @@ public class Start extends Application {
     primaryStage.setResizable(true);
     primaryStage.show();
   }
+
+  /** Write rides kept in memory of the transit system when this application stops. */
+  @Override
+  public void stop() {
+    if (transitSystem != null) {
+      transitSystem.getSystemMap().flushOriginDestinationMatrices();
+    }
+  }
 }
@@ -0,0 +1,265 @@
+package benchmark;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import javafx.util.Pair;
+import map.SystemMap;
+import ride.Ride;
+
+/**
+ * A network generator builds synthetic system maps for benchmarks, by adding routes through
+ * SystemMap.addNewRoute just like an admin user does. Networks can be laid out as a grid, as
+ * radial lines with rings, or as hubs with feeder routes, with both one way and both way routes
+ * that share interchange stations/stops. Edge distances are random but repeatable for a seed.
+ */
+public class NetworkGenerator {
+
+  /** The layout of a generated network. */
+  public enum Layout {
+    /* bus routes along rows, subway routes along columns, every crossing is an interchange */
+    GRID,
+    /* subway lines from one center, bus rings across the lines */
+    RADIAL,
+    /* a subway trunk line through hubs, bus feeder routes from each hub, express links */
+    HUB_AND_SPOKE
+  }
+
+  /* the number of feeder routes starting from each hub */
+  private static final int FEEDERS_PER_HUB = 4;
+
+  private final Random random;
+  private SystemMap systemMap;
+  private int routeCount;
+
+  /**
+   * Create a new network generator.
+   *
+   * @param seed seed of random edge distances.
+   */
+  private NetworkGenerator(long seed) {
+    this.random = new Random(seed);
+  }
+
+  /**
+   * Get an instance of network generator.
+   *
+   * @param seed seed of random edge distances.
+   * @return an instance of NetworkGenerator.
+   */
+  public static NetworkGenerator getInstance(long seed) {
+    return new NetworkGenerator(seed);
+  }
+
+  /**
+   * Generate a new system map with this layout.
+   *
+   * @param layout the layout of this network.
+   * @param stationCount the number of stations/stops in this network, at least 2.
+   * @return a new system map with all routes of this network added.
+   */
+  public SystemMap generate(Layout layout, int stationCount) {
+    systemMap = new SystemMap();
+    routeCount = 0;
+    if (layout == Layout.GRID) {
+      generateGrid(stationCount);
+    } else if (layout == Layout.RADIAL) {
+      generateRadial(stationCount);
+    } else {
+      generateHubAndSpoke(stationCount);
+    }
+    return systemMap;
+  }
+
+  /**
+   * Get the number of routes added to the last generated network.
+   *
+   * @return the number of routes added.
+   */
+  public int getRouteCount() {
+    return routeCount;
+  }
+
+  /**
+   * Lay out stations/stops row by row. Each row is a bus route, and every other row is one way in
+   * alternating directions. Each column is a both way subway route.
+   *
+   * @param stationCount the number of stations/stops.
+   */
+  private void generateGrid(int stationCount) {
+    int columns = (int) Math.ceil(Math.sqrt(stationCount));
+    int rows = (stationCount + columns - 1) / columns;
+    for (int row = 0; row < rows; row++) {
+      Route route = new Route();
+      for (int column = 0; column < columns && row * columns + column < stationCount; column++) {
+        route.add("G" + row + "_" + column, column, row);
+      }
+      if (row % 4 == 3) {
+        route.reverse();
+      }
+      addRoute(Ride.TransitType.BUS, row % 2 == 0 ? "BOTH WAY" : "ONE WAY", route);
+    }
+    for (int column = 0; column < columns; column++) {
+      Route route = new Route();
+      for (int row = 0; row < rows && row * columns + column < stationCount; row++) {
+        route.add("G" + row + "_" + column, column, row);
+      }
+      addRoute(Ride.TransitType.SUBWAY, "BOTH WAY", route);
+    }
+  }
+
+  /**
+   * Lay out subway lines from one center station, and one way bus rings every few stations/stops
+   * out, alternating clockwise and counterclockwise.
+   *
+   * @param stationCount the number of stations/stops.
+   */
+  private void generateRadial(int stationCount) {
+    int lines = Math.max(3, (int) Math.round(Math.sqrt(stationCount) / 2));
+    int lineLength = (int) Math.ceil((stationCount - 1) / (double) lines);
+    int ringGap = Math.max(2, lineLength / 8);
+    int remaining = stationCount - 1;
+    int[] lengths = new int[lines];
+    for (int line = 0; line < lines; line++) {
+      lengths[line] = Math.min(lineLength, remaining);
+      remaining -= lengths[line];
+    }
+    for (int line = 0; line < lines; line++) {
+      Route route = new Route();
+      route.add("Center", 0, 0);
+      for (int stop = 1; stop <= lengths[line]; stop++) {
+        addRadialStop(route, line, lines, stop);
+      }
+      addRoute(Ride.TransitType.SUBWAY, "BOTH WAY", route);
+    }
+    for (int stop = ringGap; stop <= lineLength; stop += ringGap) {
+      Route route = new Route();
+      for (int line = 0; line < lines; line++) {
+        if (lengths[line] >= stop) {
+          addRadialStop(route, line, lines, stop);
+        }
+      }
+      if (route.size() > 2) { // close this ring
+        route.add(route.names.get(0), route.coordinates.get(0));
+      }
+      if ((stop / ringGap) % 2 == 0) {
+        route.reverse();
+      }
+      addRoute(Ride.TransitType.BUS, "ONE WAY", route);
+    }
+  }
+
+  /**
+   * Add a station/stop on a radial line to this route.
+   *
+   * @param route the route to add to.
+   * @param line index of the radial line.
+   * @param lines the number of radial lines.
+   * @param stop how many stations/stops this station/stop is away from the center.
+   */
+  private void addRadialStop(Route route, int line, int lines, int stop) {
+    double angle = 2 * Math.PI * line / lines;
+    route.add(
+        "R" + line + "_" + stop,
+        (int) Math.round(stop * Math.cos(angle)),
+        (int) Math.round(stop * Math.sin(angle)));
+  }
+
+  /**
+   * Lay out hubs on a both way subway trunk line. Each hub has both way bus feeder routes, and
+   * the end of each feeder route has a one way express bus route to the same feeder of next hub.
+   *
+   * @param stationCount the number of stations/stops.
+   */
+  private void generateHubAndSpoke(int stationCount) {
+    int hubs = Math.max(2, (int) Math.round(Math.cbrt(stationCount)));
+    int feeders = hubs * FEEDERS_PER_HUB;
+    int feederLength = Math.max(0, (stationCount - hubs) / feeders);
+    int extra = Math.max(0, stationCount - hubs - feederLength * feeders);
+    Route trunk = new Route();
+    for (int hub = 0; hub < hubs; hub++) {
+      trunk.add("H" + hub, hub * 10, 0);
+    }
+    addRoute(Ride.TransitType.SUBWAY, "BOTH WAY", trunk);
+    String[][] feederEnds = new String[hubs][FEEDERS_PER_HUB];
+    for (int hub = 0; hub < hubs; hub++) {
+      for (int feeder = 0; feeder < FEEDERS_PER_HUB; feeder++) {
+        int length = feederLength;
+        if (extra > 0) { // spread stations/stops left over across feeders
+          int share = (extra + feeders - 1) / feeders;
+          length += Math.min(share, extra);
+          extra -= Math.min(share, extra);
+        }
+        Route route = new Route();
+        route.add("H" + hub, hub * 10, 0);
+        for (int stop = 1; stop <= length; stop++) {
+          route.add("F" + hub + "_" + feeder + "_" + stop, hub * 10 + feeder, stop);
+        }
+        feederEnds[hub][feeder] = route.names.get(route.size() - 1);
+        addRoute(Ride.TransitType.BUS, "BOTH WAY", route);
+      }
+    }
+    for (int hub = 0; hub + 1 < hubs; hub++) {
+      for (int feeder = 0; feeder < FEEDERS_PER_HUB; feeder++) {
+        Route route = new Route();
+        route.add(feederEnds[hub][feeder], hub * 10 + feeder, 0);
+        route.add(feederEnds[hub + 1][feeder], hub * 10 + 10 + feeder, 0);
+        addRoute(Ride.TransitType.BUS, "ONE WAY", route);
+      }
+    }
+  }
+
+  /**
+   * Add a route through the system map, with a random distance between adjacent stations/stops.
+   *
+   * @param transitType whether this route is bus route or subway route.
+   * @param direction whether this route is both way or one way.
+   * @param route stations/stops on this route in order.
+   */
+  private void addRoute(Ride.TransitType transitType, String direction, Route route) {
+    if (route.size() < 2 || route.names.get(0).equals(route.names.get(1))) {
+      return; // a route needs two different stations/stops
+    }
+    StringBuilder routeString = new StringBuilder();
+    for (int i = 0; i + 1 < route.size(); i++) {
+      if (i > 0) {
+        routeString.append(" | ");
+      }
+      double distance = (5 + random.nextInt(46)) / 10.0;
+      routeString
+          .append(route.names.get(i))
+          .append("->")
+          .append(distance)
+          .append("->")
+          .append(route.names.get(i + 1));
+    }
+    systemMap.addNewRoute(
+        transitType, direction, "Route " + routeCount++, route.coordinates, routeString.toString());
+  }
+
+  /** A route is a list of station/stop names with their coordinates, before it is added. */
+  private static class Route {
+
+    private final List<String> names = new ArrayList<>();
+    private final List<Pair<Integer, Integer>> coordinates = new ArrayList<>();
+
+    private void add(String name, int x, int y) {
+      add(name, new Pair<>(x, y));
+    }
+
+    private void add(String name, Pair<Integer, Integer> coordinate) {
+      names.add(name);
+      coordinates.add(coordinate);
+    }
+
+    private int size() {
+      return names.size();
+    }
+
+    private void reverse() {
+      Collections.reverse(names);
+      Collections.reverse(coordinates);
+    }
+  }
+}
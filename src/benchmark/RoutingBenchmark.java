@@ -0,0 +1,217 @@
+package benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.List;
+import java.util.Random;
+import java.util.function.IntConsumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import log.LogManager;
+import map.SystemMap;
+import map.Vertex;
+import ride.Ride;
+
+/**
+ * A routing benchmark measures the routing queries of a system map on generated networks,
+ * including shortest path with and without the contraction hierarchy, path to farthest end and
+ * vertices by transit type. For each query it reports throughput, latency percentiles and bytes
+ * allocated per query. Shortest path trees are not cached while shortest paths are measured, so
+ * every query searches the graph or the hierarchy, and no run reads trees cached by another.
+ *
+ * <p>Usage: RoutingBenchmark [layouts] [station counts] [queries], for example "GRID,RADIAL
+ * 100,1000 200". Run it from the project directory, the log directory src/log is used.
+ */
+public class RoutingBenchmark {
+
+  /* stop measuring a query after this long, even if not all queries have run */
+  private static final long TIME_LIMIT_MILLIS = 10000;
+  /* stop waiting for the contraction hierarchy after this long */
+  private static final long HIERARCHY_WAIT_MILLIS = 300000;
+
+  private final int queries;
+  private final Random random;
+
+  /**
+   * Create a new routing benchmark.
+   *
+   * @param queries the number of measured queries of each kind.
+   * @param seed seed of generated networks and random queries.
+   */
+  private RoutingBenchmark(int queries, long seed) {
+    this.queries = queries;
+    this.random = new Random(seed);
+  }
+
+  /**
+   * Run routing benchmarks.
+   *
+   * @param args layouts, station counts and the number of queries, all optional.
+   */
+  public static void main(String[] args) throws InterruptedException {
+    /* log manager turns logging on when it is initialized, turn it off for benchmarks */
+    LogManager.getInstance();
+    Logger.getLogger("Transit System Logger").setLevel(Level.OFF);
+    List<NetworkGenerator.Layout> layouts =
+        new ArrayList<>(Arrays.asList(NetworkGenerator.Layout.values()));
+    if (args.length > 0) {
+      layouts.clear();
+      for (String layout : args[0].split(",")) {
+        layouts.add(NetworkGenerator.Layout.valueOf(layout));
+      }
+    }
+    int[] stationCounts = {100, 1000, 10000, 50000};
+    if (args.length > 1) {
+      stationCounts = Arrays.stream(args[1].split(",")).mapToInt(Integer::parseInt).toArray();
+    }
+    int queries = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+    RoutingBenchmark benchmark = new RoutingBenchmark(queries, 42);
+    for (NetworkGenerator.Layout layout : layouts) {
+      for (int stationCount : stationCounts) {
+        benchmark.run(layout, stationCount);
+      }
+    }
+  }
+
+  /**
+   * Generate a network and run every query on it.
+   *
+   * @param layout the layout of this network.
+   * @param stationCount the number of stations/stops in this network.
+   */
+  private void run(NetworkGenerator.Layout layout, int stationCount)
+      throws InterruptedException {
+    NetworkGenerator generator = NetworkGenerator.getInstance(random.nextLong());
+    long start = System.nanoTime();
+    SystemMap systemMap = generator.generate(layout, stationCount);
+    long generateMillis = (System.nanoTime() - start) / 1000000;
+    List<String> stations = new ArrayList<>();
+    for (Vertex vertex : systemMap.getGraph()) {
+      stations.add(vertex.getValue());
+    }
+    stations.sort(null); // the order of a hash set is not repeatable
+    System.out.println();
+    System.out.println(
+        layout
+            + ": "
+            + stations.size()
+            + " Stations/Stops, "
+            + generator.getRouteCount()
+            + " Routes, Generated In "
+            + generateMillis
+            + " ms");
+
+    String[] startNames = new String[queries];
+    String[] endNames = new String[queries];
+    Ride[] rides = new Ride[queries];
+    Ride.TransitType[] transitTypes = new Ride.TransitType[queries];
+    for (int i = 0; i < queries; i++) {
+      startNames[i] = stations.get(random.nextInt(stations.size()));
+      endNames[i] = stations.get(random.nextInt(stations.size()));
+      transitTypes[i] = Ride.TransitType.values()[random.nextInt(2)];
+      if (!systemMap.isServedBy(startNames[i], transitTypes[i])) {
+        transitTypes[i] = Ride.TransitType.values()[1 - transitTypes[i].ordinal()];
+      }
+      /* the path to farthest end is used to charge a ride with missed tap out */
+      rides[i] = Ride.getInstance(Calendar.getInstance(), startNames[i], transitTypes[i]);
+      rides[i].setTapOutLocation("(Missed Tap Out)");
+    }
+
+    systemMap.setShortestPathTreeCacheEnabled(false);
+    systemMap.setContractionHierarchyEnabled(false);
+    measure(
+        "getShortestPath (no hierarchy)",
+        i -> systemMap.getShortestPath(startNames[i], endNames[i]));
+    systemMap.setContractionHierarchyEnabled(true);
+    systemMap.getShortestPath(startNames[0], endNames[0]); // request the hierarchy
+    long deadline = System.currentTimeMillis() + HIERARCHY_WAIT_MILLIS;
+    start = System.nanoTime();
+    while (!systemMap.isContractionHierarchyReady() && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    if (systemMap.isContractionHierarchyReady()) {
+      System.out.println(
+          "Contraction Hierarchy Ready In " + (System.nanoTime() - start) / 1000000 + " ms");
+      measure(
+          "getShortestPath (hierarchy)",
+          i -> systemMap.getShortestPath(startNames[i], endNames[i]));
+    } else {
+      System.out.println("Contraction Hierarchy Not Ready, Skipped!");
+    }
+    systemMap.setShortestPathTreeCacheEnabled(true);
+    measure("getPathToFarthestEnd", i -> systemMap.getPathToFarthestEnd(startNames[i], rides[i]));
+    measure("getVerticesByTransitType", i -> systemMap.getVerticesByTransitType(transitTypes[i]));
+  }
+
+  /**
+   * Run a query for warm up, then measure it and print the result.
+   *
+   * @param name name of this query.
+   * @param query the query to run with index of its random input.
+   */
+  private void measure(String name, IntConsumer query) {
+    /* warm up with a tenth of queries */
+    long deadline = System.currentTimeMillis() + TIME_LIMIT_MILLIS / 10;
+    for (int i = 0; i < Math.max(1, queries / 10) && System.currentTimeMillis() < deadline; i++) {
+      query.accept(i);
+    }
+    long[] latencies = new long[queries];
+    int count = 0;
+    long allocatedBefore = getAllocatedBytes();
+    long start = System.nanoTime();
+    deadline = System.currentTimeMillis() + TIME_LIMIT_MILLIS;
+    while (count < queries && System.currentTimeMillis() < deadline) {
+      long queryStart = System.nanoTime();
+      query.accept(count);
+      latencies[count++] = System.nanoTime() - queryStart;
+    }
+    long totalNanos = System.nanoTime() - start;
+    long allocatedAfter = getAllocatedBytes();
+    Arrays.sort(latencies, 0, count);
+    String allocation =
+        allocatedBefore < 0
+            ? "n/a"
+            : String.format("%.0f B/op", (allocatedAfter - allocatedBefore) / (double) count);
+    System.out.println(
+        String.format(
+            "  %-32s %6d ops %12.1f ops/s   p50 %10.1f us   p90 %10.1f us   p99 %10.1f us"
+                + "   max %10.1f us   %s",
+            name,
+            count,
+            count * 1e9 / totalNanos,
+            getPercentile(latencies, count, 0.50) / 1e3,
+            getPercentile(latencies, count, 0.90) / 1e3,
+            getPercentile(latencies, count, 0.99) / 1e3,
+            latencies[count - 1] / 1e3,
+            allocation));
+  }
+
+  /**
+   * Get a percentile of sorted latencies.
+   *
+   * @param latencies sorted latencies in nanoseconds.
+   * @param count the number of latencies.
+   * @param percentile the percentile between 0 and 1.
+   * @return the latency at this percentile in nanoseconds.
+   */
+  private static long getPercentile(long[] latencies, int count, double percentile) {
+    int index = (int) Math.ceil(percentile * count) - 1;
+    return latencies[Math.max(0, Math.min(count - 1, index))];
+  }
+
+  /**
+   * Get the bytes allocated by this thread so far.
+   *
+   * @return bytes allocated by this thread, -1 if this JVM does not measure it.
+   */
+  private static long getAllocatedBytes() {
+    java.lang.management.ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+    if (threadBean instanceof com.sun.management.ThreadMXBean) {
+      return ((com.sun.management.ThreadMXBean) threadBean)
+          .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+    return -1;
+  }
+}
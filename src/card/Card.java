@@ -1,9 +1,11 @@
 package card;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
-import java.math.BigDecimal;
 import java.util.Observable;
 import log.LogManager;
+import money.Money;
 import ride.Ride;
 import ride.RideRecord;
 import serialize.SerializeManager;
@@ -14,8 +16,10 @@ import serialize.SerializeManager;
  */
 public class Card extends Observable implements Serializable {
 
-  /* The initial balance of a new card, may be modified by AdminUser. */
-  private static double INITIAL_BALANCE = 19;
+  /* serialVersionUID of the first card, its balance is moved to cents in readObject */
+  private static final long serialVersionUID = -5765698344889458340L;
+  /* The initial balance of a new card in cents, may be modified by AdminUser. */
+  private static long INITIAL_BALANCE_IN_CENTS = 1900;
   private final String cardId;
   /* The ride records of this card, which can be traced back to the time when this card is first
    * created. */
@@ -26,6 +30,8 @@ public class Card extends Observable implements Serializable {
    * transfer the balance (if positive) to another card.*/
   private State state;
 
+  private long balanceInCents;
+  /* balance of snapshots before fixed point money, only read to migrate them */
   private double balance;
 
   /**
@@ -38,8 +44,8 @@ public class Card extends Observable implements Serializable {
     this.cardId = cardId;
     /* set state of a new card to active by default */
     this.state = State.ACTIVE;
-    /* set balance of a new card according to INITIAL_BALANCE */
-    this.balance = INITIAL_BALANCE;
+    /* set balance of a new card according to INITIAL_BALANCE_IN_CENTS */
+    this.balanceInCents = INITIAL_BALANCE_IN_CENTS;
     /* create a new container to store ride records of this card */
     this.rideRecords = new RideRecord();
     this.addObserver(LogManager.getInstance());
@@ -66,7 +72,7 @@ public class Card extends Observable implements Serializable {
    * @param newInitialBalance the new balance of cards created after this modification.
    */
   public static void setInitialBalance(double newInitialBalance) {
-    INITIAL_BALANCE = newInitialBalance;
+    INITIAL_BALANCE_IN_CENTS = Money.toCents(newInitialBalance);
   }
 
   /**
@@ -104,10 +110,16 @@ public class Card extends Observable implements Serializable {
    * @return The current balance for this card.
    */
   public double getBalance() {
-    BigDecimal bigDecimal = new BigDecimal(Double.valueOf(this.balance).toString());
-    bigDecimal = bigDecimal.setScale(2, BigDecimal.ROUND_HALF_UP);
-    this.balance = bigDecimal.doubleValue();
-    return this.balance;
+    return Money.toDollars(balanceInCents);
+  }
+
+  /**
+   * Get the current balance of this card in cents.
+   *
+   * @return The current balance for this card in cents.
+   */
+  public long getBalanceInCents() {
+    return balanceInCents;
   }
 
   /**
@@ -116,9 +128,19 @@ public class Card extends Observable implements Serializable {
    * @param amount the amount of money to be deposited into this card.
    */
   public void addBalance(double amount) {
-    this.balance += amount;
+    addBalanceInCents(Money.toCents(amount));
+  }
+
+  /**
+   * Deposit money into this card, in cents.
+   *
+   * @param amountInCents the amount of money in cents to be deposited into this card.
+   */
+  public void addBalanceInCents(long amountInCents) {
+    this.balanceInCents += amountInCents;
     setChanged();
-    notifyObservers("Balance Added To Card " + cardId + " : $" + amount + ".");
+    notifyObservers(
+        "Balance Added To Card " + cardId + " : $" + Money.toDollars(amountInCents) + ".");
     /* serialize cards if balance is added */
     SerializeManager.getInstance().writeObject();
   }
@@ -130,22 +152,28 @@ public class Card extends Observable implements Serializable {
    */
   public void deductBalance(double amount) {
     /* round to 2 decimal point if there are more than 2 decimal point */
-    BigDecimal bigDecimal = new BigDecimal(Double.valueOf(amount).toString());
-    bigDecimal = bigDecimal.setScale(2, BigDecimal.ROUND_HALF_UP);
-    amount = bigDecimal.doubleValue();
-    this.balance -= amount;
-    if (amount != 0) {
+    deductBalanceInCents(Money.toCents(amount));
+  }
+
+  /**
+   * Deduct money from this card, in cents.
+   *
+   * @param amountInCents the amount of money in cents to be deducted from this card.
+   */
+  public void deductBalanceInCents(long amountInCents) {
+    this.balanceInCents -= amountInCents;
+    if (amountInCents != 0) {
       setChanged();
       notifyObservers(
           "Balance Deducted From Card "
               + cardId
               + " : $"
-              + amount
+              + Money.toDollars(amountInCents)
               + "."
               + System.lineSeparator()
               + "New Balance: "
               + "$"
-              + balance
+              + getBalance()
               + ".");
     }
     /* serialize cards if balance is deducted */
@@ -174,6 +202,20 @@ public class Card extends Observable implements Serializable {
     SerializeManager.getInstance().writeObject();
   }
 
+  /**
+   * Read a card from a snapshot, moving the balance of a snapshot before fixed point money into
+   * cents.
+   *
+   * @param in the stream to read this card from.
+   */
+  private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+    in.defaultReadObject();
+    if (balance != 0) {
+      balanceInCents = Money.toCents(balance);
+      balance = 0;
+    }
+  }
+
   /**
    * Report location, time, path, fare of  recent trips according to period.
    *
@@ -9,6 +9,7 @@ import java.util.Calendar;
 import java.util.HashMap;
 import java.util.Observable;
 import log.LogManager;
+import map.SystemMap;
 import ride.Ride;
 import ride.RideRecord;
 import serialize.SerializeManager;
@@ -20,18 +21,39 @@ import serialize.SerializeManager;
  */
 public class CardManager extends Observable implements Serializable {
 
+  /* serialVersionUID of the first card manager, whose snapshots have no system map yet */
+  private static final long serialVersionUID = 6705475476753866839L;
   /* A card pool to store cards by their ID. */
   private final HashMap<String, Card> cardPool;
   /* Total number of cards created in this transit system, including suspended card and removed
    * card. Total number fo card is used to generate cardId. */
   private int numOfCard;
+  /* The system map that keeps live load of stations/stops tapped at, set again by the transit
+   * system if this card manager is read from a snapshot before it kept one. */
+  private SystemMap systemMap;
 
-  /* Create a new CardManager. */
-  public CardManager() {
+  /**
+   * Create a new CardManager.
+   *
+   * @param systemMap the system map of this transit system.
+   */
+  public CardManager(SystemMap systemMap) {
     this.cardPool = new HashMap<>(); // create a new card pool to store cards by their ID.
+    this.systemMap = systemMap;
     this.addObserver(LogManager.getInstance());
   }
 
+  /**
+   * Set the system map of a card manager read from a snapshot before it kept one.
+   *
+   * @param systemMap the system map of this transit system.
+   */
+  public void restoreSystemMap(SystemMap systemMap) {
+    if (this.systemMap == null) {
+      this.systemMap = systemMap;
+    }
+  }
+
   /**
    * Create a new card. Increment total number of cards created in this transit system by 1.
    *
@@ -78,7 +100,7 @@ public class CardManager extends Observable implements Serializable {
       throws NoSuchCardException, NegativeBalanceException, SuspendedCardTapInException,
           RemovedCardTapInException {
     Card card = checkCard(cardId);
-    if (card.getBalance() <= 0) { // this card has negative balance
+    if (card.getBalanceInCents() <= 0) { // this card has negative balance
       throw new NegativeBalanceException();
     } else if (card.getState() == Card.State.SUSPENDED) { // this card is suspended
       throw new SuspendedCardTapInException();
@@ -87,6 +109,7 @@ public class CardManager extends Observable implements Serializable {
     } else {
       Ride newRide = Ride.getInstance(time, location, transitType);
       card.recordRide(newRide); // add a new ride to ride records of this card
+      systemMap.recordStationLoad(location, "TAP IN TIMES", time.getTimeInMillis());
       setChanged();
       notifyObservers(
           "Card "
@@ -127,6 +150,7 @@ public class CardManager extends Observable implements Serializable {
     ride = rides.getLatestRide();
     ride.setTapOutLocation(location); // record tap out location of this ride
     ride.setTapOutTime(time); // record tap out time of this ride
+    systemMap.recordStationLoad(location, "TAP OUT TIMES", time.getTimeInMillis());
     setChanged();
     notifyObservers(
         "Card " + cardId + " Tapped Out At " + location + ride.timeToString(ride.getTapOutTime()));
@@ -8,6 +8,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Observable;
 import log.LogManager;
+import money.Money;
 import ride.Ride;
 import ride.RideRecord.RideIterator;
 import serialize.SerializeManager;
@@ -102,9 +103,9 @@ public class CardholderManager extends Observable implements Serializable {
       throws NoSuchCardholderException, NoSuchCardException {
     Cardholder cardholder = checkCardholder(cardholderEmail);
     Card card1 = checkCard(cardholder, cardId1);
-    double balance = card1.getBalance();
-    card2.addBalance(balance);
-    card1.deductBalance(balance);
+    long balanceInCents = card1.getBalanceInCents();
+    card2.addBalanceInCents(balanceInCents);
+    card1.deductBalanceInCents(balanceInCents);
     removeCard(cardholderEmail, cardId1);
     setChanged();
     notifyObservers(
@@ -113,7 +114,7 @@ public class CardholderManager extends Observable implements Serializable {
             + " Transfer Balance Of Card "
             + cardId1
             + " $"
-            + balance
+            + Money.toDollars(balanceInCents)
             + " To Card "
             + card2.getCardId()
             + ".");
@@ -155,10 +155,7 @@ public class GoTransitPaneController extends Controller implements Observer {
     } else if (transitType.getValue() == null) {
       MessageBox.display("Notice", "Please select one transit type!");
       return false;
-    } else if (!getTransitSystem()
-        .getSystemMap()
-        .getVerticesByTransitType(transitType.getValue())
-        .contains(getTransitSystem().getSystemMap().getVertex(stationName))) {
+    } else if (!getTransitSystem().getSystemMap().isServedBy(stationName, transitType.getValue())) {
       MessageBox.display(
           "Notice", stationName + " is not on a " + transitType.getValue() + " route!");
       return false;
@@ -198,20 +195,13 @@ public class GoTransitPaneController extends Controller implements Observer {
       String cardId = cards.getValue().split("$")[0].split("\\s+")[2];
       if (getLoggedInCardholder().getMyCards().get(cardId).getRideRecords().getLatestRide()
           != null) {
-        String tappedInStationName =
-            getLoggedInCardholder()
-                .getMyCards()
-                .get(cardId)
-                .getRideRecords()
-                .getLatestRide()
-                .getTapInLocation();
+        Ride latestRide =
+            getLoggedInCardholder().getMyCards().get(cardId).getRideRecords().getLatestRide();
+        String tappedInStationName = latestRide.getTapInLocation();
         if (tappedInStationName != null && !tappedInStationName.equals("(Missed Tap In)")) {
-          if (Double.POSITIVE_INFINITY
-              == getTransitSystem()
-                  .getSystemMap()
-                  .getShortestPath(tappedInStationName, tapOutStation)
-                  .getLast()
-                  .getDistance()) {
+          if (!getTransitSystem()
+              .getSystemMap()
+              .canReach(latestRide.getTransitType(), tappedInStationName, tapOutStation)) {
             MessageBox.display("Notice", "Invalid Tap Out Location! Cannot reach!");
           } else {
             Calendar tapOutTime = Calendar.getInstance();
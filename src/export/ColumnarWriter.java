@@ -0,0 +1,139 @@
+package export;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * A columnar writer writes an export table to a binary file column by column, through a direct
+ * buffer and a file channel, so each column is a run of fixed width values that can be read back
+ * without parsing any text.
+ *
+ * <p>All numbers are little endian. A file starts with the magic bytes "SNPC", a format version
+ * int, the row count int and the column count int. Each column follows, as its name, a type byte
+ * (the ordinal of ExportTable.ColumnType) and its values: 4 bytes each for INT and DATE, 8 bytes
+ * each for LONG and DOUBLE. A STRING column is its dictionary size int and dictionary strings,
+ * followed by the 4 byte dictionary code of each row. A name or a string is its length in UTF-8
+ * bytes as an int followed by these bytes.
+ */
+class ColumnarWriter {
+
+  private static final byte[] MAGIC = {'S', 'N', 'P', 'C'};
+  private static final int VERSION = 1;
+  private static final int BUFFER_SIZE = 1 << 20;
+
+  private final ByteBuffer buffer;
+  private FileChannel channel;
+
+  /** Create a new columnar writer. */
+  ColumnarWriter() {
+    this.buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+  }
+
+  /**
+   * Write an export table to a file, replacing the file if it exists.
+   *
+   * @param table the table to write.
+   * @param file the file to write to.
+   * @throws IOException if the file cannot be written.
+   */
+  void write(ExportTable table, Path file) throws IOException {
+    try (FileChannel fileChannel =
+        FileChannel.open(
+            file,
+            StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING,
+            StandardOpenOption.WRITE)) {
+      channel = fileChannel;
+      buffer.clear();
+      buffer.put(MAGIC).putInt(VERSION).putInt(table.getRowCount()).putInt(table.getColumnCount());
+      for (int column = 0; column < table.getColumnCount(); column++) {
+        writeColumn(table, column);
+      }
+      flush();
+    } finally {
+      channel = null;
+    }
+  }
+
+  /**
+   * Write a column of an export table.
+   *
+   * @param table the table of this column.
+   * @param column index of the column.
+   * @throws IOException if the file cannot be written.
+   */
+  private void writeColumn(ExportTable table, int column) throws IOException {
+    ExportTable.ColumnType type = table.getColumnType(column);
+    writeString(table.getColumnName(column));
+    ensureRemaining(1);
+    buffer.put((byte) type.ordinal());
+    if (type == ExportTable.ColumnType.STRING) {
+      List<String> dictionary = table.getDictionary(column);
+      ensureRemaining(4);
+      buffer.putInt(dictionary.size());
+      for (String value : dictionary) {
+        writeString(value);
+      }
+    }
+    long[] values = table.getColumn(column);
+    boolean wide = type == ExportTable.ColumnType.LONG || type == ExportTable.ColumnType.DOUBLE;
+    for (int row = 0; row < table.getRowCount(); row++) {
+      if (buffer.remaining() < 8) {
+        flush();
+      }
+      if (wide) {
+        buffer.putLong(values[row]);
+      } else {
+        buffer.putInt((int) values[row]);
+      }
+    }
+  }
+
+  /**
+   * Write a string as its length in UTF-8 bytes and these bytes.
+   *
+   * @param value the string to write.
+   * @throws IOException if the file cannot be written.
+   */
+  private void writeString(String value) throws IOException {
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    ensureRemaining(4);
+    buffer.putInt(bytes.length);
+    for (int start = 0; start < bytes.length; start += BUFFER_SIZE) {
+      int length = Math.min(BUFFER_SIZE, bytes.length - start);
+      ensureRemaining(length);
+      buffer.put(bytes, start, length);
+    }
+  }
+
+  /**
+   * Make room in the buffer, writing it to the file if needed.
+   *
+   * @param bytes the number of bytes needed, at most the buffer size.
+   * @throws IOException if the file cannot be written.
+   */
+  private void ensureRemaining(int bytes) throws IOException {
+    if (buffer.remaining() < bytes) {
+      flush();
+    }
+  }
+
+  /**
+   * Write everything in the buffer to the file.
+   *
+   * @throws IOException if the file cannot be written.
+   */
+  private void flush() throws IOException {
+    buffer.flip();
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+    buffer.clear();
+  }
+}
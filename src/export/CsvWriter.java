@@ -0,0 +1,210 @@
+package export;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * A CSV writer writes an export table to a CSV file with a header row. Whole numbers and dates
+ * are written as digits straight into one large direct buffer, and each string is encoded once for
+ * its dictionary, so only a double creates an object when it is written. The buffer is written to
+ * the file through a file channel whenever it is nearly full.
+ */
+class CsvWriter {
+
+  private static final int BUFFER_SIZE = 8 << 20;
+  /* the longest number or date written */
+  private static final int MAX_VALUE_LENGTH = 32;
+
+  private final ByteBuffer buffer;
+  /* digits of a number, from the last digit */
+  private final byte[] digits;
+  private FileChannel channel;
+
+  /** Create a new CSV writer. */
+  CsvWriter() {
+    this.buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    this.digits = new byte[20];
+  }
+
+  /**
+   * Write an export table to a file, replacing the file if it exists.
+   *
+   * @param table the table to write.
+   * @param file the file to write to.
+   * @throws IOException if the file cannot be written.
+   */
+  void write(ExportTable table, Path file) throws IOException {
+    int columnCount = table.getColumnCount();
+    /* encode strings of every dictionary once */
+    byte[][][] encoded = new byte[columnCount][][];
+    for (int column = 0; column < columnCount; column++) {
+      if (table.getColumnType(column) == ExportTable.ColumnType.STRING) {
+        List<String> dictionary = table.getDictionary(column);
+        encoded[column] = new byte[dictionary.size()][];
+        for (int code = 0; code < dictionary.size(); code++) {
+          encoded[column][code] = encode(dictionary.get(code));
+        }
+      }
+    }
+    try (FileChannel fileChannel =
+        FileChannel.open(
+            file,
+            StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING,
+            StandardOpenOption.WRITE)) {
+      channel = fileChannel;
+      buffer.clear();
+      for (int column = 0; column < columnCount; column++) {
+        putSeparator(column);
+        putBytes(encode(table.getColumnName(column)));
+      }
+      putByte('\n');
+      for (int row = 0; row < table.getRowCount(); row++) {
+        for (int column = 0; column < columnCount; column++) {
+          putSeparator(column);
+          long value = table.getColumn(column)[row];
+          switch (table.getColumnType(column)) {
+            case STRING:
+              putBytes(encoded[column][(int) value]);
+              break;
+            case DOUBLE:
+              putBytes(Double.toString(Double.longBitsToDouble(value)).getBytes());
+              break;
+            case DATE:
+              putDate(value);
+              break;
+            default:
+              ensureRemaining(MAX_VALUE_LENGTH);
+              putNumber(value);
+          }
+        }
+        putByte('\n');
+      }
+      flush();
+    } finally {
+      channel = null;
+    }
+  }
+
+  /**
+   * Encode a string as a CSV field, quoted if it has a comma, a quote or a line break.
+   *
+   * @param value the string.
+   * @return UTF-8 bytes of this field.
+   */
+  private static byte[] encode(String value) {
+    if (value.indexOf(',') >= 0
+        || value.indexOf('"') >= 0
+        || value.indexOf('\n') >= 0
+        || value.indexOf('\r') >= 0) {
+      value = "\"" + value.replace("\"", "\"\"") + "\"";
+    }
+    return value.getBytes(StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Put a comma before every column but the first.
+   *
+   * @param column index of the column.
+   * @throws IOException if the file cannot be written.
+   */
+  private void putSeparator(int column) throws IOException {
+    if (column > 0) {
+      putByte(',');
+    }
+  }
+
+  /**
+   * Put the digits of a number into the buffer, which must have room for them.
+   *
+   * @param value the number.
+   */
+  private void putNumber(long value) {
+    if (value < 0) {
+      buffer.put((byte) '-');
+    }
+    int length = 0;
+    do {
+      /* the remainder is negative or zero for a negative number, even for Long.MIN_VALUE */
+      digits[length++] = (byte) ('0' + Math.abs(value % 10));
+      value /= 10;
+    } while (value != 0);
+    while (length > 0) {
+      buffer.put(digits[--length]);
+    }
+  }
+
+  /**
+   * Put a day since epoch as yyyy-MM-dd in the Gregorian calendar.
+   *
+   * @param day days since epoch.
+   * @throws IOException if the file cannot be written.
+   */
+  private void putDate(long day) throws IOException {
+    /* count from March 1st of year 0, so leap days are at the end of each year */
+    long shiftedDay = day + 719468;
+    long era = Math.floorDiv(shiftedDay, 146097);
+    long dayOfEra = shiftedDay - era * 146097;
+    long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+    long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+    long shiftedMonth = (5 * dayOfYear + 2) / 153; // 0 for March
+    long dayOfMonth = dayOfYear - (153 * shiftedMonth + 2) / 5 + 1;
+    long month = shiftedMonth < 10 ? shiftedMonth + 3 : shiftedMonth - 9;
+    long year = era * 400 + yearOfEra + (month <= 2 ? 1 : 0);
+    ensureRemaining(MAX_VALUE_LENGTH);
+    putNumber(year);
+    buffer.put((byte) '-');
+    if (month < 10) {
+      buffer.put((byte) '0');
+    }
+    putNumber(month);
+    buffer.put((byte) '-');
+    if (dayOfMonth < 10) {
+      buffer.put((byte) '0');
+    }
+    putNumber(dayOfMonth);
+  }
+
+  private void putByte(char value) throws IOException {
+    ensureRemaining(1);
+    buffer.put((byte) value);
+  }
+
+  private void putBytes(byte[] bytes) throws IOException {
+    for (int start = 0; start < bytes.length; start += BUFFER_SIZE) {
+      int length = Math.min(BUFFER_SIZE, bytes.length - start);
+      ensureRemaining(length);
+      buffer.put(bytes, start, length);
+    }
+  }
+
+  /**
+   * Make room in the buffer, writing it to the file if needed.
+   *
+   * @param bytes the number of bytes needed, at most the buffer size.
+   * @throws IOException if the file cannot be written.
+   */
+  private void ensureRemaining(int bytes) throws IOException {
+    if (buffer.remaining() < bytes) {
+      flush();
+    }
+  }
+
+  /**
+   * Write everything in the buffer to the file.
+   *
+   * @throws IOException if the file cannot be written.
+   */
+  private void flush() throws IOException {
+    buffer.flip();
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+    buffer.clear();
+  }
+}
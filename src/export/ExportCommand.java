@@ -0,0 +1,261 @@
+package export;
+
+import card.Card;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Comparator;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import log.LogManager;
+import map.Vertex;
+import money.Money;
+import ride.Ride;
+import system.TransitSystem;
+
+/**
+ * An export command dumps the passenger flow of every station/stop and daily ride aggregates of
+ * the serialized transit system, for analysis outside the admin dashboard. Each table is written
+ * as a columnar file (".col", see ColumnarWriter) and as a CSV file (".csv"):
+ *
+ * <ul>
+ *   <li>passenger_flow_15min: counts of every 15 minutes kept, by station/stop. Only the latest
+ *       days are kept, see Vertex.visitQuarterHourPassengerFlow.
+ *   <li>passenger_flow_daily: counts of every day, by station/stop.
+ *   <li>rides_daily: finished rides, missed taps, distance and fare, by day and transit type.
+ * </ul>
+ *
+ * <p>Days and minutes are in local time. Usage: ExportCommand [directory] [formats], for example
+ * "export columnar,csv". Run it from the project directory, the serial file in src/serialize is
+ * read.
+ */
+public class ExportCommand {
+
+  private static final String[] QUARTER_HOUR_FLOW_COLUMNS = {
+    "station_id", "station", "date", "minute_of_day", "tap_in_times", "tap_out_times",
+    "arrived_times"
+  };
+  private static final ExportTable.ColumnType[] QUARTER_HOUR_FLOW_TYPES = {
+    ExportTable.ColumnType.INT,
+    ExportTable.ColumnType.STRING,
+    ExportTable.ColumnType.DATE,
+    ExportTable.ColumnType.INT,
+    ExportTable.ColumnType.LONG,
+    ExportTable.ColumnType.LONG,
+    ExportTable.ColumnType.LONG
+  };
+  private static final String[] DAILY_FLOW_COLUMNS = {
+    "station_id", "station", "date", "tap_in_times", "tap_out_times", "arrived_times"
+  };
+  private static final ExportTable.ColumnType[] DAILY_FLOW_TYPES = {
+    ExportTable.ColumnType.INT,
+    ExportTable.ColumnType.STRING,
+    ExportTable.ColumnType.DATE,
+    ExportTable.ColumnType.LONG,
+    ExportTable.ColumnType.LONG,
+    ExportTable.ColumnType.LONG
+  };
+  private static final String[] RIDE_COLUMNS = {
+    "date", "transit_type", "rides", "missed_tap_ins", "missed_tap_outs", "distance_travelled",
+    "fare"
+  };
+  private static final ExportTable.ColumnType[] RIDE_TYPES = {
+    ExportTable.ColumnType.DATE,
+    ExportTable.ColumnType.STRING,
+    ExportTable.ColumnType.LONG,
+    ExportTable.ColumnType.LONG,
+    ExportTable.ColumnType.LONG,
+    ExportTable.ColumnType.DOUBLE,
+    ExportTable.ColumnType.DOUBLE
+  };
+  private static final int MINUTES_PER_QUARTER_HOUR = 15;
+  private static final int QUARTER_HOURS_PER_DAY = 96;
+  private static final long MILLIS_PER_DAY = 24 * 60 * 60 * 1000L;
+
+  /**
+   * Export the serialized transit system.
+   *
+   * @param args the directory to export to and the formats, both optional.
+   */
+  public static void main(String[] args) throws IOException {
+    /* log manager turns logging on when it is initialized, turn it off for exports */
+    LogManager.getInstance();
+    Logger.getLogger("Transit System Logger").setLevel(Level.OFF);
+    Path directory = Paths.get(args.length > 0 ? args[0] : "export");
+    String formats = args.length > 1 ? args[1] : "columnar,csv";
+    Files.createDirectories(directory);
+    TransitSystem transitSystem = TransitSystem.getInstance();
+    List<Vertex> vertices = new ArrayList<>(transitSystem.getSystemMap().getGraph());
+    vertices.sort(Comparator.comparingInt(Vertex::getId));
+    List<ExportTable> tables = new ArrayList<>();
+    tables.add(getQuarterHourFlowTable(vertices));
+    tables.add(getDailyFlowTable(vertices));
+    tables.add(getDailyRideTable(transitSystem));
+    for (ExportTable table : tables) {
+      if (formats.contains("columnar")) {
+        write(table, directory.resolve(table.getName() + ".col"), true);
+      }
+      if (formats.contains("csv")) {
+        write(table, directory.resolve(table.getName() + ".csv"), false);
+      }
+    }
+  }
+
+  /**
+   * Write a table to a file and print how long it took.
+   *
+   * @param table the table to write.
+   * @param file the file to write to.
+   * @param columnar true to write a columnar file, false to write a CSV file.
+   * @throws IOException if the file cannot be written.
+   */
+  private static void write(ExportTable table, Path file, boolean columnar) throws IOException {
+    long start = System.nanoTime();
+    if (columnar) {
+      new ColumnarWriter().write(table, file);
+    } else {
+      new CsvWriter().write(table, file);
+    }
+    System.out.println(
+        "Exported "
+            + table.getRowCount()
+            + " Rows To "
+            + file
+            + " In "
+            + (System.nanoTime() - start) / 1000000
+            + " ms");
+  }
+
+  /**
+   * Get the passenger flow of every 15 minutes kept, by station/stop.
+   *
+   * @param vertices all stations/stops by id.
+   * @return a table of passenger flow with a row for each 15 minutes with any count.
+   */
+  private static ExportTable getQuarterHourFlowTable(List<Vertex> vertices) {
+    ExportTable table =
+        new ExportTable(
+            "passenger_flow_15min", QUARTER_HOUR_FLOW_COLUMNS, QUARTER_HOUR_FLOW_TYPES);
+    for (Vertex vertex : vertices) {
+      vertex.visitQuarterHourPassengerFlow(
+          (quarterHour, tapInTimes, tapOutTimes, arrivedTimes) ->
+              addFlowRow(
+                  table,
+                  vertex,
+                  Math.floorDiv(quarterHour, QUARTER_HOURS_PER_DAY),
+                  Math.floorMod(quarterHour, QUARTER_HOURS_PER_DAY) * MINUTES_PER_QUARTER_HOUR,
+                  tapInTimes,
+                  tapOutTimes,
+                  arrivedTimes));
+    }
+    return table;
+  }
+
+  /**
+   * Get the passenger flow of every day, by station/stop.
+   *
+   * @param vertices all stations/stops by id.
+   * @return a table of passenger flow with a row for each day with any count.
+   */
+  private static ExportTable getDailyFlowTable(List<Vertex> vertices) {
+    ExportTable table =
+        new ExportTable("passenger_flow_daily", DAILY_FLOW_COLUMNS, DAILY_FLOW_TYPES);
+    for (Vertex vertex : vertices) {
+      vertex.visitDailyPassengerFlow(
+          (day, tapInTimes, tapOutTimes, arrivedTimes) ->
+              addFlowRow(table, vertex, day, -1, tapInTimes, tapOutTimes, arrivedTimes));
+    }
+    return table;
+  }
+
+  /**
+   * Add a row of passenger flow to a table.
+   *
+   * @param table the table to add to.
+   * @param vertex the station/stop of this row.
+   * @param day the day of this row since epoch.
+   * @param minuteOfDay the first minute of this row in its day, -1 for a row of a whole day.
+   * @param tapInTimes tap in times of this row.
+   * @param tapOutTimes tap out times of this row.
+   * @param arrivedTimes arrived times of this row.
+   */
+  private static void addFlowRow(
+      ExportTable table,
+      Vertex vertex,
+      long day,
+      int minuteOfDay,
+      long tapInTimes,
+      long tapOutTimes,
+      long arrivedTimes) {
+    table.setInt(0, vertex.getId());
+    table.setString(1, vertex.getValue());
+    table.setInt(2, (int) day);
+    int column = 3;
+    if (minuteOfDay >= 0) {
+      table.setInt(column++, minuteOfDay);
+    }
+    table.setLong(column++, tapInTimes);
+    table.setLong(column++, tapOutTimes);
+    table.setLong(column, arrivedTimes);
+    table.endRow();
+  }
+
+  /**
+   * Get finished rides of all cards added up by day and transit type. A ride counts on the day it
+   * was tapped in, or tapped out if it has missed tap in.
+   *
+   * @param transitSystem the transit system to export.
+   * @return a table of rides with a row for each day and transit type with any ride.
+   */
+  private static ExportTable getDailyRideTable(TransitSystem transitSystem) {
+    /* rides, missed tap ins, missed tap outs, distance in hundredths and fare in cents by day */
+    /* and transit type, added up exactly in fixed point */
+    TreeMap<Long, long[]> aggregates = new TreeMap<>();
+    int transitTypes = Ride.TransitType.values().length;
+    for (Card card : transitSystem.getCardManager().getCardPool().values()) {
+      for (Ride ride : card.getRideRecords().getAllRides()) {
+        if (ride.getTapOutLocation() == null) {
+          continue; // this ride has not finished
+        }
+        Calendar time = ride.getTapInTime() != null ? ride.getTapInTime() : ride.getTapOutTime();
+        long key = getDay(time.getTimeInMillis()) * transitTypes + ride.getTransitType().ordinal();
+        long[] aggregate = aggregates.computeIfAbsent(key, k -> new long[5]);
+        aggregate[0]++;
+        aggregate[1] += ride.getTapInLocation().equals("(Missed Tap In)") ? 1 : 0;
+        aggregate[2] += ride.getTapOutLocation().equals("(Missed Tap Out)") ? 1 : 0;
+        aggregate[3] += ride.getDistanceInHundredths();
+        aggregate[4] += ride.getFareInCents();
+      }
+    }
+    ExportTable table = new ExportTable("rides_daily", RIDE_COLUMNS, RIDE_TYPES);
+    for (long key : aggregates.keySet()) {
+      long[] aggregate = aggregates.get(key);
+      table.setInt(0, (int) Math.floorDiv(key, transitTypes));
+      table.setString(1, Ride.TransitType.values()[Math.floorMod(key, transitTypes)].name());
+      for (int i = 0; i < 3; i++) {
+        table.setLong(2 + i, aggregate[i]);
+      }
+      table.setDouble(5, Money.toUnits(aggregate[3]));
+      table.setDouble(6, Money.toDollars(aggregate[4]));
+      table.endRow();
+    }
+    return table;
+  }
+
+  /**
+   * Get the day since epoch of this time in local time.
+   *
+   * @param timeInMillis a time in millis since epoch.
+   * @return the number of days since epoch in local time.
+   */
+  private static long getDay(long timeInMillis) {
+    long localMillis = timeInMillis + TimeZone.getDefault().getOffset(timeInMillis);
+    return Math.floorDiv(localMillis, MILLIS_PER_DAY);
+  }
+}
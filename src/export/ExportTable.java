@@ -0,0 +1,151 @@
+package export;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * An export table keeps rows to export column by column, each column in one primitive array. A
+ * string column keeps each different string once in its dictionary and stores the code of the
+ * string in each row, so a station name repeated in many rows is only written out once in a
+ * columnar file.
+ */
+class ExportTable {
+
+  /** The type of values in a column. */
+  enum ColumnType {
+    INT,
+    LONG,
+    DOUBLE,
+    /* days since epoch, written as yyyy-MM-dd in CSV */
+    DATE,
+    STRING
+  }
+
+  private final String name;
+  private final String[] columnNames;
+  private final ColumnType[] columnTypes;
+  /* values of each column by row, a double is stored as its bits, a string as its code */
+  private final long[][] columns;
+  /* the dictionary of each string column */
+  private final List<List<String>> dictionaries;
+  private final List<HashMap<String, Integer>> codes;
+  private int rowCount;
+
+  /**
+   * Create a new empty export table.
+   *
+   * @param name the name of this table, used as the name of its files.
+   * @param columnNames the names of columns.
+   * @param columnTypes the types of columns.
+   */
+  ExportTable(String name, String[] columnNames, ColumnType[] columnTypes) {
+    this.name = name;
+    this.columnNames = columnNames;
+    this.columnTypes = columnTypes;
+    this.columns = new long[columnNames.length][1024];
+    this.dictionaries = new ArrayList<>();
+    this.codes = new ArrayList<>();
+    for (int column = 0; column < columnNames.length; column++) {
+      dictionaries.add(new ArrayList<>());
+      codes.add(new HashMap<>());
+    }
+  }
+
+  /**
+   * Set an int or date value of the current row.
+   *
+   * @param column index of the column.
+   * @param value the value.
+   */
+  void setInt(int column, int value) {
+    columns[column][rowCount] = value;
+  }
+
+  /**
+   * Set a long value of the current row.
+   *
+   * @param column index of the column.
+   * @param value the value.
+   */
+  void setLong(int column, long value) {
+    columns[column][rowCount] = value;
+  }
+
+  /**
+   * Set a double value of the current row.
+   *
+   * @param column index of the column.
+   * @param value the value.
+   */
+  void setDouble(int column, double value) {
+    columns[column][rowCount] = Double.doubleToRawLongBits(value);
+  }
+
+  /**
+   * Set a string value of the current row.
+   *
+   * @param column index of the column.
+   * @param value the value.
+   */
+  void setString(int column, String value) {
+    Integer code = codes.get(column).get(value);
+    if (code == null) {
+      code = dictionaries.get(column).size();
+      dictionaries.get(column).add(value);
+      codes.get(column).put(value, code);
+    }
+    columns[column][rowCount] = code;
+  }
+
+  /** Finish the current row, the next values set are of a new row. */
+  void endRow() {
+    rowCount++;
+    if (rowCount == columns[0].length) {
+      for (int column = 0; column < columns.length; column++) {
+        columns[column] = Arrays.copyOf(columns[column], rowCount * 2);
+      }
+    }
+  }
+
+  String getName() {
+    return name;
+  }
+
+  int getRowCount() {
+    return rowCount;
+  }
+
+  int getColumnCount() {
+    return columnNames.length;
+  }
+
+  String getColumnName(int column) {
+    return columnNames[column];
+  }
+
+  ColumnType getColumnType(int column) {
+    return columnTypes[column];
+  }
+
+  /**
+   * Get the values of a column, with a double as its bits and a string as its code.
+   *
+   * @param column index of the column.
+   * @return values of this column, only the first row count values are used.
+   */
+  long[] getColumn(int column) {
+    return columns[column];
+  }
+
+  /**
+   * Get the dictionary of a string column.
+   *
+   * @param column index of the column.
+   * @return the strings of this column by their codes.
+   */
+  List<String> getDictionary(int column) {
+    return dictionaries.get(column);
+  }
+}
@@ -1,7 +1,10 @@
 package fare;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import map.SystemMap;
+import money.Money;
 import ride.Ride;
 
 /**
@@ -13,6 +16,10 @@ import ride.Ride;
  */
 public class BusStrategy extends CapStrategy implements Serializable {
 
+  /* serialVersionUID of the first bus strategy, its fare is moved to cents in readObject */
+  private static final long serialVersionUID = -8365251895420947914L;
+  private long oneTimeFareInCents;
+  /* one time fare of snapshots before fixed point money, only read to migrate it */
   private double oneTimeFare;
 
   /**
@@ -24,57 +31,97 @@ public class BusStrategy extends CapStrategy implements Serializable {
     super(systemMap);
     /* set one time fare by $2 by default, one time fare can be changed by admin user
     in this transit system. */
-    this.oneTimeFare = 2;
+    this.oneTimeFareInCents = 200;
   }
 
   /**
-   * Check whether or not this bus ride should be charged.
+   * Set the fare should be charged for a single bus ride.
    *
-   * @param thisRide ride to check.
-   * @return true if this ride should be charged.
+   * @param oneTimeFare fare should be charged for a single bus ride.
    */
-  @Override
-  public boolean shouldTakeCharge(Ride thisRide) {
-    boolean normalTapIn =
-        thisRide.getTapInLocation() != null
-            && thisRide.getTapInTime() != null
-            && thisRide.getTapOutLocation() == null
-            && thisRide.getTapOutTime() == null
-            && thisRide.getFare() == 0;
-    boolean forgotTapIn =
-        "(Missed Tap In)".equals(thisRide.getTapInLocation())
-            && thisRide.getTapInTime() == null
-            && thisRide.getTapOutLocation() != null
-            && thisRide.getTapOutTime() != null
-            && thisRide.getFare() == 0;
-    return normalTapIn | forgotTapIn;
+  public void setOneTimeFare(double oneTimeFare) {
+    this.oneTimeFareInCents = Money.toCents(oneTimeFare);
   }
 
   /**
-   * Get the fare of this bus ride.
+   * Get an immutable copy of the parameters of this bus strategy.
    *
-   * @param thisRide ride to charge.
-   * @return A double representing the fare of this ride.
+   * @return A new BusFareRule of this bus strategy as it is now.
    */
   @Override
-  public double getOneTimeFare(Ride thisRide) {
-    String tapOutLocation = thisRide.getTapOutLocation();
-    /* If this ride has missed tap out information */
-    if (tapOutLocation != null && tapOutLocation.equals("(Missed Tap Out)")) {
-      thisRide.setFare(oneTimeFare); // record fare has been charged for this ride
-      return 0; // does not charge a ride with missed tap out, since already charged when tap in
-    }
-    /* record fare should be charged for a normal tap in or missed tap in */
-    thisRide.setFare(oneTimeFare);
-    return this.oneTimeFare;
+  FareRule getFareRule() {
+    return new BusFareRule(
+        getReachCapFareInCents(), getMaxFarePerTripInCents(), oneTimeFareInCents);
   }
 
   /**
-   * Set the fare should be charged for a single bus ride.
+   * Read a bus strategy from a snapshot, moving the one time fare of a snapshot before fixed
+   * point money into cents.
    *
-   * @param oneTimeFare fare should be charged for a single bus ride.
+   * @param in the stream to read this bus strategy from.
    */
-  public void setOneTimeFare(double oneTimeFare) {
-    this.oneTimeFare = oneTimeFare;
+  private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+    in.defaultReadObject();
+    if (oneTimeFare != 0) {
+      oneTimeFareInCents = Money.toCents(oneTimeFare);
+      oneTimeFare = 0;
+    }
+  }
+
+  /** A bus fare rule charges a constant one time fare for a bus ride, when it taps in. */
+  private static class BusFareRule extends FareRule {
+
+    private final long oneTimeFareInCents;
+
+    private BusFareRule(
+        long reachCapFareInCents, long maxFarePerTripInCents, long oneTimeFareInCents) {
+      super(Ride.TransitType.BUS, reachCapFareInCents, maxFarePerTripInCents);
+      this.oneTimeFareInCents = oneTimeFareInCents;
+    }
+
+    /**
+     * Check whether or not this bus ride should be charged. A bus ride is charged when it taps
+     * in, or when it taps out if the cardholder forgot to tap in.
+     *
+     * @param ride ride to check.
+     * @return true if this ride should be charged.
+     */
+    @Override
+    protected boolean shouldTakeCharge(RideSnapshot ride) {
+      boolean normalTapIn =
+          ride.getTapInLocation() != null
+              && ride.getTapInTimeInMillis() != null
+              && ride.getTapOutLocation() == null
+              && ride.getTapOutTimeInMillis() == null
+              && ride.getFareInCents() == 0;
+      boolean forgotTapIn =
+          ride.hasMissedTapIn()
+              && ride.getTapInTimeInMillis() == null
+              && ride.getTapOutLocation() != null
+              && ride.getTapOutTimeInMillis() != null
+              && ride.getFareInCents() == 0;
+      return normalTapIn | forgotTapIn;
+    }
+
+    /**
+     * Get the fare of this bus ride, which is one time fare whatever the distance.
+     *
+     * @param ride ride to charge.
+     * @return A long representing the fare of this ride in cents.
+     */
+    @Override
+    protected long getFareInCents(RideSnapshot ride) {
+      return oneTimeFareInCents;
+    }
+
+    /**
+     * A bus ride is charged when it taps in, so a ride with missed tap out is not charged again.
+     *
+     * @return true.
+     */
+    @Override
+    protected boolean chargesAtTapIn() {
+      return true;
+    }
   }
 }
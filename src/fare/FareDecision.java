@@ -0,0 +1,197 @@
+package fare;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import map.SystemMap;
+import map.Vertex;
+import ride.Ride;
+import ride.RideRecord;
+import serialize.SerializeManager;
+
+/**
+ * A fare decision is the immutable result of deciding the fare of the latest ride of a card: the
+ * amount to deduct, whether a cap was applied, and the rides as they should be after this
+ * charge, including a previous ride closed as a missed tap out. Nothing is changed until the
+ * decision is applied.
+ */
+public final class FareDecision {
+
+  private final long amountInCents;
+  private final boolean capApplied;
+  private final long policyVersion;
+  private final RideSnapshot latestRide;
+  /* null if no previous ride has missed tap out */
+  private final RideSnapshot missedTapOutRide;
+  /* ride record to add the amount deducted to, null if the rides are being replayed */
+  private final RideRecord rideRecord;
+  /* day and week the amount is deducted in, counting from the epoch */
+  private final long epochDay;
+  private final long epochWeek;
+
+  /**
+   * Create a new fare decision.
+   *
+   * @param amountInCents the fare in cents to deduct for the latest ride and a ride with missed
+   *     tap out.
+   * @param capApplied whether the fare was capped by max fare per trip, daily cap or weekly
+   *     cap.
+   * @param policyVersion version of the fare policy this decision was made with.
+   * @param latestRide the latest ride as it should be after this charge.
+   * @param missedTapOutRide the previous ride closed as a missed tap out, or null.
+   * @param window the ride window this decision was made from.
+   */
+  FareDecision(
+      long amountInCents,
+      boolean capApplied,
+      long policyVersion,
+      RideSnapshot latestRide,
+      RideSnapshot missedTapOutRide,
+      RideWindow window) {
+    this.amountInCents = amountInCents;
+    this.capApplied = capApplied;
+    this.policyVersion = policyVersion;
+    this.latestRide = latestRide;
+    this.missedTapOutRide = missedTapOutRide;
+    this.rideRecord = window.getRideRecord();
+    this.epochDay = window.getEpochDay();
+    this.epochWeek = window.getEpochWeek();
+  }
+
+  /**
+   * Get the fare in cents to deduct from the card.
+   *
+   * @return A long that represents the fare in cents of the latest ride, and fare of previous
+   *     ride with missed tap out (if there is).
+   */
+  public long getAmountInCents() {
+    return amountInCents;
+  }
+
+  /**
+   * Get the version of the fare policy this decision was made with.
+   *
+   * @return the version of the fare policy, 0 if it was not published by a fare manager.
+   */
+  public long getPolicyVersion() {
+    return policyVersion;
+  }
+
+  /**
+   * Check whether the fare was capped by max fare per trip, daily cap or weekly cap.
+   *
+   * @return true if the continuous trip of the latest ride has reached max fare per trip, or the
+   *     card has reached its daily or weekly cap.
+   */
+  public boolean isCapApplied() {
+    return capApplied;
+  }
+
+  /**
+   * Get the latest ride as it should be after this charge.
+   *
+   * @return the latest ride with its fare, path and distance travelled.
+   */
+  public RideSnapshot getLatestRide() {
+    return latestRide;
+  }
+
+  /**
+   * Get the previous ride closed as a missed tap out by this charge.
+   *
+   * @return the ride with missed tap out, null if there is none.
+   */
+  public RideSnapshot getMissedTapOutRide() {
+    return missedTapOutRide;
+  }
+
+  /**
+   * Get the rides that end with this charge, whose statistics are recorded when it is applied.
+   *
+   * @return the ride with missed tap out and the latest ride, if they have ended.
+   */
+  public List<RideSnapshot> getFinishedRides() {
+    List<RideSnapshot> result = new ArrayList<>();
+    if (missedTapOutRide != null) {
+      result.add(missedTapOutRide);
+    }
+    if (latestRide.hasEnded()) {
+      result.add(latestRide);
+    }
+    return Collections.unmodifiableList(result);
+  }
+
+  /**
+   * Write this decision back to its rides, add the amount to the fare deducted from the card in
+   * this day and week, and record tap in times, tap out times, arrived times, origin destination
+   * and heavy hitters of rides that have ended, serializing the transit system once.
+   *
+   * @param systemMap the system map to record statistics in.
+   */
+  public void apply(SystemMap systemMap) {
+    SerializeManager.getInstance().beginBatch();
+    try {
+      if (missedTapOutRide != null) {
+        applyTo(missedTapOutRide, systemMap);
+      }
+      applyTo(latestRide, systemMap);
+      if (rideRecord != null && amountInCents != 0) {
+        rideRecord.addSpend(epochDay, epochWeek, amountInCents);
+      }
+      for (RideSnapshot ride : getFinishedRides()) {
+        if (ride.getPath() != null) { // no path is found for a ride at unknown stations/stops
+          recordVertexStatistics(ride, systemMap);
+          systemMap.trackFinishedRide(ride.getRide());
+        }
+      }
+    } finally {
+      SerializeManager.getInstance().endBatch();
+    }
+  }
+
+  /**
+   * Write what has changed in a snapshot back to its ride. A new path is interned in the path
+   * pool of the system map, so the ride shares it with other rides that have gone through it.
+   *
+   * @param snapshot the ride as it should be.
+   * @param systemMap the system map to intern the path in.
+   */
+  private static void applyTo(RideSnapshot snapshot, SystemMap systemMap) {
+    Ride ride = snapshot.getRide();
+    if (!Objects.equals(ride.getTapOutLocation(), snapshot.getTapOutLocation())) {
+      ride.setTapOutLocation(snapshot.getTapOutLocation());
+    }
+    if (snapshot.getPath() != null
+        && (ride.getRidePath() == null || !ride.getRidePath().hasVertices(snapshot.getPath()))) {
+      ride.setPath(systemMap.getPathPool().intern(snapshot.getPath()));
+    }
+    if (ride.getDistanceInHundredths() != snapshot.getDistanceInHundredths()) {
+      ride.setDistanceInHundredths(snapshot.getDistanceInHundredths());
+    }
+    if (ride.getFareInCents() != snapshot.getFareInCents()) {
+      ride.setFareInCents(snapshot.getFareInCents());
+    }
+  }
+
+  /**
+   * Add to tap in times, tap out times and arrived times for stations/stop on the path of this
+   * ride, and add this ride to the origin destination matrix of its day.
+   *
+   * @param ride ride to get statistics of stations/stops.
+   * @param systemMap the system map to record statistics in.
+   */
+  private static void recordVertexStatistics(RideSnapshot ride, SystemMap systemMap) {
+    /* count stations/stops passed at tap out time, or tap in time if this ride has no tap out */
+    Long time = ride.getTapOutTimeInMillis();
+    if (time == null) {
+      time = ride.getTapInTimeInMillis();
+    }
+    /* a ride with missed tap in has no tap in time, count it at tap out time */
+    long tapInTime = ride.getTapInTimeInMillis() == null ? time : ride.getTapInTimeInMillis();
+    List<Vertex> path = ride.getPath();
+    systemMap.addPassengerFlow(path, tapInTime, time);
+    systemMap.addOriginDestination(
+        ride.getTransitType(), path.get(0), path.get(path.size() - 1), tapInTime);
+  }
+}
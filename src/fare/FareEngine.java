@@ -0,0 +1,183 @@
+package fare;
+
+import java.util.LinkedList;
+import map.RidePath;
+import map.StationDistanceTable;
+import map.SystemMap;
+import map.Vertex;
+import ride.Ride;
+
+/**
+ * A fare engine decides the fare of the latest ride of a card from a ride window and a fare policy
+ * snapshot, with the same cap rules as a cap strategy, but without changing any ride, card or
+ * statistics. It only reads the system map to find the paths of rides, so decisions for different
+ * cards can be made in parallel, and the same window and policy always give the same decision.
+ */
+public final class FareEngine {
+
+  private final SystemMap systemMap;
+
+  private FareEngine(SystemMap systemMap) {
+    this.systemMap = systemMap;
+  }
+
+  /**
+   * Get an instance of fare engine.
+   *
+   * @param systemMap system map used to find paths of rides.
+   * @return an instance of FareEngine.
+   */
+  public static FareEngine getInstance(SystemMap systemMap) {
+    return new FareEngine(systemMap);
+  }
+
+  /**
+   * Decide the fare of the latest ride in this window. If the previous ride has missed tap out,
+   * it is closed as a missed tap out and charged together with the latest ride. The amount is
+   * then capped so the fare deducted from the card in this day and week does not go over the
+   * daily and weekly cap of the policy, taking the fare off the latest ride first.
+   *
+   * @param window the rides of a card deciding the fare of its latest ride.
+   * @param policy the fare rules to charge by.
+   * @return the fare decision, to be applied to the rides of this card.
+   */
+  public FareDecision decide(RideWindow window, FarePolicySnapshot policy) {
+    RideSnapshot latestRide = window.getLatestRide();
+    FareRule fareRule = policy.getFareRule(latestRide.getTransitType());
+    long amountInCents = 0;
+    /* Check whether the latest previous ride has missed tap out, */
+    /* if there is, charge together with this ride. */
+    RideSnapshot missedTapOutRide = null;
+    RideSnapshot previousRide = window.getPreviousRide();
+    if (previousRide != null
+        && previousRide.getTapOutLocation() == null
+        && previousRide.getTapOutTimeInMillis() == null) {
+      missedTapOutRide = previousRide.withTapOutLocation("(Missed Tap Out)");
+      if (missedTapOutRide.getPath() == null) { // a replayed ride keeps the path it had
+        missedTapOutRide = findPath(missedTapOutRide, policy);
+      }
+      FareRule missedTapOutRule = policy.getFareRule(missedTapOutRide.getTransitType());
+      long fare = missedTapOutRule.getFareInCents(missedTapOutRide);
+      missedTapOutRide = missedTapOutRide.withFare(fare);
+      /* a ride charged at tap in has been charged already */
+      long fareToDeduct = missedTapOutRule.chargesAtTapIn() ? 0 : fare;
+      if (fareToDeduct >= fareRule.getMaxFarePerTripInCents()) { // only charge max fare per trip
+        fareToDeduct = fareRule.getMaxFarePerTripInCents();
+        missedTapOutRide = missedTapOutRide.withFare(fareToDeduct);
+      }
+      amountInCents += fareToDeduct;
+    }
+    boolean capApplied = false;
+    long latestFareInCents = 0;
+    if (latestRide.hasEnded() && latestRide.getPath() == null) {
+      latestRide = findPath(latestRide, policy);
+    }
+    if (fareRule.shouldTakeCharge(latestRide)) {
+      long oneTimeFare = fareRule.getFareInCents(latestRide);
+      /* get total fare collected of the continuous trip within cap time */
+      long fareThisTrip = window.getFareThisTripInCents();
+      long maxFarePerTrip = fareRule.getMaxFarePerTripInCents();
+      long fare;
+      if (fareThisTrip >= maxFarePerTrip) {
+        fare = fareRule.getReachCapFareInCents();
+        capApplied = true;
+      } else if (fareThisTrip + oneTimeFare >= maxFarePerTrip) {
+        /* only charge the difference between max fare per trip */
+        fare = maxFarePerTrip - fareThisTrip + fareRule.getReachCapFareInCents();
+        capApplied = true;
+      } else {
+        fare = oneTimeFare;
+      }
+      latestRide = latestRide.withFare(fare);
+      latestFareInCents = fare;
+      amountInCents += fare;
+    }
+    long amountUnderCaps =
+        Math.min(
+            getAmountUnderCap(policy.getDailyCapInCents(), window.getDaySpendInCents()),
+            getAmountUnderCap(policy.getWeeklyCapInCents(), window.getWeekSpendInCents()));
+    if (amountInCents > amountUnderCaps) {
+      long overCaps = amountInCents - amountUnderCaps;
+      long latestOverCaps = Math.min(overCaps, latestFareInCents);
+      if (latestOverCaps > 0) {
+        latestRide = latestRide.withFare(latestFareInCents - latestOverCaps);
+      }
+      if (overCaps > latestOverCaps) { // the rest is taken off the ride with missed tap out
+        missedTapOutRide =
+            missedTapOutRide.withFare(
+                missedTapOutRide.getFareInCents() - (overCaps - latestOverCaps));
+      }
+      amountInCents = amountUnderCaps;
+      capApplied = true;
+    }
+    return new FareDecision(
+        amountInCents, capApplied, policy.getVersion(), latestRide, missedTapOutRide, window);
+  }
+
+  /**
+   * Get the most fare that can still be deducted from a card under a cap.
+   *
+   * @param capInCents the cap in cents, 0 if there is no cap.
+   * @param spendInCents the fare deducted in cents in the period of this cap.
+   * @return the fare in cents left under this cap.
+   */
+  private static long getAmountUnderCap(long capInCents, long spendInCents) {
+    return capInCents <= 0 ? Long.MAX_VALUE : Math.max(capInCents - spendInCents, 0);
+  }
+
+  /**
+   * Find the path of a ride that has ended. Assume the cardholder went through the shortest path
+   * for a ride with full information, started from the farthest end for a ride with missed tap
+   * in, and went to the farthest end for a ride with missed tap out. The shortest path is read
+   * from the distance table of the policy if it has both stations. Only subway rides have a
+   * distance table, and only while the subway network is small enough for one, so the path of
+   * any other ride is searched in the system map, one query at a time. A ride tapped out at a
+   * station/stop it cannot reach on its routes is charged as if it had missed tap out, and a ride
+   * tapped at a station/stop no route of its transit type stops at is left without a path, so no
+   * station/stop is searched for that is not in the system map.
+   *
+   * @param ride a ride that has ended.
+   * @param policy the fare policy with distance tables to read shortest paths from.
+   * @return a copy of this ride with its path and distance travelled, or this ride if no path
+   *     can be found for it.
+   */
+  private RideSnapshot findPath(RideSnapshot ride, FarePolicySnapshot policy) {
+    Ride.TransitType transitType = ride.getTransitType();
+    boolean toFarthestEnd =
+        ride.hasMissedTapOut()
+            || !ride.hasMissedTapIn()
+                && !systemMap.canReach(
+                    transitType, ride.getTapInLocation(), ride.getTapOutLocation());
+    if (ride.hasMissedTapIn() || toFarthestEnd) {
+      String location = ride.hasMissedTapIn() ? ride.getTapOutLocation() : ride.getTapInLocation();
+      if (!systemMap.isServedBy(location, transitType)) {
+        return ride;
+      }
+    }
+    StationDistanceTable table = policy.getDistanceTable(transitType);
+    if (table != null && !ride.hasMissedTapIn() && !toFarthestEnd) {
+      Vertex startVertex = systemMap.findVertex(ride.getTapInLocation());
+      Vertex endVertex = systemMap.findVertex(ride.getTapOutLocation());
+      RidePath path = table.getPath(startVertex, endVertex);
+      if (path != null) { // interned in the table, no path is built for this ride
+        return ride.withPath(path, table.getDistance(startVertex, endVertex));
+      }
+    }
+    /* path queries keep distances in the stations/stops of the system map, */
+    /* read the distance before another query can change it */
+    synchronized (systemMap) {
+      LinkedList<Vertex> path;
+      if (ride.hasMissedTapIn()) {
+        path = systemMap.getPathToFarthestEnd(ride.getTapOutLocation(), transitType, true);
+      } else if (toFarthestEnd) {
+        path = systemMap.getPathToFarthestEnd(ride.getTapInLocation(), transitType, false);
+      } else {
+        path = systemMap.getShortestPath(ride.getTapInLocation(), ride.getTapOutLocation());
+      }
+      if (path.isEmpty()) { // already at the farthest end of every route it is on
+        return ride;
+      }
+      return ride.withPath(path, path.getLast().getDistance());
+    }
+  }
+}
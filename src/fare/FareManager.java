@@ -1,27 +1,89 @@
 package fare;
 
 import card.Card;
+import card.CardManager;
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
-import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Observable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicReference;
 import log.LogManager;
+import map.StationDistanceTable;
+import map.SystemMap;
+import money.Money;
+import ride.Ride;
 import ride.RideRecord;
+import serialize.SerializeManager;
 
 public class FareManager extends Observable implements Serializable {
 
+  /* serialVersionUID of the first fare manager, fields added since are set in readObject */
+  private static final long serialVersionUID = 7705400960201897426L;
+  /* set again by the transit system if read from a snapshot before fare manager kept one */
+  private SystemMap systemMap;
   private final HashMap<String, FareStrategy> farePolicy;
+  private long farePolicyVersion;
+  /* reach cap time in milliseconds of all rides, unless their fare strategy has its own */
+  private long reachCapTime;
+  /* most fare in cents deducted from a card in a day and in a week, 0 if there is no cap */
+  private long dailyCapInCents;
+  private long weeklyCapInCents;
+  /* fare rules of the latest version of fare policy, not serialized, rebuilt after reading */
+  private transient AtomicReference<FarePolicySnapshot> publishedFarePolicy;
 
-  /** Construct a new fare manager. */
-  public FareManager(FareStrategy busStrategy, FareStrategy subwayStrategy) {
+  /**
+   * Construct a new fare manager.
+   *
+   * @param systemMap the system map to track finished rides in.
+   * @param busStrategy fare strategy of bus rides.
+   * @param subwayStrategy fare strategy of subway rides.
+   */
+  public FareManager(SystemMap systemMap, FareStrategy busStrategy, FareStrategy subwayStrategy) {
+    this.systemMap = systemMap;
     farePolicy = new HashMap<>();
     this.farePolicy.put("BUS", busStrategy);
     this.farePolicy.put("SUBWAY", subwayStrategy);
+    this.farePolicyVersion = 1;
+    /* set reach cap time to 2 hour by default, can be changed by admin user */
+    this.reachCapTime = FarePolicySnapshot.DEFAULT_REACH_CAP_TIME;
+    setFareManagerOfStrategies();
+    this.publishedFarePolicy = new AtomicReference<>(newFarePolicySnapshot());
     this.addObserver(LogManager.getInstance());
   }
 
   /**
-   * Get the fare policy for this transit system.
+   * Set the system map of a fare manager read from a snapshot before it kept one.
+   *
+   * @param systemMap the system map to track finished rides in.
+   */
+  public void restoreSystemMap(SystemMap systemMap) {
+    if (this.systemMap == null) {
+      this.systemMap = systemMap;
+    }
+  }
+
+  /**
+   * Set the reach cap time of a fare manager read from a snapshot before a policy-wide reach cap
+   * time, to the one its cards were saved with. It is published with the fare policy when fares
+   * are decided next.
+   *
+   * @param reachCapTime the reach cap time in milliseconds.
+   */
+  public synchronized void restoreReachCapTime(long reachCapTime) {
+    this.reachCapTime = reachCapTime;
+  }
+
+  /**
+   * Get the fare policy for this transit system. Changes to the fare policy or its strategies
+   * only take effect after they are published.
    *
    * @return A HashMap that values are corresponding to its keys' strategy name.
    */
@@ -29,6 +91,92 @@ public class FareManager extends Observable implements Serializable {
     return farePolicy;
   }
 
+  /**
+   * Publish the fare policy as it is now as a new version. Fares decided after this use the new
+   * version, while decisions being made keep the version they started with.
+   */
+  public synchronized void publishFarePolicy() {
+    farePolicyVersion++;
+    setFareManagerOfStrategies();
+    publishedFarePolicy.set(newFarePolicySnapshot());
+    setChanged();
+    notifyObservers("Fare Policy Version " + farePolicyVersion + " Has Been Published!");
+  }
+
+  /**
+   * Set the reach cap time of all rides, unless their fare strategy has its own, and publish the
+   * fare policy with it. Trips are capped within the new reach cap time from the next fare decided.
+   *
+   * @param reachCapTime the new reach cap time in milliseconds.
+   */
+  public synchronized void setReachCapTime(long reachCapTime) {
+    this.reachCapTime = reachCapTime;
+    publishFarePolicy();
+  }
+
+  /**
+   * Set the most fare deducted from a card in a day, and publish the fare policy with it.
+   *
+   * @param dailyCap the daily cap, 0 for no daily cap.
+   */
+  public synchronized void setDailyCap(double dailyCap) {
+    this.dailyCapInCents = Money.toCents(dailyCap);
+    publishFarePolicy();
+  }
+
+  /**
+   * Set the most fare deducted from a card in a week, and publish the fare policy with it.
+   *
+   * @param weeklyCap the weekly cap, 0 for no weekly cap.
+   */
+  public synchronized void setWeeklyCap(double weeklyCap) {
+    this.weeklyCapInCents = Money.toCents(weeklyCap);
+    publishFarePolicy();
+  }
+
+  /**
+   * Get a snapshot of the fare policy as it is now, at its current version.
+   *
+   * @return A new FarePolicySnapshot of the fare policy, reach cap time and spend caps.
+   */
+  private FarePolicySnapshot newFarePolicySnapshot() {
+    return FarePolicySnapshot.getInstance(farePolicy, systemMap, farePolicyVersion, reachCapTime)
+        .withSpendCaps(dailyCapInCents, weeklyCapInCents);
+  }
+
+  /** Let cap strategies of the fare policy decide fares with the published fare policy. */
+  private void setFareManagerOfStrategies() {
+    for (FareStrategy fareStrategy : farePolicy.values()) {
+      if (fareStrategy instanceof CapStrategy) {
+        ((CapStrategy) fareStrategy).setFareManager(this);
+      }
+    }
+  }
+
+  /**
+   * Get the latest published version of fare policy, with the current subway distance table of
+   * the system map. It never waits for a fare policy being published.
+   *
+   * @return the latest published FarePolicySnapshot.
+   */
+  public FarePolicySnapshot getFarePolicySnapshot() {
+    FarePolicySnapshot policy = publishedFarePolicy.get();
+    if (policy == null) { // not published since de-serialization
+      publishedFarePolicy.compareAndSet(null, newFarePolicySnapshot());
+      return getFarePolicySnapshot();
+    }
+    StationDistanceTable table = systemMap.getSubwayDistanceTable();
+    if (policy.getDistanceTable(Ride.TransitType.SUBWAY) != table) {
+      /* the graph has changed, a newer version of fare policy may have been published meanwhile */
+      FarePolicySnapshot newPolicy = policy.withSubwayDistanceTable(table);
+      if (publishedFarePolicy.compareAndSet(policy, newPolicy)) {
+        return newPolicy;
+      }
+      return getFarePolicySnapshot();
+    }
+    return policy;
+  }
+
   /**
    * Calculates and processes a charge for the trip of a given card. Raises
    *
@@ -36,19 +184,26 @@ public class FareManager extends Observable implements Serializable {
    */
   public void takeCharge(Card card) {
     RideRecord cardRideRecord = card.getRideRecords();
-    FareStrategy fareStrategy =
-        farePolicy.get(cardRideRecord.getLatestRide().getTransitType().toString());
-    double fareToDeduct = fareStrategy.calculateFare(cardRideRecord);
-    card.deductBalance(fareToDeduct);
+    Ride latestRide = cardRideRecord.getLatestRide();
+    FarePolicySnapshot policy = getFarePolicySnapshot();
+    FareStrategy fareStrategy = policy.getOtherStrategy(latestRide.getTransitType());
+    long fareToDeduct;
+    if (fareStrategy == null) {
+      /* decide with the whole fare policy, a ride with missed tap out is charged by its own type */
+      FareDecision decision =
+          FareEngine.getInstance(systemMap)
+              .decide(RideWindow.getInstance(cardRideRecord, policy), policy);
+      decision.apply(systemMap);
+      fareToDeduct = decision.getAmountInCents();
+    } else {
+      fareToDeduct = Money.toCents(fareStrategy.calculateFare(cardRideRecord));
+    }
+    card.deductBalanceInCents(fareToDeduct);
     if (fareToDeduct != 0) {
-      /* round to 2 decimal point if there are more than 2 decimal point */
-      BigDecimal bigDecimal = new BigDecimal(Double.valueOf(fareToDeduct).toString());
-      bigDecimal = bigDecimal.setScale(2, BigDecimal.ROUND_HALF_UP);
-      fareToDeduct = bigDecimal.doubleValue();
       setChanged();
       notifyObservers(
           "Fare: $"
-              + fareToDeduct
+              + Money.toDollars(fareToDeduct)
               + " has been successfully deducted from card #"
               + card.getCardId()
               + System.lineSeparator()
@@ -56,4 +211,169 @@ public class FareManager extends Observable implements Serializable {
               + card.getBalance());
     }
   }
+
+  /**
+   * Settle a stream of taps read from tap files of offline gates, on the common fork join pool.
+   *
+   * @param taps taps to settle, in order of time.
+   * @param cardManager the card manager to find cards of taps in.
+   * @return A HashMap of fare deducted from each card settled, using ID of card as key.
+   * @see #settle(List, CardManager, ForkJoinPool)
+   */
+  public HashMap<String, Double> settle(List<Tap> taps, CardManager cardManager) {
+    return settle(taps, cardManager, ForkJoinPool.commonPool());
+  }
+
+  /**
+   * Settle a stream of taps read from tap files of offline gates. Taps are partitioned by card,
+   * and the partitions are settled in parallel on the given pool, each card charged tap by tap
+   * with the same fare rules as when it taps at a gate. Offline gates have already let the
+   * cardholder through, so taps are not rejected for balance or state of their card, but taps of
+   * cards not in the card manager are skipped, and so are taps at stations/stops their rides
+   * cannot use. Rides and balances are written in one batch.
+   *
+   * @param taps taps to settle, in order of time.
+   * @param cardManager the card manager to find cards of taps in.
+   * @param pool the fork join pool to settle taps on.
+   * @return A HashMap of fare deducted from each card settled, using ID of card as key.
+   */
+  public HashMap<String, Double> settle(
+      List<Tap> taps, CardManager cardManager, ForkJoinPool pool) {
+    /* partition taps by card, keeping the order of taps of each card */
+    LinkedHashMap<String, ArrayList<Tap>> partitions = new LinkedHashMap<>();
+    for (Tap tap : taps) {
+      partitions.computeIfAbsent(tap.getCardId(), cardId -> new ArrayList<>()).add(tap);
+    }
+    List<Card> cards = new ArrayList<>();
+    List<List<Tap>> tapsByCard = new ArrayList<>();
+    int skippedTaps = 0;
+    for (Map.Entry<String, ArrayList<Tap>> partition : partitions.entrySet()) {
+      Card card = cardManager.getCardPool().get(partition.getKey());
+      if (card == null) {
+        skippedTaps += partition.getValue().size();
+      } else {
+        /* a stable sort, cheap for taps already in order, keeps taps at the same time in order */
+        partition.getValue().sort(Comparator.comparingLong(Tap::getTimeInMillis));
+        cards.add(card);
+        tapsByCard.add(partition.getValue());
+      }
+    }
+    long[] fares = new long[cards.size()];
+    int[] skippedTapsByCard = new int[cards.size()];
+    HashMap<String, Double> result = new HashMap<>();
+    SerializeManager.getInstance().beginBatch();
+    try {
+      pool.invoke(
+          new SettlementTask(
+              FareEngine.getInstance(systemMap),
+              getFarePolicySnapshot(),
+              systemMap,
+              cards,
+              tapsByCard,
+              fares,
+              skippedTapsByCard,
+              0,
+              cards.size()));
+      for (int i = 0; i < cards.size(); i++) {
+        cards.get(i).deductBalanceInCents(fares[i]);
+        result.put(cards.get(i).getCardId(), Money.toDollars(fares[i]));
+      }
+    } finally {
+      SerializeManager.getInstance().endBatch();
+      /* write origin destination matrices of this batch once, instead of each ride */
+      systemMap.flushOriginDestinationMatrices();
+    }
+    int invalidTaps = 0;
+    for (int skippedTapsOfCard : skippedTapsByCard) {
+      invalidTaps += skippedTapsOfCard;
+    }
+    setChanged();
+    notifyObservers(
+        "Settled "
+            + (taps.size() - skippedTaps - invalidTaps)
+            + " Taps Of "
+            + cards.size()
+            + " Cards, Skipped "
+            + skippedTaps
+            + " Taps Of Unknown Cards And "
+            + invalidTaps
+            + " Taps At Stations/Stops Their Rides Cannot Use!");
+    return result;
+  }
+
+  /**
+   * Replay the stored rides of all cards under the current fare policy and a candidate fare
+   * policy on the common fork join pool, to compare the fares of the candidate policy.
+   *
+   * @param candidatePolicy the candidate fare policy.
+   * @param cardManager the card manager with cards to replay.
+   * @return A FareReplayReport comparing the fares of the two policies.
+   */
+  public FareReplayReport replay(FarePolicySnapshot candidatePolicy, CardManager cardManager) {
+    return replay(candidatePolicy, cardManager, ForkJoinPool.commonPool());
+  }
+
+  /**
+   * Replay the stored rides of all cards under the current fare policy and a candidate fare
+   * policy. Cards are replayed in parallel on the given pool, each card tap by tap on snapshots
+   * of its rides with the paths they were charged by, so no card or ride is changed and no path
+   * is searched again. Fares under the current policy are replayed the same way, so rides charged
+   * under earlier versions of fare policy are compared by the same rules.
+   *
+   * @param candidatePolicy the candidate fare policy.
+   * @param cardManager the card manager with cards to replay.
+   * @param pool the fork join pool to replay rides on.
+   * @return A FareReplayReport comparing the fares of the two policies.
+   */
+  public FareReplayReport replay(
+      FarePolicySnapshot candidatePolicy, CardManager cardManager, ForkJoinPool pool) {
+    /* copy the rides of each card now, cards may still take rides while replaying */
+    List<Ride[]> ridesByCard = new ArrayList<>();
+    for (Card card : cardManager.getCardPool().values()) {
+      ridesByCard.add(card.getRideRecords().getAllRides().toArray(new Ride[0]));
+    }
+    int transitTypes = Ride.TransitType.values().length;
+    long[] currentFares = new long[ridesByCard.size() * transitTypes];
+    long[] candidateFares = new long[ridesByCard.size() * transitTypes];
+    pool.invoke(
+        new ReplayTask(
+            FareEngine.getInstance(systemMap),
+            getFarePolicySnapshot(),
+            candidatePolicy,
+            ridesByCard,
+            currentFares,
+            candidateFares,
+            0,
+            ridesByCard.size()));
+    long[] currentRevenueByType = new long[transitTypes];
+    long[] candidateRevenueByType = new long[transitTypes];
+    long[] cardDeltas = new long[ridesByCard.size()];
+    for (int i = 0; i < currentFares.length; i++) {
+      currentRevenueByType[i % transitTypes] += currentFares[i];
+      candidateRevenueByType[i % transitTypes] += candidateFares[i];
+      cardDeltas[i / transitTypes] += candidateFares[i] - currentFares[i];
+    }
+    Arrays.sort(cardDeltas);
+    setChanged();
+    notifyObservers("Replayed Fares Of " + ridesByCard.size() + " Cards Under A New Fare Policy!");
+    return new FareReplayReport(currentRevenueByType, candidateRevenueByType, cardDeltas);
+  }
+
+  /**
+   * Read a fare manager from a snapshot. Its fare policy is published again at the version it was
+   * saved with when fares are decided next.
+   *
+   * @param in the stream to read this fare manager from.
+   */
+  private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+    in.defaultReadObject();
+    /* snapshots before versioned fare policies start from the first version */
+    farePolicyVersion = Math.max(farePolicyVersion, 1);
+    /* snapshots before policy-wide reach cap time use the default one */
+    if (reachCapTime == 0) {
+      reachCapTime = FarePolicySnapshot.DEFAULT_REACH_CAP_TIME;
+    }
+    publishedFarePolicy = new AtomicReference<>();
+    setFareManagerOfStrategies();
+  }
 }
@@ -0,0 +1,229 @@
+package fare;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TimeZone;
+import map.StationDistanceTable;
+import map.SystemMap;
+import ride.Ride;
+
+/**
+ * A fare policy snapshot is an immutable copy of the fare rules of every transit type, taken
+ * before fares are decided, so changes to a fare strategy never affect a decision being made. It
+ * also keeps the subway distance table of the system map at that time, so every ride decided
+ * with this snapshot is priced by the same version of the graph.
+ *
+ * <p>A fare manager publishes a new snapshot with a higher version each time its fare policy is
+ * changed, and every fare decision records the version of the snapshot it was made with.
+ */
+public final class FarePolicySnapshot {
+
+  /* reach cap time of a fare policy in milliseconds by default, which is 2 hours */
+  static final long DEFAULT_REACH_CAP_TIME = 2 * 3600 * 1000;
+  private final long version;
+  private final EnumMap<Ride.TransitType, FareRule> fareRules;
+  /* reach cap time in milliseconds of each transit type */
+  private final EnumMap<Ride.TransitType, Long> reachCapTimes;
+  /* fare strategies that are not cap strategies, which calculate fares by themselves */
+  private final EnumMap<Ride.TransitType, FareStrategy> otherStrategies;
+  /* null if no subway distance table was ready */
+  private final StationDistanceTable subwayDistanceTable;
+  /* most fare in cents deducted from a card in a day and in a week, 0 if there is no cap */
+  private final long dailyCapInCents;
+  private final long weeklyCapInCents;
+  /* time zone days and weeks of spend caps start in */
+  private final TimeZone timeZone;
+
+  private FarePolicySnapshot(
+      long version,
+      EnumMap<Ride.TransitType, FareRule> fareRules,
+      EnumMap<Ride.TransitType, Long> reachCapTimes,
+      EnumMap<Ride.TransitType, FareStrategy> otherStrategies,
+      StationDistanceTable subwayDistanceTable,
+      long dailyCapInCents,
+      long weeklyCapInCents,
+      TimeZone timeZone) {
+    this.version = version;
+    this.fareRules = fareRules;
+    this.reachCapTimes = reachCapTimes;
+    this.otherStrategies = otherStrategies;
+    this.subwayDistanceTable = subwayDistanceTable;
+    this.dailyCapInCents = dailyCapInCents;
+    this.weeklyCapInCents = weeklyCapInCents;
+    this.timeZone = timeZone;
+  }
+
+  /**
+   * Get a snapshot of a fare policy as it is now. A transit type without a cap strategy in this
+   * fare policy uses the default cap strategy of that transit type. A cap strategy with its own
+   * reach cap time overrides the reach cap time of the fare policy for its transit type. The
+   * snapshot has no daily or weekly cap.
+   *
+   * @param farePolicy fare strategies by the name of their transit type.
+   * @param systemMap the system map of this transit system.
+   * @param version version of the fare policy, 0 if it is not published by a fare manager.
+   * @param reachCapTime reach cap time in milliseconds of this fare policy.
+   * @return A new FarePolicySnapshot of this fare policy.
+   */
+  public static FarePolicySnapshot getInstance(
+      Map<String, ? extends FareStrategy> farePolicy,
+      SystemMap systemMap,
+      long version,
+      long reachCapTime) {
+    EnumMap<Ride.TransitType, FareRule> fareRules = new EnumMap<>(Ride.TransitType.class);
+    EnumMap<Ride.TransitType, Long> reachCapTimes = new EnumMap<>(Ride.TransitType.class);
+    EnumMap<Ride.TransitType, FareStrategy> otherStrategies =
+        new EnumMap<>(Ride.TransitType.class);
+    for (Ride.TransitType transitType : Ride.TransitType.values()) {
+      FareStrategy fareStrategy = farePolicy.get(transitType.toString());
+      if (fareStrategy != null && !(fareStrategy instanceof CapStrategy)) {
+        otherStrategies.put(transitType, fareStrategy);
+      }
+      if (!(fareStrategy instanceof CapStrategy)) {
+        fareStrategy = CapStrategy.getNewFareStrategyInstance(systemMap, transitType);
+      }
+      CapStrategy capStrategy = (CapStrategy) fareStrategy;
+      fareRules.put(transitType, capStrategy.getFareRule());
+      reachCapTimes.put(
+          transitType,
+          capStrategy.getReachCapTime() > 0 ? capStrategy.getReachCapTime() : reachCapTime);
+    }
+    return new FarePolicySnapshot(
+        version,
+        fareRules,
+        reachCapTimes,
+        otherStrategies,
+        systemMap.getSubwayDistanceTable(),
+        0,
+        0,
+        TimeZone.getDefault());
+  }
+
+  /**
+   * Get a copy of this snapshot with another subway distance table, keeping its fare rules and
+   * version.
+   *
+   * @param subwayDistanceTable the subway distance table, null if there is none.
+   * @return A new FarePolicySnapshot with this distance table.
+   */
+  FarePolicySnapshot withSubwayDistanceTable(StationDistanceTable subwayDistanceTable) {
+    return new FarePolicySnapshot(
+        version,
+        fareRules,
+        reachCapTimes,
+        otherStrategies,
+        subwayDistanceTable,
+        dailyCapInCents,
+        weeklyCapInCents,
+        timeZone);
+  }
+
+  /**
+   * Get a copy of this snapshot with daily and weekly caps, keeping its fare rules and version.
+   *
+   * @param newDailyCapInCents most fare in cents deducted from a card in a day, 0 for no cap.
+   * @param newWeeklyCapInCents most fare in cents deducted from a card in a week, 0 for no cap.
+   * @return A new FarePolicySnapshot with these caps.
+   */
+  public FarePolicySnapshot withSpendCaps(long newDailyCapInCents, long newWeeklyCapInCents) {
+    return new FarePolicySnapshot(
+        version,
+        fareRules,
+        reachCapTimes,
+        otherStrategies,
+        subwayDistanceTable,
+        newDailyCapInCents,
+        newWeeklyCapInCents,
+        timeZone);
+  }
+
+  /**
+   * Get the most fare deducted from a card in a day.
+   *
+   * @return the daily cap in cents, 0 if there is no daily cap.
+   */
+  public long getDailyCapInCents() {
+    return dailyCapInCents;
+  }
+
+  /**
+   * Get the most fare deducted from a card in a week.
+   *
+   * @return the weekly cap in cents, 0 if there is no weekly cap.
+   */
+  public long getWeeklyCapInCents() {
+    return weeklyCapInCents;
+  }
+
+  /**
+   * Get the day of a time, counting days from the epoch in the time zone of this policy.
+   *
+   * @param timeInMillis the time in millis.
+   * @return the epoch day of this time.
+   */
+  public long getEpochDay(long timeInMillis) {
+    return Math.floorDiv(timeInMillis + timeZone.getOffset(timeInMillis), 24 * 3600 * 1000L);
+  }
+
+  /**
+   * Get the ISO week of an epoch day, counting weeks starting on Monday from the epoch.
+   *
+   * @param epochDay the epoch day.
+   * @return the epoch week of this day.
+   */
+  public static long getEpochWeek(long epochDay) {
+    /* the epoch was a Thursday, 3 days after the Monday starting its week */
+    return Math.floorDiv(epochDay + 3, 7);
+  }
+
+  /**
+   * Get the version of this fare policy.
+   *
+   * @return the version of this fare policy, 0 if it is not published by a fare manager.
+   */
+  public long getVersion() {
+    return version;
+  }
+
+  /**
+   * Get the fare rule of a transit type.
+   *
+   * @param transitType the transit type.
+   * @return the fare rule of rides of this transit type.
+   */
+  public FareRule getFareRule(Ride.TransitType transitType) {
+    return fareRules.get(transitType);
+  }
+
+  /**
+   * Get the reach cap time of a transit type, within which rides of a continuous trip are capped
+   * by max fare per trip.
+   *
+   * @param transitType the transit type.
+   * @return the reach cap time in milliseconds of rides of this transit type.
+   */
+  public long getReachCapTime(Ride.TransitType transitType) {
+    return reachCapTimes.get(transitType);
+  }
+
+  /**
+   * Get the fare strategy of a transit type that is not a cap strategy, which calculates fares by
+   * itself instead of by a fare rule.
+   *
+   * @param transitType the transit type.
+   * @return the fare strategy of this transit type, null if it is a cap strategy.
+   */
+  FareStrategy getOtherStrategy(Ride.TransitType transitType) {
+    return otherStrategies.get(transitType);
+  }
+
+  /**
+   * Get the distance table of stations of a transit type taken with this snapshot.
+   *
+   * @param transitType the transit type.
+   * @return the distance table of this transit type, null if there is none.
+   */
+  public StationDistanceTable getDistanceTable(Ride.TransitType transitType) {
+    return transitType == Ride.TransitType.SUBWAY ? subwayDistanceTable : null;
+  }
+}
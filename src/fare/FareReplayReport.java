@@ -0,0 +1,160 @@
+package fare;
+
+import money.Money;
+import ride.Ride;
+
+/**
+ * A fare replay report compares the fares of stored rides replayed under the current fare policy
+ * with the fares under a candidate fare policy: the revenue of each transit type, and how the
+ * total fare of each card changes.
+ */
+public final class FareReplayReport {
+
+  private final long[] currentRevenueByType;
+  private final long[] candidateRevenueByType;
+  /* change of total fare in cents of each card, in ascending order */
+  private final long[] sortedCardDeltas;
+
+  /**
+   * Create a new fare replay report.
+   *
+   * @param currentRevenueByType revenue in cents under the current policy by transit type.
+   * @param candidateRevenueByType revenue in cents under the candidate policy by transit type.
+   * @param sortedCardDeltas change of total fare in cents of each card, in ascending order.
+   */
+  FareReplayReport(
+      long[] currentRevenueByType, long[] candidateRevenueByType, long[] sortedCardDeltas) {
+    this.currentRevenueByType = currentRevenueByType;
+    this.candidateRevenueByType = candidateRevenueByType;
+    this.sortedCardDeltas = sortedCardDeltas;
+  }
+
+  /**
+   * Get the revenue of a transit type under the current fare policy.
+   *
+   * @param transitType the transit type.
+   * @return the revenue in cents of rides of this transit type.
+   */
+  public long getCurrentRevenueInCents(Ride.TransitType transitType) {
+    return currentRevenueByType[transitType.ordinal()];
+  }
+
+  /**
+   * Get the revenue of a transit type under the candidate fare policy.
+   *
+   * @param transitType the transit type.
+   * @return the revenue in cents of rides of this transit type.
+   */
+  public long getCandidateRevenueInCents(Ride.TransitType transitType) {
+    return candidateRevenueByType[transitType.ordinal()];
+  }
+
+  /**
+   * Get the change of revenue of a transit type under the candidate fare policy.
+   *
+   * @param transitType the transit type.
+   * @return the candidate revenue minus the current revenue in cents of this transit type.
+   */
+  public long getRevenueDeltaInCents(Ride.TransitType transitType) {
+    return getCandidateRevenueInCents(transitType) - getCurrentRevenueInCents(transitType);
+  }
+
+  /**
+   * Get the total change of revenue under the candidate fare policy.
+   *
+   * @return the candidate revenue minus the current revenue in cents of all transit types.
+   */
+  public long getRevenueDeltaInCents() {
+    long delta = 0;
+    for (Ride.TransitType transitType : Ride.TransitType.values()) {
+      delta += getRevenueDeltaInCents(transitType);
+    }
+    return delta;
+  }
+
+  /**
+   * Get the number of cards replayed.
+   *
+   * @return the number of cards replayed.
+   */
+  public int getCardCount() {
+    return sortedCardDeltas.length;
+  }
+
+  /**
+   * Get the number of cards paying more under the candidate fare policy.
+   *
+   * @return the number of cards whose total fare goes up.
+   */
+  public int getCardsPayingMore() {
+    int count = 0;
+    for (long delta : sortedCardDeltas) {
+      if (delta > 0) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Get the number of cards paying less under the candidate fare policy.
+   *
+   * @return the number of cards whose total fare goes down.
+   */
+  public int getCardsPayingLess() {
+    int count = 0;
+    for (long delta : sortedCardDeltas) {
+      if (delta < 0) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Get the change of total fare of a card at a percentile, by nearest rank.
+   *
+   * @param percentile the percentile from 0 to 100.
+   * @return the change of total fare in cents of the card at this percentile, 0 if no card was
+   *     replayed.
+   */
+  public long getCardDeltaPercentileInCents(double percentile) {
+    if (sortedCardDeltas.length == 0) {
+      return 0;
+    }
+    int rank = (int) Math.ceil(percentile / 100 * sortedCardDeltas.length);
+    return sortedCardDeltas[Math.min(Math.max(rank - 1, 0), sortedCardDeltas.length - 1)];
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder result = new StringBuilder("Revenue Change: $");
+    result.append(Money.toDollars(getRevenueDeltaInCents()));
+    for (Ride.TransitType transitType : Ride.TransitType.values()) {
+      result
+          .append(System.lineSeparator())
+          .append(transitType)
+          .append(": $")
+          .append(Money.toDollars(getCurrentRevenueInCents(transitType)))
+          .append(" -> $")
+          .append(Money.toDollars(getCandidateRevenueInCents(transitType)));
+    }
+    return result
+        .append(System.lineSeparator())
+        .append("Cards Paying More: ")
+        .append(getCardsPayingMore())
+        .append(", Paying Less: ")
+        .append(getCardsPayingLess())
+        .append(" Of ")
+        .append(getCardCount())
+        .append(System.lineSeparator())
+        .append("Change Per Card: $")
+        .append(Money.toDollars(getCardDeltaPercentileInCents(10)))
+        .append(" (10th Percentile), $")
+        .append(Money.toDollars(getCardDeltaPercentileInCents(50)))
+        .append(" (Median), $")
+        .append(Money.toDollars(getCardDeltaPercentileInCents(90)))
+        .append(" (90th Percentile)")
+        .toString();
+  }
+}
@@ -0,0 +1,66 @@
+package fare;
+
+import ride.Ride;
+
+/**
+ * A fare rule is an immutable copy of the parameters of a cap strategy, which prices a ride
+ * without changing it. A fare engine uses one fare rule of each transit type.
+ */
+public abstract class FareRule {
+
+  private final Ride.TransitType transitType;
+  private final long reachCapFareInCents;
+  private final long maxFarePerTripInCents;
+
+  /**
+   * Create a new fare rule.
+   *
+   * @param transitType the transit type of rides this rule prices.
+   * @param reachCapFareInCents the fare in cents charged after a trip has reached max fare per
+   *     trip.
+   * @param maxFarePerTripInCents the maximum fare in cents charged for a continuous trip within
+   *     cap time.
+   */
+  protected FareRule(
+      Ride.TransitType transitType, long reachCapFareInCents, long maxFarePerTripInCents) {
+    this.transitType = transitType;
+    this.reachCapFareInCents = reachCapFareInCents;
+    this.maxFarePerTripInCents = maxFarePerTripInCents;
+  }
+
+  public Ride.TransitType getTransitType() {
+    return transitType;
+  }
+
+  public long getReachCapFareInCents() {
+    return reachCapFareInCents;
+  }
+
+  public long getMaxFarePerTripInCents() {
+    return maxFarePerTripInCents;
+  }
+
+  /**
+   * Check whether or not this ride should be charged now.
+   *
+   * @param ride ride to check.
+   * @return true if this ride should be charged.
+   */
+  protected abstract boolean shouldTakeCharge(RideSnapshot ride);
+
+  /**
+   * Get the fare of this ride before any cap, from its distance travelled if needed.
+   *
+   * @param ride ride to price, with its path and distance travelled if it has ended.
+   * @return A long representing the fare of this ride in cents.
+   */
+  protected abstract long getFareInCents(RideSnapshot ride);
+
+  /**
+   * Check whether a ride is charged when it taps in, so a ride with missed tap out has already been
+   * charged.
+   *
+   * @return true if rides are charged at tap in.
+   */
+  protected abstract boolean chargesAtTapIn();
+}
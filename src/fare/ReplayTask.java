@@ -0,0 +1,169 @@
+package fare;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RecursiveAction;
+import ride.Ride;
+import ride.TripAccumulator;
+
+/**
+ * A replay task replays the stored rides of a range of cards under a current and a candidate fare
+ * policy, splitting the range in halves to be replayed in parallel until it is small enough. The
+ * rides of a card are replayed tap by tap on snapshots, so no card, ride or statistics of the
+ * system map is changed.
+ */
+class ReplayTask extends RecursiveAction {
+
+  /* replay this many cards in one task at most, cards with only a few rides are cheap to replay */
+  private static final int CARDS_PER_TASK = 32;
+
+  private final FareEngine fareEngine;
+  private final FarePolicySnapshot currentPolicy;
+  private final FarePolicySnapshot candidatePolicy;
+  private final List<Ride[]> ridesByCard;
+  /* fare in cents of each card by transit type, row by card, filled in by the replaying task */
+  private final long[] currentFares;
+  private final long[] candidateFares;
+  private final int from;
+  private final int to;
+
+  /**
+   * Create a new replay task.
+   *
+   * @param fareEngine fare engine to decide fares with.
+   * @param currentPolicy the fare policy the rides are charged by now.
+   * @param candidatePolicy the fare policy to compare with.
+   * @param ridesByCard stored rides of each card, in order.
+   * @param currentFares fare in cents of each card and transit type under the current policy,
+   *     to be filled in.
+   * @param candidateFares fare in cents of each card and transit type under the candidate
+   *     policy, to be filled in.
+   * @param from index of the first card to replay.
+   * @param to index after the last card to replay.
+   */
+  ReplayTask(
+      FareEngine fareEngine,
+      FarePolicySnapshot currentPolicy,
+      FarePolicySnapshot candidatePolicy,
+      List<Ride[]> ridesByCard,
+      long[] currentFares,
+      long[] candidateFares,
+      int from,
+      int to) {
+    this.fareEngine = fareEngine;
+    this.currentPolicy = currentPolicy;
+    this.candidatePolicy = candidatePolicy;
+    this.ridesByCard = ridesByCard;
+    this.currentFares = currentFares;
+    this.candidateFares = candidateFares;
+    this.from = from;
+    this.to = to;
+  }
+
+  @Override
+  protected void compute() {
+    if (to - from <= CARDS_PER_TASK) {
+      int transitTypes = Ride.TransitType.values().length;
+      for (int i = from; i < to; i++) {
+        replay(ridesByCard.get(i), currentPolicy, currentFares, i * transitTypes);
+        replay(ridesByCard.get(i), candidatePolicy, candidateFares, i * transitTypes);
+      }
+    } else {
+      int middle = (from + to) >>> 1;
+      invokeAll(
+          new ReplayTask(
+              fareEngine,
+              currentPolicy,
+              candidatePolicy,
+              ridesByCard,
+              currentFares,
+              candidateFares,
+              from,
+              middle),
+          new ReplayTask(
+              fareEngine,
+              currentPolicy,
+              candidatePolicy,
+              ridesByCard,
+              currentFares,
+              candidateFares,
+              middle,
+              to));
+    }
+  }
+
+  /**
+   * Replay the rides of a card tap by tap, and decide the fare after each tap as a fare manager
+   * does when the card taps. A ride closed as a missed tap out is closed again by the ride after
+   * it.
+   *
+   * @param rides stored rides of this card, in order.
+   * @param policy the fare policy to charge by.
+   * @param fares fare in cents of each card and transit type, to add the fares of this card to.
+   * @param row index of the fare of the first transit type of this card.
+   */
+  private void replay(Ride[] rides, FarePolicySnapshot policy, long[] fares, int row) {
+    ArrayList<RideSnapshot> replayed = new ArrayList<>(rides.length);
+    /* keeps the trip and spend of the replayed rides the same way as a ride record does */
+    TripAccumulator<RideSnapshot> tripAccumulator = new TripAccumulator<>(replayed);
+    for (Ride ride : rides) {
+      replayed.add(RideSnapshot.getReplayInstance(ride));
+      tripAccumulator.rideAdded();
+      if (ride.getTapInTime() != null) {
+        charge(replayed, tripAccumulator, policy, fares, row);
+      }
+      if (ride.getTapOutTime() != null) { // not a missed tap out, nor a ride not finished yet
+        int latest = replayed.size() - 1;
+        long tapOutTime = ride.getTapOutTime().getTimeInMillis();
+        replayed.set(latest, replayed.get(latest).withTapOut(ride.getTapOutLocation(), tapOutTime));
+        charge(replayed, tripAccumulator, policy, fares, row);
+      }
+    }
+  }
+
+  /**
+   * Decide the fare of the latest replayed ride, keep the rides as they are after this charge,
+   * and add the fare deducted to the transit type of each ride charged.
+   *
+   * @param replayed rides of this card replayed so far.
+   * @param tripAccumulator the trip accumulator of the replayed rides.
+   * @param policy the fare policy to charge by.
+   * @param fares fare in cents of each card and transit type.
+   * @param row index of the fare of the first transit type of this card.
+   */
+  private void charge(
+      List<RideSnapshot> replayed,
+      TripAccumulator<RideSnapshot> tripAccumulator,
+      FarePolicySnapshot policy,
+      long[] fares,
+      int row) {
+    int latest = replayed.size() - 1;
+    RideSnapshot latestRide = replayed.get(latest);
+    RideSnapshot previousRide = latest > 0 ? replayed.get(latest - 1) : null;
+    long reachCapTime = policy.getReachCapTime(latestRide.getTransitType());
+    long epochDay = policy.getEpochDay(latestRide.getChargeTimeInMillis());
+    long epochWeek = FarePolicySnapshot.getEpochWeek(epochDay);
+    FareDecision decision =
+        fareEngine.decide(
+            RideWindow.getInstance(
+                latestRide,
+                previousRide,
+                tripAccumulator.getFareThisTripInCents(reachCapTime),
+                epochDay,
+                tripAccumulator.getDaySpendInCents(epochDay),
+                tripAccumulator.getWeekSpendInCents(epochWeek)),
+            policy);
+    if (decision.getAmountInCents() != 0) {
+      tripAccumulator.addSpend(epochDay, epochWeek, decision.getAmountInCents());
+    }
+    /* the fare of the latest ride only changes if it is charged */
+    long latestFare = decision.getLatestRide().getFareInCents() - latestRide.getFareInCents();
+    fares[row + latestRide.getTransitType().ordinal()] += latestFare;
+    replayed.set(latest, decision.getLatestRide());
+    if (decision.getMissedTapOutRide() != null) {
+      fares[row + decision.getMissedTapOutRide().getTransitType().ordinal()] +=
+          decision.getAmountInCents() - latestFare;
+      replayed.set(latest - 1, decision.getMissedTapOutRide());
+    }
+  }
+}
@@ -0,0 +1,310 @@
+package fare;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import map.RidePath;
+import map.Vertex;
+import money.Money;
+import ride.Ride;
+import ride.TripLeg;
+
+/**
+ * A ride snapshot is an immutable copy of a ride at the time a fare is decided. A fare engine
+ * never changes a ride, it works on snapshots and returns changed copies of them in its fare
+ * decision, which are written back to their rides when the decision is applied.
+ */
+public final class RideSnapshot implements TripLeg {
+
+  private final Ride ride;
+  private final Ride.TransitType transitType;
+  private final String tapInLocation;
+  /* null if this ride has missed tap in */
+  private final Long tapInTimeInMillis;
+  private final String tapOutLocation;
+  /* null if this ride has not tapped out */
+  private final Long tapOutTimeInMillis;
+  private final long distanceInHundredths;
+  private final long fareInCents;
+  /* null if the path of this ride is not known yet */
+  private final List<Vertex> path;
+
+  private RideSnapshot(
+      Ride ride,
+      Ride.TransitType transitType,
+      String tapInLocation,
+      Long tapInTimeInMillis,
+      String tapOutLocation,
+      Long tapOutTimeInMillis,
+      long distanceInHundredths,
+      long fareInCents,
+      List<Vertex> path) {
+    this.ride = ride;
+    this.transitType = transitType;
+    this.tapInLocation = tapInLocation;
+    this.tapInTimeInMillis = tapInTimeInMillis;
+    this.tapOutLocation = tapOutLocation;
+    this.tapOutTimeInMillis = tapOutTimeInMillis;
+    this.distanceInHundredths = distanceInHundredths;
+    this.fareInCents = fareInCents;
+    this.path = path;
+  }
+
+  /**
+   * Get a snapshot of a ride as it is now.
+   *
+   * @param ride the ride.
+   * @return A new RideSnapshot of this ride.
+   */
+  public static RideSnapshot getInstance(Ride ride) {
+    return new RideSnapshot(
+        ride,
+        ride.getTransitType(),
+        ride.getTapInLocation(),
+        ride.getTapInTime() == null ? null : ride.getTapInTime().getTimeInMillis(),
+        ride.getTapOutLocation(),
+        ride.getTapOutTime() == null ? null : ride.getTapOutTime().getTimeInMillis(),
+        ride.getDistanceInHundredths(),
+        ride.getFareInCents(),
+        getPathOf(ride));
+  }
+
+  /**
+   * Get a snapshot of a stored ride as it was when it tapped in, to replay its fare. The path and
+   * distance travelled it was charged by are kept, so the replay does not search paths again.
+   *
+   * @param ride the stored ride, which is never changed by a replay.
+   * @return A new RideSnapshot of this ride before it tapped out and was charged.
+   */
+  static RideSnapshot getReplayInstance(Ride ride) {
+    return new RideSnapshot(
+        ride,
+        ride.getTransitType(),
+        ride.getTapInLocation(),
+        ride.getTapInTime() == null ? null : ride.getTapInTime().getTimeInMillis(),
+        null,
+        null,
+        ride.getDistanceInHundredths(),
+        0,
+        getPathOf(ride));
+  }
+
+  /**
+   * Get the path of a ride, read in place if it is interned, or copied if it is not.
+   *
+   * @param ride the ride.
+   * @return an unmodifiable list of stations/stops on the path of this ride, or null.
+   */
+  private static List<Vertex> getPathOf(Ride ride) {
+    if (ride.getRidePath() != null) { // interned paths never change
+      return ride.getRidePath().getVertices();
+    }
+    return ride.getPath() == null
+        ? null
+        : Collections.unmodifiableList(new ArrayList<>(ride.getPath()));
+  }
+
+  /**
+   * Get the ride of this snapshot, to write a decision back to it.
+   *
+   * @return the ride this snapshot is taken from.
+   */
+  public Ride getRide() {
+    return ride;
+  }
+
+  public Ride.TransitType getTransitType() {
+    return transitType;
+  }
+
+  @Override
+  public String getTapInLocation() {
+    return tapInLocation;
+  }
+
+  /**
+   * Get the tap in time of this ride.
+   *
+   * @return tap in time in millis, null if this ride has missed tap in.
+   */
+  @Override
+  public Long getTapInTimeInMillis() {
+    return tapInTimeInMillis;
+  }
+
+  @Override
+  public String getTapOutLocation() {
+    return tapOutLocation;
+  }
+
+  /**
+   * Get the tap out time of this ride.
+   *
+   * @return tap out time in millis, null if this ride has not tapped out.
+   */
+  public Long getTapOutTimeInMillis() {
+    return tapOutTimeInMillis;
+  }
+
+  /**
+   * Get the time this ride is charged at, for daily and weekly caps.
+   *
+   * @return tap out time in millis, tap in time if this ride has not tapped out, or 0 if it has
+   *     neither.
+   */
+  public long getChargeTimeInMillis() {
+    if (tapOutTimeInMillis != null) {
+      return tapOutTimeInMillis;
+    }
+    return tapInTimeInMillis == null ? 0 : tapInTimeInMillis;
+  }
+
+  public long getDistanceInHundredths() {
+    return distanceInHundredths;
+  }
+
+  @Override
+  public long getFareInCents() {
+    return fareInCents;
+  }
+
+  /**
+   * Get the path of this ride.
+   *
+   * @return an unmodifiable list of stations/stops on this path, null if it is not known yet.
+   */
+  public List<Vertex> getPath() {
+    return path;
+  }
+
+  /**
+   * Check whether this ride has ended, by a tap out or as a missed tap out.
+   *
+   * @return true if this ride has a tap out location.
+   */
+  public boolean hasEnded() {
+    return tapOutLocation != null;
+  }
+
+  /**
+   * Check whether this ride has missed tap in.
+   *
+   * @return true if this ride has missed tap in.
+   */
+  public boolean hasMissedTapIn() {
+    return "(Missed Tap In)".equals(tapInLocation);
+  }
+
+  /**
+   * Check whether this ride has been closed as a missed tap out.
+   *
+   * @return true if this ride has missed tap out.
+   */
+  public boolean hasMissedTapOut() {
+    return "(Missed Tap Out)".equals(tapOutLocation);
+  }
+
+  /**
+   * Get a copy of this snapshot with another tap out location.
+   *
+   * @param newTapOutLocation the tap out location of the copy.
+   * @return a new RideSnapshot.
+   */
+  RideSnapshot withTapOutLocation(String newTapOutLocation) {
+    return new RideSnapshot(
+        ride,
+        transitType,
+        tapInLocation,
+        tapInTimeInMillis,
+        newTapOutLocation,
+        tapOutTimeInMillis,
+        distanceInHundredths,
+        fareInCents,
+        path);
+  }
+
+  /**
+   * Get a copy of this snapshot tapped out at a location and time.
+   *
+   * @param newTapOutLocation the tap out location of the copy.
+   * @param newTapOutTimeInMillis the tap out time of the copy in millis.
+   * @return a new RideSnapshot.
+   */
+  RideSnapshot withTapOut(String newTapOutLocation, Long newTapOutTimeInMillis) {
+    return new RideSnapshot(
+        ride,
+        transitType,
+        tapInLocation,
+        tapInTimeInMillis,
+        newTapOutLocation,
+        newTapOutTimeInMillis,
+        distanceInHundredths,
+        fareInCents,
+        path);
+  }
+
+  /**
+   * Get a copy of this snapshot with another fare.
+   *
+   * @param newFareInCents the fare of the copy in cents.
+   * @return a new RideSnapshot.
+   */
+  RideSnapshot withFare(long newFareInCents) {
+    return new RideSnapshot(
+        ride,
+        transitType,
+        tapInLocation,
+        tapInTimeInMillis,
+        tapOutLocation,
+        tapOutTimeInMillis,
+        distanceInHundredths,
+        newFareInCents,
+        path);
+  }
+
+  /**
+   * Get a copy of this snapshot with another path and distance travelled, rounded to hundredths
+   * of a unit like a ride rounds it.
+   *
+   * @param newPath stations/stops on the path of the copy.
+   * @param newDistanceTravelled the distance travelled on this path.
+   * @return a new RideSnapshot.
+   */
+  RideSnapshot withPath(List<Vertex> newPath, double newDistanceTravelled) {
+    return withVertices(
+        Collections.unmodifiableList(new ArrayList<>(newPath)), newDistanceTravelled);
+  }
+
+  /**
+   * Get a copy of this snapshot with an interned path and distance travelled. The stations/stops
+   * of the path are read in place, since interned paths never change.
+   *
+   * @param newPath the interned path of the copy.
+   * @param newDistanceTravelled the distance travelled on this path.
+   * @return a new RideSnapshot.
+   */
+  RideSnapshot withPath(RidePath newPath, double newDistanceTravelled) {
+    return withVertices(newPath.getVertices(), newDistanceTravelled);
+  }
+
+  /**
+   * Get a copy of this snapshot with another path and distance travelled, rounded to hundredths
+   * of a unit like a ride rounds it.
+   *
+   * @param newPath an unmodifiable list of stations/stops on the path of the copy.
+   * @param newDistanceTravelled the distance travelled on this path.
+   * @return a new RideSnapshot.
+   */
+  private RideSnapshot withVertices(List<Vertex> newPath, double newDistanceTravelled) {
+    return new RideSnapshot(
+        ride,
+        transitType,
+        tapInLocation,
+        tapInTimeInMillis,
+        tapOutLocation,
+        tapOutTimeInMillis,
+        Money.toHundredths(newDistanceTravelled),
+        fareInCents,
+        newPath);
+  }
+}
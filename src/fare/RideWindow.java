@@ -0,0 +1,168 @@
+package fare;
+
+import java.util.ArrayList;
+import ride.Ride;
+import ride.RideRecord;
+
+/**
+ * A ride window is an immutable snapshot of the rides of a card that decide the fare of its latest
+ * ride: the latest ride, the ride before it, which may have missed tap out, the fare collected
+ * in the trip of the latest ride within cap time, and the fare deducted from the card in the day
+ * and week the latest ride is charged in.
+ */
+public final class RideWindow {
+
+  private final RideSnapshot latestRide;
+  /* null if the latest ride is the first ride of this card */
+  private final RideSnapshot previousRide;
+  private final long fareThisTripInCents;
+  /* null if the rides are being replayed */
+  private final RideRecord rideRecord;
+  /* day and week the latest ride is charged in, counting from the epoch */
+  private final long epochDay;
+  private final long epochWeek;
+  private final long daySpendInCents;
+  private final long weekSpendInCents;
+
+  private RideWindow(
+      RideSnapshot latestRide,
+      RideSnapshot previousRide,
+      long fareThisTripInCents,
+      RideRecord rideRecord,
+      long epochDay,
+      long daySpendInCents,
+      long weekSpendInCents) {
+    this.latestRide = latestRide;
+    this.previousRide = previousRide;
+    this.fareThisTripInCents = fareThisTripInCents;
+    this.rideRecord = rideRecord;
+    this.epochDay = epochDay;
+    this.epochWeek = FarePolicySnapshot.getEpochWeek(epochDay);
+    this.daySpendInCents = daySpendInCents;
+    this.weekSpendInCents = weekSpendInCents;
+  }
+
+  /**
+   * Get a snapshot of the ride window of a ride record as it is now, within the reach cap time of
+   * the transit type of its latest ride.
+   *
+   * @param rideRecord the ride record of a card, with at least one ride.
+   * @param policy the fare policy with the reach cap time of each transit type and the time zone
+   *     of days.
+   * @return A new RideWindow of this ride record.
+   */
+  public static RideWindow getInstance(RideRecord rideRecord, FarePolicySnapshot policy) {
+    ArrayList<Ride> allRides = rideRecord.getAllRides();
+    RideSnapshot latestRide = RideSnapshot.getInstance(rideRecord.getLatestRide());
+    RideSnapshot previousRide =
+        allRides.size() > 1 ? RideSnapshot.getInstance(allRides.get(allRides.size() - 2)) : null;
+    long reachCapTime = policy.getReachCapTime(latestRide.getTransitType());
+    long epochDay = policy.getEpochDay(latestRide.getChargeTimeInMillis());
+    return new RideWindow(
+        latestRide,
+        previousRide,
+        rideRecord.getFareThisTripInCents(reachCapTime),
+        rideRecord,
+        epochDay,
+        rideRecord.getDaySpendInCents(epochDay),
+        rideRecord.getWeekSpendInCents(FarePolicySnapshot.getEpochWeek(epochDay)));
+  }
+
+  /**
+   * Get a ride window of rides being replayed.
+   *
+   * @param latestRide the latest ride.
+   * @param previousRide the ride before the latest ride, null if there is none.
+   * @param fareThisTripInCents total fare in cents collected in the trip of the latest ride within
+   *     cap time, before the latest ride.
+   * @param epochDay the day the latest ride is charged in, counting from the epoch.
+   * @param daySpendInCents fare in cents deducted in this day, before the latest ride.
+   * @param weekSpendInCents fare in cents deducted in the week of this day, before the latest
+   *     ride.
+   * @return A new RideWindow of these rides.
+   */
+  static RideWindow getInstance(
+      RideSnapshot latestRide,
+      RideSnapshot previousRide,
+      long fareThisTripInCents,
+      long epochDay,
+      long daySpendInCents,
+      long weekSpendInCents) {
+    return new RideWindow(
+        latestRide,
+        previousRide,
+        fareThisTripInCents,
+        null,
+        epochDay,
+        daySpendInCents,
+        weekSpendInCents);
+  }
+
+  public RideSnapshot getLatestRide() {
+    return latestRide;
+  }
+
+  /**
+   * Get the ride before the latest ride.
+   *
+   * @return the previous ride, null if the latest ride is the first ride.
+   */
+  public RideSnapshot getPreviousRide() {
+    return previousRide;
+  }
+
+  /**
+   * Get total fare in cents collected in the continuous trip of the latest ride within cap time,
+   * before the latest ride.
+   *
+   * @return total fare in cents collected in this continuous trip(if there is) within cap time.
+   */
+  public long getFareThisTripInCents() {
+    return fareThisTripInCents;
+  }
+
+  /**
+   * Get the ride record this window is taken from, to add the fare deducted to it.
+   *
+   * @return the ride record of the card, null if the rides are being replayed.
+   */
+  public RideRecord getRideRecord() {
+    return rideRecord;
+  }
+
+  /**
+   * Get the day the latest ride is charged in.
+   *
+   * @return the epoch day in the time zone of the fare policy.
+   */
+  public long getEpochDay() {
+    return epochDay;
+  }
+
+  /**
+   * Get the week the latest ride is charged in.
+   *
+   * @return the epoch week, starting on Monday.
+   */
+  public long getEpochWeek() {
+    return epochWeek;
+  }
+
+  /**
+   * Get the fare deducted from the card in the day the latest ride is charged in, before it.
+   *
+   * @return the fare deducted in cents in this day.
+   */
+  public long getDaySpendInCents() {
+    return daySpendInCents;
+  }
+
+  /**
+   * Get the fare deducted from the card in the week the latest ride is charged in, before it.
+   *
+   * @return the fare deducted in cents in this week.
+   */
+  public long getWeekSpendInCents() {
+    return weekSpendInCents;
+  }
+}
@@ -0,0 +1,136 @@
+package fare;
+
+import card.Card;
+import java.util.Calendar;
+import java.util.List;
+import java.util.concurrent.RecursiveAction;
+import map.SystemMap;
+import ride.Ride;
+import ride.RideRecord;
+
+/**
+ * A settlement task settles the taps of a range of cards, splitting the range in halves to be
+ * settled in parallel until it is small enough. The taps of a card are settled in order by one
+ * thread, so the rides of a card are charged exactly as they would be tap by tap.
+ */
+class SettlementTask extends RecursiveAction {
+
+  /* settle this many cards in one task at most, cards with only a few taps are cheap to settle */
+  private static final int CARDS_PER_TASK = 32;
+
+  private final FareEngine fareEngine;
+  private final FarePolicySnapshot policy;
+  private final SystemMap systemMap;
+  private final List<Card> cards;
+  private final List<List<Tap>> tapsByCard;
+  /* fare in cents to deduct from each card, filled in by the task settling the card */
+  private final long[] fares;
+  /* number of taps of each card skipped at stations/stops its rides cannot use, to be filled in */
+  private final int[] skippedTaps;
+  private final int from;
+  private final int to;
+
+  /**
+   * Create a new settlement task.
+   *
+   * @param fareEngine fare engine to decide fares with.
+   * @param policy the fare rules to charge by.
+   * @param systemMap system map to record statistics of finished rides in.
+   * @param cards cards to settle.
+   * @param tapsByCard taps of each card, in order of time.
+   * @param fares fare in cents to deduct from each card, to be filled in.
+   * @param skippedTaps number of taps of each card skipped, to be filled in.
+   * @param from index of the first card to settle.
+   * @param to index after the last card to settle.
+   */
+  SettlementTask(
+      FareEngine fareEngine,
+      FarePolicySnapshot policy,
+      SystemMap systemMap,
+      List<Card> cards,
+      List<List<Tap>> tapsByCard,
+      long[] fares,
+      int[] skippedTaps,
+      int from,
+      int to) {
+    this.fareEngine = fareEngine;
+    this.policy = policy;
+    this.systemMap = systemMap;
+    this.cards = cards;
+    this.tapsByCard = tapsByCard;
+    this.fares = fares;
+    this.skippedTaps = skippedTaps;
+    this.from = from;
+    this.to = to;
+  }
+
+  @Override
+  protected void compute() {
+    if (to - from <= CARDS_PER_TASK) {
+      for (int i = from; i < to; i++) {
+        fares[i] = settle(cards.get(i).getRideRecords(), tapsByCard.get(i), i);
+      }
+    } else {
+      int middle = (from + to) >>> 1;
+      invokeAll(
+          new SettlementTask(
+              fareEngine, policy, systemMap, cards, tapsByCard, fares, skippedTaps, from, middle),
+          new SettlementTask(
+              fareEngine, policy, systemMap, cards, tapsByCard, fares, skippedTaps, middle, to));
+    }
+  }
+
+  /**
+   * Add the taps of a card to its ride records one by one, and decide the fare after each tap as
+   * a fare manager does when the card taps. A tap at a station/stop no route of its ride stops
+   * at, or a tap out that cannot be reached from the tap in of its ride, is skipped, as a gate
+   * would not have accepted it.
+   *
+   * @param rideRecord the ride records of this card.
+   * @param taps taps of this card, in order of time.
+   * @param card index of this card.
+   * @return total fare in cents to deduct from this card.
+   */
+  private long settle(RideRecord rideRecord, List<Tap> taps, int card) {
+    long fare = 0;
+    for (Tap tap : taps) {
+      if (!canSettle(tap, rideRecord.getLatestRide())) {
+        skippedTaps[card]++;
+        continue;
+      }
+      Calendar time = Calendar.getInstance();
+      time.setTimeInMillis(tap.getTimeInMillis());
+      if (tap.isTapIn()) {
+        rideRecord.add(Ride.getInstance(time, tap.getLocation(), tap.getTransitType()));
+      } else {
+        Ride ride = rideRecord.getLatestRide();
+        if (ride == null || ride.getTapOutLocation() != null) { // missed tap in
+          ride = Ride.getInstance(null, "(Missed Tap In)", tap.getTransitType());
+          rideRecord.add(ride);
+        }
+        ride.setTapOutLocation(tap.getLocation());
+        ride.setTapOutTime(time);
+      }
+      FareDecision decision = fareEngine.decide(RideWindow.getInstance(rideRecord, policy), policy);
+      decision.apply(systemMap);
+      fare += decision.getAmountInCents();
+    }
+    return fare;
+  }
+
+  /**
+   * Check whether a tap is at a station/stop its ride can use.
+   *
+   * @param tap the tap to settle.
+   * @param latestRide the latest ride of the card, or null.
+   * @return true if this tap is a tap out that can be reached from the tap in of the latest ride,
+   *     or else a route of its transit type stops at its station/stop.
+   */
+  private boolean canSettle(Tap tap, Ride latestRide) {
+    if (!tap.isTapIn() && latestRide != null && latestRide.getTapOutLocation() == null) {
+      return systemMap.canReach(
+          latestRide.getTransitType(), latestRide.getTapInLocation(), tap.getLocation());
+    }
+    return systemMap.isServedBy(tap.getLocation(), tap.getTransitType());
+  }
+}
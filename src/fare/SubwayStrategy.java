@@ -1,9 +1,10 @@
 package fare;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
-import java.util.LinkedList;
 import map.SystemMap;
-import map.Vertex;
+import money.Money;
 import ride.Ride;
 
 /**
@@ -14,6 +15,11 @@ import ride.Ride;
  */
 public class SubwayStrategy extends CapStrategy implements Serializable {
 
+  /* serialVersionUID of the first subway strategy, its fare is moved to a rate in readObject */
+  private static final long serialVersionUID = 7102462683426137770L;
+  /* fare per unit in hundredths of a cent */
+  private long farePerUnitRate;
+  /* fare per unit of snapshots before fixed point money, only read to migrate it */
   private double farePerUnit;
 
   /**
@@ -24,58 +30,90 @@ public class SubwayStrategy extends CapStrategy implements Serializable {
   public SubwayStrategy(SystemMap systemMap) {
     super(systemMap);
     /* set fare per unit by $0.5 by default*/
-    this.farePerUnit = 0.5;
+    this.farePerUnitRate = Money.toRate(0.5);
   }
 
   /**
-   * Check whether or not this subway ride should take charge.
+   * Set the fare should be charged for a unit of distance in this subway strategy. Notice that
+   * distance between two stations can have more that 1 unit.
    *
-   * @param ride ride to check.
-   * @return true if this ride should be charged.
+   * @param farePerUnit fare should be charged for a unit of distance.
    */
-  @Override
-  public boolean shouldTakeCharge(Ride ride) {
-    return (ride.getTapInLocation() != null
-        && ride.getTapInTime() != null
-        && ride.getTapOutLocation() != null
-        && ride.getTapOutTime() != null
-        && ride.getFare() == 0);
+  public void setFarePerUnit(double farePerUnit) {
+    this.farePerUnitRate = Money.toRate(farePerUnit);
   }
 
   /**
-   * Get the fare should be charged for this subway ride.
+   * Get an immutable copy of the parameters of this subway strategy.
    *
-   * @param ride ride to charge.
-   * @return A double representing the fare of this ride.
+   * @return A new SubwayFareRule of this subway strategy as it is now.
    */
   @Override
-  public double getOneTimeFare(Ride ride) {
-    double fareToDeduct;
-    String tapOutLocation = ride.getTapOutLocation();
-    double distanceTravelled;
-    if (tapOutLocation.equals("(Missed Tap Out)")) {
-      distanceTravelled = ride.getDistanceTravelled(); // get distance travelled from ride record
-    } else { // a normal tap out
-      String tapInLocation = ride.getTapInLocation();
-      /* assume the cardholder went through the shortest path */
-      /* from tap in location and tap out location */
-      LinkedList<Vertex> path = getSystemMap().getShortestPath(tapInLocation, tapOutLocation);
-      ride.setPath(path); // record the transit path in this ride
-      distanceTravelled = path.getLast().getDistance(); // get the distance travelled in this path
-      ride.setDistanceTravelled(distanceTravelled); // record teh distance travelled in this ride
-    }
-    fareToDeduct = distanceTravelled * farePerUnit;
-    ride.setFare(fareToDeduct);
-    return fareToDeduct;
+  FareRule getFareRule() {
+    return new SubwayFareRule(
+        getReachCapFareInCents(), getMaxFarePerTripInCents(), farePerUnitRate);
   }
 
   /**
-   * Set the fare should be charged for a unit of distance in this subway strategy. Notice that
-   * distance between two stations can have more that 1 unit.
+   * Read a subway strategy from a snapshot, moving the fare per unit of a snapshot before fixed
+   * point money into hundredths of a cent.
    *
-   * @param farePerUnit fare should be charged for a unit of distance.
+   * @param in the stream to read this subway strategy from.
    */
-  public void setFarePerUnit(double farePerUnit) {
-    this.farePerUnit = farePerUnit;
+  private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+    in.defaultReadObject();
+    if (farePerUnit != 0) {
+      farePerUnitRate = Money.toRate(farePerUnit);
+      farePerUnit = 0;
+    }
+  }
+
+  /** A subway fare rule charges a subway ride by its distance travelled, when it taps out. */
+  private static class SubwayFareRule extends FareRule {
+
+    /* fare per unit in hundredths of a cent */
+    private final long farePerUnitRate;
+
+    private SubwayFareRule(
+        long reachCapFareInCents, long maxFarePerTripInCents, long farePerUnitRate) {
+      super(Ride.TransitType.SUBWAY, reachCapFareInCents, maxFarePerTripInCents);
+      this.farePerUnitRate = farePerUnitRate;
+    }
+
+    /**
+     * Check whether or not this subway ride should take charge.
+     *
+     * @param ride ride to check.
+     * @return true if this ride should be charged.
+     */
+    @Override
+    protected boolean shouldTakeCharge(RideSnapshot ride) {
+      return ride.getTapInLocation() != null
+          && ride.getTapInTimeInMillis() != null
+          && ride.getTapOutLocation() != null
+          && ride.getTapOutTimeInMillis() != null
+          && ride.getFareInCents() == 0;
+    }
+
+    /**
+     * Get the fare of this subway ride, the product of distance travelled and fare per unit.
+     *
+     * @param ride ride to charge, with its distance travelled.
+     * @return A long representing the fare of this ride in cents.
+     */
+    @Override
+    protected long getFareInCents(RideSnapshot ride) {
+      return Money.multiply(farePerUnitRate, ride.getDistanceInHundredths());
+    }
+
+    /**
+     * A subway ride is charged when it taps out, so a ride with missed tap out is charged then.
+     *
+     * @return false.
+     */
+    @Override
+    protected boolean chargesAtTapIn() {
+      return false;
+    }
   }
 }
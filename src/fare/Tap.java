@@ -0,0 +1,86 @@
+package fare;
+
+import ride.Ride;
+
+/**
+ * A tap is a tap in or tap out of a card read from a tap file of an offline gate, to be settled
+ * later by a fare manager. A tap has the id of its card, the station/stop it happened at, its time
+ * and the transit type of the gate.
+ */
+public final class Tap {
+
+  private final String cardId;
+  private final String location;
+  private final long timeInMillis;
+  private final Ride.TransitType transitType;
+  private final boolean tapIn;
+
+  private Tap(
+      String cardId,
+      String location,
+      long timeInMillis,
+      Ride.TransitType transitType,
+      boolean tapIn) {
+    this.cardId = cardId;
+    this.location = location;
+    this.timeInMillis = timeInMillis;
+    this.transitType = transitType;
+    this.tapIn = tapIn;
+  }
+
+  /**
+   * Create a new tap.
+   *
+   * @param cardId id of card being tapped.
+   * @param location the Station/Stop that the tap occurred at.
+   * @param timeInMillis the time that the tap occurred.
+   * @param transitType transit type of the gate tapped at.
+   * @param tapIn true for a tap in, false for a tap out.
+   * @return A new Tap.
+   */
+  public static Tap getInstance(
+      String cardId,
+      String location,
+      long timeInMillis,
+      Ride.TransitType transitType,
+      boolean tapIn) {
+    return new Tap(cardId, location, timeInMillis, transitType, tapIn);
+  }
+
+  public String getCardId() {
+    return cardId;
+  }
+
+  public String getLocation() {
+    return location;
+  }
+
+  public long getTimeInMillis() {
+    return timeInMillis;
+  }
+
+  public Ride.TransitType getTransitType() {
+    return transitType;
+  }
+
+  /**
+   * Check whether this tap is a tap in.
+   *
+   * @return true for a tap in, false for a tap out.
+   */
+  public boolean isTapIn() {
+    return tapIn;
+  }
+
+  @Override
+  public String toString() {
+    return "Card "
+        + cardId
+        + (tapIn ? " Tapped In At " : " Tapped Out At ")
+        + location
+        + " ("
+        + transitType
+        + ") "
+        + timeInMillis;
+  }
+}
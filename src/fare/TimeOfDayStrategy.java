@@ -0,0 +1,249 @@
+package fare;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.EnumMap;
+import java.util.TimeZone;
+import map.SystemMap;
+import money.Money;
+import ride.Ride;
+
+/**
+ * A time of day strategy is a subclass of cap strategy. A time of day strategy charges a ride the
+ * fare of a bus or subway strategy, scaled by the rate of the time bucket the ride taps in, which
+ * is peak, off peak, night or weekend. A ride with missed tap in is priced by its tap out time.
+ * As it is in cap strategy, fare for a ride is capped by max fare per trip if there is a
+ * continuous ride within cap hour.
+ *
+ * <p>The time bucket of every minute of a week is kept in a lookup table, so the bucket of a ride
+ * is found by computing the minute of week of its time instead of reading fields of a calendar.
+ * A time of day strategy takes effect when it is added to fare policy by the name of its transit
+ * type.
+ */
+public class TimeOfDayStrategy extends CapStrategy implements Serializable {
+
+  /* serialVersionUID of the first time of day strategy, its rates are moved in readObject */
+  private static final long serialVersionUID = 7184230796882451194L;
+  /** Time buckets a time of day strategy prices rides by. */
+  public enum TimeBucket {
+    PEAK,
+    OFF_PEAK,
+    NIGHT,
+    WEEKEND
+  }
+
+  private static final int MINUTES_PER_DAY = 24 * 60;
+  private static final int MINUTES_PER_WEEK = 7 * MINUTES_PER_DAY;
+  /* minute of week of the epoch, which was a Thursday, counting from Monday */
+  private static final int EPOCH_MINUTE_OF_WEEK = 3 * MINUTES_PER_DAY;
+  /* a rate of the full fare, in hundredths of a percent */
+  private static final long FULL_RATE = 100 * 100;
+  private final CapStrategy baseStrategy;
+  /* ordinal of time bucket of each minute of week, counting from Monday 00:00 */
+  private final byte[] bucketByMinute;
+  /* hundredths of a percent of the fare of base strategy charged in each time bucket */
+  private EnumMap<TimeBucket, Long> rates;
+  /* whole percents of snapshots before finer rates, only read to migrate them */
+  private EnumMap<TimeBucket, Long> ratePercents;
+
+  /**
+   * Construct a new time of day strategy. By default, weekdays are peak from 7:00 to 10:00 and
+   * from 16:00 to 19:00, weekends are weekend from 6:00 to 22:00, nights from 22:00 to 6:00 are
+   * night, and other time is off peak. Rides are charged 100% of the fare of base strategy at
+   * peak, 80% off peak, 60% at night and 75% at weekend.
+   *
+   * @param systemMap the system map for this transit system.
+   * @param transitType transit type of rides this strategy charges.
+   */
+  public TimeOfDayStrategy(SystemMap systemMap, Ride.TransitType transitType) {
+    super(systemMap);
+    this.baseStrategy = CapStrategy.getNewFareStrategyInstance(systemMap, transitType);
+    this.bucketByMinute = new byte[MINUTES_PER_WEEK];
+    this.rates = new EnumMap<>(TimeBucket.class);
+    int[] weekdays = {
+      Calendar.MONDAY, Calendar.TUESDAY, Calendar.WEDNESDAY, Calendar.THURSDAY, Calendar.FRIDAY
+    };
+    for (int day : weekdays) {
+      setTimeBucket(day, 0, MINUTES_PER_DAY, TimeBucket.OFF_PEAK);
+      setTimeBucket(day, 7 * 60, 10 * 60, TimeBucket.PEAK);
+      setTimeBucket(day, 16 * 60, 19 * 60, TimeBucket.PEAK);
+    }
+    for (int day : new int[] {Calendar.SATURDAY, Calendar.SUNDAY}) {
+      setTimeBucket(day, 0, MINUTES_PER_DAY, TimeBucket.WEEKEND);
+    }
+    for (int day = Calendar.SUNDAY; day <= Calendar.SATURDAY; day++) {
+      setTimeBucket(day, 0, 6 * 60, TimeBucket.NIGHT);
+      setTimeBucket(day, 22 * 60, MINUTES_PER_DAY, TimeBucket.NIGHT);
+    }
+    setRate(TimeBucket.PEAK, 100);
+    setRate(TimeBucket.OFF_PEAK, 80);
+    setRate(TimeBucket.NIGHT, 60);
+    setRate(TimeBucket.WEEKEND, 75);
+  }
+
+  /**
+   * Get the strategy whose fare is scaled by time bucket, to set its one time fare or fare per
+   * unit.
+   *
+   * @return the bus or subway strategy of this time of day strategy.
+   */
+  public CapStrategy getBaseStrategy() {
+    return baseStrategy;
+  }
+
+  /**
+   * Set the time bucket of a period of a day of week.
+   *
+   * @param dayOfWeek the day of week, as Calendar.MONDAY to Calendar.SUNDAY.
+   * @param fromMinute the first minute of this period in the day.
+   * @param toMinute the minute after the last minute of this period in the day.
+   * @param timeBucket the time bucket of this period.
+   */
+  public void setTimeBucket(int dayOfWeek, int fromMinute, int toMinute, TimeBucket timeBucket) {
+    if (dayOfWeek < Calendar.SUNDAY
+        || dayOfWeek > Calendar.SATURDAY
+        || fromMinute < 0
+        || toMinute > MINUTES_PER_DAY
+        || fromMinute > toMinute) {
+      throw new IllegalArgumentException("Invalid Period Of Time Bucket!");
+    }
+    /* Calendar.MONDAY is 2 and Calendar.SUNDAY is 1, count days from Monday */
+    int dayStart = (dayOfWeek + 5) % 7 * MINUTES_PER_DAY;
+    Arrays.fill(
+        bucketByMinute,
+        dayStart + fromMinute,
+        dayStart + toMinute,
+        (byte) timeBucket.ordinal());
+  }
+
+  /**
+   * Set the percent of the fare of base strategy charged in a time bucket, rounded to hundredths
+   * of a percent.
+   *
+   * @param timeBucket the time bucket.
+   * @param ratePercent the percent of the fare of base strategy, 100 to charge the full fare.
+   * @throws IllegalArgumentException if this rate is negative or not a finite number.
+   */
+  public void setRate(TimeBucket timeBucket, double ratePercent) {
+    if (!(ratePercent >= 0) || Double.isInfinite(ratePercent)) {
+      throw new IllegalArgumentException("Invalid Rate Of Time Bucket!");
+    }
+    rates.put(timeBucket, Money.toHundredths(ratePercent));
+  }
+
+  /**
+   * Get an immutable copy of the parameters of this time of day strategy and its base strategy.
+   *
+   * @return A new TimeOfDayFareRule of this time of day strategy as it is now.
+   */
+  @Override
+  FareRule getFareRule() {
+    long[] bucketRates = new long[TimeBucket.values().length];
+    for (TimeBucket timeBucket : TimeBucket.values()) {
+      bucketRates[timeBucket.ordinal()] = rates.get(timeBucket);
+    }
+    return new TimeOfDayFareRule(
+        baseStrategy.getFareRule(),
+        getReachCapFareInCents(),
+        getMaxFarePerTripInCents(),
+        bucketByMinute.clone(),
+        bucketRates,
+        TimeZone.getDefault());
+  }
+
+  /**
+   * Read a time of day strategy from a snapshot, moving rates of a snapshot before finer rates
+   * from whole percents into hundredths of a percent.
+   *
+   * @param in the stream to read this time of day strategy from.
+   */
+  private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+    in.defaultReadObject();
+    if (ratePercents != null) {
+      rates = new EnumMap<>(TimeBucket.class);
+      for (TimeBucket timeBucket : ratePercents.keySet()) {
+        rates.put(timeBucket, ratePercents.get(timeBucket) * 100);
+      }
+      ratePercents = null;
+    }
+  }
+
+  /**
+   * A time of day fare rule charges a ride the fare of its base rule, scaled by the rate of the
+   * time bucket of the minute of week it taps in.
+   */
+  private static class TimeOfDayFareRule extends FareRule {
+
+    private final FareRule baseRule;
+    private final byte[] bucketByMinute;
+    /* hundredths of a percent of the fare of base rule by ordinal of time bucket */
+    private final long[] rates;
+    private final TimeZone timeZone;
+
+    private TimeOfDayFareRule(
+        FareRule baseRule,
+        long reachCapFareInCents,
+        long maxFarePerTripInCents,
+        byte[] bucketByMinute,
+        long[] rates,
+        TimeZone timeZone) {
+      super(baseRule.getTransitType(), reachCapFareInCents, maxFarePerTripInCents);
+      this.baseRule = baseRule;
+      this.bucketByMinute = bucketByMinute;
+      this.rates = rates;
+      this.timeZone = timeZone;
+    }
+
+    /**
+     * Check whether or not this ride should be charged now, as its base rule does.
+     *
+     * @param ride ride to check.
+     * @return true if this ride should be charged.
+     */
+    @Override
+    protected boolean shouldTakeCharge(RideSnapshot ride) {
+      return baseRule.shouldTakeCharge(ride);
+    }
+
+    /**
+     * Get the fare of base rule of this ride, scaled by the rate of its time bucket and rounded
+     * half up to a cent.
+     *
+     * @param ride ride to price.
+     * @return A long representing the fare of this ride in cents.
+     */
+    @Override
+    protected long getFareInCents(RideSnapshot ride) {
+      Long time = ride.getTapInTimeInMillis();
+      if (time == null) { // missed tap in
+        time = ride.getTapOutTimeInMillis();
+      }
+      long rate = time == null ? FULL_RATE : rates[bucketByMinute[getMinuteOfWeek(time)]];
+      return (baseRule.getFareInCents(ride) * rate + FULL_RATE / 2) / FULL_RATE;
+    }
+
+    /**
+     * Check whether a ride is charged when it taps in, as its base rule does.
+     *
+     * @return true if rides are charged at tap in.
+     */
+    @Override
+    protected boolean chargesAtTapIn() {
+      return baseRule.chargesAtTapIn();
+    }
+
+    /**
+     * Get the minute of week of a time in the time zone of this rule.
+     *
+     * @param timeInMillis the time in millis.
+     * @return the minute of week of this time, counting from Monday 00:00.
+     */
+    private int getMinuteOfWeek(long timeInMillis) {
+      long minutes = Math.floorDiv(timeInMillis + timeZone.getOffset(timeInMillis), 60000L);
+      return (int) Math.floorMod(minutes + EPOCH_MINUTE_OF_WEEK, (long) MINUTES_PER_WEEK);
+    }
+  }
+}
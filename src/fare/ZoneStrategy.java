@@ -0,0 +1,218 @@
+package fare;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.List;
+import map.SystemMap;
+import map.Vertex;
+import money.Money;
+import ride.Ride;
+
+/**
+ * A zone strategy is a subclass of cap strategy. A zone strategy charges a ride when the
+ * cardholder tap out, by the fare zones of the stations/stops it starts and ends at, which are
+ * numbered from 1 in order across the transit system. The fare of every pair of zones is kept in
+ * a zone fare matrix, and a ride whose path goes through a zone outside the zones between its
+ * start and end is charged a zone crossing fare for each such zone. As it is in cap strategy, fare
+ * for a ride is capped by max fare per trip if there is a continuous ride within cap hour.
+ *
+ * <p>Zones are read from the path of a ride, which the fare engine finds before it is charged, so
+ * a zone strategy itself never searches the graph. The path of a subway ride between two stations
+ * is read from the subway distance table once it is ready. Other paths, including every bus ride,
+ * every ride of a subway network with more stations than a distance table holds, and rides with a
+ * missed tap, are still searched in the system map at each tap out. A station/stop without a zone
+ * is in zone 1.
+ */
+public class ZoneStrategy extends CapStrategy implements Serializable {
+
+  /* serialVersionUID of the first zone strategy, its serialized fields are unchanged */
+  private static final long serialVersionUID = 2745829420431168077L;
+  /* zones crossed by a path are counted in the bits of a long */
+  private static final int MAX_ZONES = Long.SIZE;
+  private final Ride.TransitType transitType;
+  private final int zoneCount;
+  /* zone of each station/stop by name, from 1 */
+  private final HashMap<String, Integer> zoneByStation;
+  /* fare in cents from each zone to each zone, row by start zone */
+  private final long[] zoneFaresInCents;
+  private long zoneCrossingFareInCents;
+
+  /**
+   * Construct a new zone strategy. By default, a ride is charged $2 within a zone and $1 more for
+   * each zone between its start and end zone, and $1 for each zone it goes through outside them.
+   *
+   * @param systemMap the system map for this transit system.
+   * @param transitType transit type of rides this strategy charges.
+   * @param zoneCount the number of fare zones, at most 64.
+   */
+  public ZoneStrategy(SystemMap systemMap, Ride.TransitType transitType, int zoneCount) {
+    super(systemMap);
+    if (zoneCount < 1 || zoneCount > MAX_ZONES) {
+      throw new IllegalArgumentException("Invalid Number Of Zones: " + zoneCount + "!");
+    }
+    this.transitType = transitType;
+    this.zoneCount = zoneCount;
+    this.zoneByStation = new HashMap<>();
+    this.zoneFaresInCents = new long[zoneCount * zoneCount];
+    for (int from = 0; from < zoneCount; from++) {
+      for (int to = 0; to < zoneCount; to++) {
+        zoneFaresInCents[from * zoneCount + to] = 200 + 100 * Math.abs(from - to);
+      }
+    }
+    this.zoneCrossingFareInCents = 100;
+  }
+
+  /**
+   * Set the fare zone of a station/stop.
+   *
+   * @param stationName name of the station/stop.
+   * @param zone the zone of this station/stop, from 1.
+   */
+  public void setZone(String stationName, int zone) {
+    checkZone(zone);
+    zoneByStation.put(stationName, zone);
+  }
+
+  /**
+   * Set the fare of rides from a zone to a zone.
+   *
+   * @param fromZone the zone a ride starts at, from 1.
+   * @param toZone the zone a ride ends at, from 1.
+   * @param fare the fare of a ride between these zones.
+   */
+  public void setZoneFare(int fromZone, int toZone, double fare) {
+    checkZone(fromZone);
+    checkZone(toZone);
+    zoneFaresInCents[(fromZone - 1) * zoneCount + toZone - 1] = Money.toCents(fare);
+  }
+
+  /**
+   * Set the fare charged for each zone a ride goes through outside the zones between its start
+   * and end zone.
+   *
+   * @param zoneCrossingFare the fare charged for each of these zones.
+   */
+  public void setZoneCrossingFare(double zoneCrossingFare) {
+    this.zoneCrossingFareInCents = Money.toCents(zoneCrossingFare);
+  }
+
+  /**
+   * Check that a zone is one of the zones of this strategy.
+   *
+   * @param zone the zone to check.
+   */
+  private void checkZone(int zone) {
+    if (zone < 1 || zone > zoneCount) {
+      throw new IllegalArgumentException("No Such Zone: " + zone + "!");
+    }
+  }
+
+  /**
+   * Get an immutable copy of the parameters of this zone strategy.
+   *
+   * @return A new ZoneFareRule of this zone strategy as it is now.
+   */
+  @Override
+  FareRule getFareRule() {
+    return new ZoneFareRule(
+        transitType,
+        getReachCapFareInCents(),
+        getMaxFarePerTripInCents(),
+        zoneCount,
+        new HashMap<>(zoneByStation),
+        zoneFaresInCents.clone(),
+        zoneCrossingFareInCents);
+  }
+
+  /**
+   * A zone fare rule charges a ride by the zones of the stations/stops on its path, when it taps
+   * out.
+   */
+  private static class ZoneFareRule extends FareRule {
+
+    private final int zoneCount;
+    /* zone of each station/stop by name, from 1 */
+    private final HashMap<String, Integer> zoneByStation;
+    private final long[] zoneFaresInCents;
+    private final long zoneCrossingFareInCents;
+
+    private ZoneFareRule(
+        Ride.TransitType transitType,
+        long reachCapFareInCents,
+        long maxFarePerTripInCents,
+        int zoneCount,
+        HashMap<String, Integer> zoneByStation,
+        long[] zoneFaresInCents,
+        long zoneCrossingFareInCents) {
+      super(transitType, reachCapFareInCents, maxFarePerTripInCents);
+      this.zoneCount = zoneCount;
+      this.zoneByStation = zoneByStation;
+      this.zoneFaresInCents = zoneFaresInCents;
+      this.zoneCrossingFareInCents = zoneCrossingFareInCents;
+    }
+
+    /**
+     * Check whether or not this ride should take charge. A ride is charged when it taps out.
+     *
+     * @param ride ride to check.
+     * @return true if this ride should be charged.
+     */
+    @Override
+    protected boolean shouldTakeCharge(RideSnapshot ride) {
+      return ride.getTapInLocation() != null
+          && ride.getTapInTimeInMillis() != null
+          && ride.getTapOutLocation() != null
+          && ride.getTapOutTimeInMillis() != null
+          && ride.getFareInCents() == 0;
+    }
+
+    /**
+     * Get the fare of the zones of this ride, from the zone fare matrix and the zones on its path
+     * outside the zones between its start and end.
+     *
+     * @param ride ride to charge, with its path.
+     * @return A long representing the fare of this ride in cents.
+     */
+    @Override
+    protected long getFareInCents(RideSnapshot ride) {
+      List<Vertex> path = ride.getPath();
+      if (path == null || path.isEmpty()) {
+        return 0; // no station/stop to find zones of
+      }
+      int fromZone = getZone(path.get(0));
+      int toZone = getZone(path.get(path.size() - 1));
+      int lowZone = Math.min(fromZone, toZone);
+      int highZone = Math.max(fromZone, toZone);
+      long zonesOutside = 0;
+      for (Vertex vertex : path) {
+        int zone = getZone(vertex);
+        if (zone < lowZone || zone > highZone) {
+          zonesOutside |= 1L << zone;
+        }
+      }
+      return zoneFaresInCents[fromZone * zoneCount + toZone]
+          + zoneCrossingFareInCents * Long.bitCount(zonesOutside);
+    }
+
+    /**
+     * A ride is charged when it taps out, so a ride with missed tap out has not been charged.
+     *
+     * @return false.
+     */
+    @Override
+    protected boolean chargesAtTapIn() {
+      return false;
+    }
+
+    /**
+     * Get the zone of a station/stop, counting from 0.
+     *
+     * @param vertex the station/stop.
+     * @return the zone of this station/stop from 0, 0 if it has no zone.
+     */
+    private int getZone(Vertex vertex) {
+      Integer zone = zoneByStation.get(vertex.getValue());
+      return zone == null ? 0 : zone - 1;
+    }
+  }
+}
@@ -0,0 +1,549 @@
+package map;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * A contraction hierarchy is a routing index over a snapshot of the graph of a system map. Stations
+ * are contracted one by one in order of importance, adding shortcut edges so that shortest
+ * distances among the remaining stations are preserved. A query then only searches upward from the
+ * start and the end station, and unpacks the shortcuts it used back into original edges.
+ *
+ * <p>The snapshot is copied when the hierarchy is created, and contraction can run on another
+ * thread. The hierarchy answers queries only after it is ready.
+ */
+class ContractionHierarchy {
+
+  /* the maximum number of stations settled by one witness search */
+  private static final int WITNESS_SETTLE_LIMIT = 500;
+
+  private volatile int graphVersion;
+  private final Vertex[] vertices;
+  /* node index of each vertex by vertex id, -1 if the vertex is not in this snapshot */
+  private final int[] nodeByVertexId;
+  /* edges of the remaining graph while contracting, discarded once ready */
+  private List<List<Edge>> outEdges;
+  private List<List<Edge>> inEdges;
+  /* order in which each node has been contracted */
+  private final int[] rank;
+  /* edges from each node to nodes with higher rank */
+  private final Edge[][] upwardEdges;
+  /* edges to each node from nodes with higher rank */
+  private final Edge[][] downwardEdges;
+  private final ThreadLocal<SearchSpace[]> searchSpaces;
+  private volatile boolean ready;
+
+  /**
+   * Create a new contraction hierarchy from a snapshot of the graph. The hierarchy is not ready
+   * until it is contracted.
+   *
+   * @param graph all stations/stops of the system map.
+   * @param graphVersion version of the graph this snapshot is taken from.
+   */
+  ContractionHierarchy(Collection<Vertex> graph, int graphVersion) {
+    this.graphVersion = graphVersion;
+    this.vertices = graph.toArray(new Vertex[0]);
+    int maxVertexId = -1;
+    for (Vertex vertex : vertices) {
+      maxVertexId = Math.max(maxVertexId, vertex.getId());
+    }
+    this.nodeByVertexId = new int[maxVertexId + 1];
+    Arrays.fill(nodeByVertexId, -1);
+    for (int node = 0; node < vertices.length; node++) {
+      nodeByVertexId[vertices[node].getId()] = node;
+    }
+    this.outEdges = new ArrayList<>(vertices.length);
+    this.inEdges = new ArrayList<>(vertices.length);
+    for (int node = 0; node < vertices.length; node++) {
+      outEdges.add(new ArrayList<>());
+      inEdges.add(new ArrayList<>());
+    }
+    /* copy adjacent vertices now, the graph may change while contracting */
+    for (int from = 0; from < vertices.length; from++) {
+      for (Map.Entry<Vertex, Double> neighbor : vertices[from].getAdjacentVertices().entrySet()) {
+        int to = getNode(neighbor.getKey());
+        if (to >= 0 && to != from) {
+          addEdge(from, to, neighbor.getValue(), -1);
+        }
+      }
+    }
+    this.rank = new int[vertices.length];
+    this.upwardEdges = new Edge[vertices.length][];
+    this.downwardEdges = new Edge[vertices.length][];
+    this.searchSpaces =
+        ThreadLocal.withInitial(
+            () ->
+                new SearchSpace[] {
+                  new SearchSpace(vertices.length), new SearchSpace(vertices.length)
+                });
+  }
+
+  /**
+   * Get the version of the graph this hierarchy is built from.
+   *
+   * @return the version of the graph this hierarchy is built from.
+   */
+  int getGraphVersion() {
+    return graphVersion;
+  }
+
+  /**
+   * Keep using this hierarchy for a newer version of the graph that it is unaffected by.
+   *
+   * @param graphVersion the newer version of the graph.
+   */
+  void setGraphVersion(int graphVersion) {
+    this.graphVersion = graphVersion;
+  }
+
+  /**
+   * Check whether this hierarchy has been contracted and can answer queries.
+   *
+   * @return true if this hierarchy is ready.
+   */
+  boolean isReady() {
+    return ready;
+  }
+
+  /**
+   * Check whether this vertex is in the snapshot of this hierarchy.
+   *
+   * @param vertex the vertex to check.
+   * @return true if this hierarchy can answer queries about this vertex.
+   */
+  boolean contains(Vertex vertex) {
+    int node = getNode(vertex);
+    return node >= 0 && vertices[node] == vertex;
+  }
+
+  /**
+   * Contract all nodes in order of importance. Unimportant nodes, which need few shortcuts, are
+   * contracted first. The priority of a node is updated lazily when it is polled.
+   */
+  void contract() {
+    int nodeCount = vertices.length;
+    int[] priority = new int[nodeCount];
+    int[] contractedNeighbors = new int[nodeCount];
+    boolean[] contracted = new boolean[nodeCount];
+    SearchSpace witnessSearch = new SearchSpace(nodeCount);
+    for (int node = 0; node < nodeCount; node++) {
+      priority[node] = getPriority(node, contracted, contractedNeighbors, witnessSearch);
+    }
+    PriorityQueue<Integer> queue =
+        new PriorityQueue<>(
+            Math.max(1, nodeCount), (a, b) -> Integer.compare(priority[a], priority[b]));
+    for (int node = 0; node < nodeCount; node++) {
+      queue.add(node);
+    }
+    int order = 0;
+    while (!queue.isEmpty()) {
+      int node = queue.poll();
+      int newPriority = getPriority(node, contracted, contractedNeighbors, witnessSearch);
+      if (!queue.isEmpty() && newPriority > priority[queue.peek()]) {
+        /* this node became more important, contract it later */
+        priority[node] = newPriority;
+        queue.add(node);
+        continue;
+      }
+      contractNode(node, contracted, witnessSearch, true);
+      upwardEdges[node] = getRemainingEdges(outEdges.get(node), contracted, true);
+      downwardEdges[node] = getRemainingEdges(inEdges.get(node), contracted, false);
+      for (Edge edge : upwardEdges[node]) {
+        contractedNeighbors[edge.to]++;
+      }
+      for (Edge edge : downwardEdges[node]) {
+        contractedNeighbors[edge.from]++;
+      }
+      contracted[node] = true;
+      rank[node] = order++;
+    }
+    outEdges = null;
+    inEdges = null;
+    ready = true;
+  }
+
+  /**
+   * Get the shortest path from the start vertex to the end vertex. Both vertices must be in this
+   * hierarchy, and this hierarchy must be ready. The distance from the start vertex is recorded in
+   * every vertex on the path, the same way a full shortest path search does.
+   *
+   * @param startVertex the start vertex.
+   * @param endVertex the end vertex.
+   * @return A LinkedList of Vertex representing the shortest path, only the end vertex with
+   *     infinite distance if the end vertex cannot be reached.
+   */
+  LinkedList<Vertex> getShortestPath(Vertex startVertex, Vertex endVertex) {
+    SearchSpace[] spaces = searchSpaces.get();
+    SearchSpace forward = spaces[0];
+    SearchSpace backward = spaces[1];
+    int start = getNode(startVertex);
+    int end = getNode(endVertex);
+    int meeting = findMeetingNode(forward, backward, start, end);
+    LinkedList<Vertex> path = new LinkedList<>();
+    if (meeting < 0) { // cannot reach the end vertex
+      endVertex.setPathDistance(Double.POSITIVE_INFINITY);
+      path.add(endVertex);
+    } else {
+      /* edges of the hierarchy from start to meeting node, then from meeting node to end */
+      Deque<Edge> hierarchyEdges = new ArrayDeque<>();
+      for (int node = meeting; node != start; node = forward.parentEdge[node].from) {
+        hierarchyEdges.addFirst(forward.parentEdge[node]);
+      }
+      for (int node = meeting; node != end; node = backward.parentEdge[node].to) {
+        hierarchyEdges.addLast(backward.parentEdge[node]);
+      }
+      double distance = 0;
+      startVertex.setPathDistance(distance);
+      path.add(startVertex);
+      for (Edge originalEdge : unpack(hierarchyEdges)) {
+        distance += originalEdge.weight;
+        Vertex vertex = vertices[originalEdge.to];
+        vertex.setPathDistance(distance);
+        path.add(vertex);
+      }
+    }
+    forward.reset();
+    backward.reset();
+    return path;
+  }
+
+  /**
+   * Get the shortest distance from the start vertex to the end vertex without recording anything in
+   * the vertices. Both vertices must be in this hierarchy, and this hierarchy must be ready.
+   *
+   * @param startVertex the start vertex.
+   * @param endVertex the end vertex.
+   * @return the shortest distance, positive infinity if the end vertex cannot be reached.
+   */
+  double getShortestDistance(Vertex startVertex, Vertex endVertex) {
+    SearchSpace[] spaces = searchSpaces.get();
+    SearchSpace forward = spaces[0];
+    SearchSpace backward = spaces[1];
+    int meeting = findMeetingNode(forward, backward, getNode(startVertex), getNode(endVertex));
+    double result =
+        meeting < 0
+            ? Double.POSITIVE_INFINITY
+            : forward.distance[meeting] + backward.distance[meeting];
+    forward.reset();
+    backward.reset();
+    return result;
+  }
+
+  /**
+   * Search upward from both the start node and the end node, until neither search can find a
+   * shorter path. Both search spaces must be reset by the caller afterwards.
+   *
+   * @param forward search space for the search from the start node.
+   * @param backward search space for the search from the end node.
+   * @param start the start node.
+   * @param end the end node.
+   * @return the node on the shortest path where both searches meet, -1 if there is no path.
+   */
+  private int findMeetingNode(SearchSpace forward, SearchSpace backward, int start, int end) {
+    forward.start(start);
+    backward.start(end);
+    double best = Double.POSITIVE_INFINITY;
+    int meeting = -1;
+    while (Math.min(forward.heap.peekKey(), backward.heap.peekKey()) < best) {
+      boolean searchForward = forward.heap.peekKey() <= backward.heap.peekKey();
+      SearchSpace thisSearch = searchForward ? forward : backward;
+      SearchSpace otherSearch = searchForward ? backward : forward;
+      double key = thisSearch.heap.peekKey();
+      int node = thisSearch.heap.pop();
+      if (key > thisSearch.distance[node]) {
+        continue; // an outdated entry of this node
+      }
+      if (key + otherSearch.distance[node] < best) {
+        best = key + otherSearch.distance[node];
+        meeting = node;
+      }
+      Edge[] edges = searchForward ? upwardEdges[node] : downwardEdges[node];
+      for (Edge edge : edges) {
+        int next = searchForward ? edge.to : edge.from;
+        thisSearch.relax(next, key + edge.weight, edge);
+      }
+    }
+    return meeting;
+  }
+
+  /**
+   * Check whether this hierarchy still gives shortest paths after the graph has changed. This is
+   * the case if nothing is removed, no station/stop is added, and every added edge is at least as
+   * long as the shortest path between its two ends that already exists.
+   *
+   * @param delta how the graph has changed.
+   * @return true if this hierarchy can keep answering queries for the changed graph.
+   */
+  boolean isUnaffectedBy(GraphDelta delta) {
+    if (!ready
+        || !delta.getRemovedEdges().isEmpty()
+        || !delta.getAddedVertices().isEmpty()
+        || !delta.getRemovedVertices().isEmpty()) {
+      return false;
+    }
+    for (GraphDelta.Edge edge : delta.getAddedEdges()) {
+      if (!contains(edge.getFrom())
+          || !contains(edge.getTo())
+          || getShortestDistance(edge.getFrom(), edge.getTo()) > edge.getDistance()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Replace every shortcut in these edges by the two edges it skips, until only original edges are
+   * left.
+   *
+   * @param hierarchyEdges consecutive edges of the hierarchy from the start to the end of a path.
+   * @return consecutive original edges from the start to the end of this path.
+   */
+  private List<Edge> unpack(Deque<Edge> hierarchyEdges) {
+    List<Edge> result = new ArrayList<>();
+    Deque<Edge> toUnpack = new ArrayDeque<>();
+    while (!hierarchyEdges.isEmpty()) {
+      toUnpack.push(hierarchyEdges.pollFirst());
+      while (!toUnpack.isEmpty()) {
+        Edge edge = toUnpack.pop();
+        if (edge.middle < 0) {
+          result.add(edge);
+        } else {
+          /* push the second half first so the first half is unpacked first */
+          toUnpack.push(findEdge(edge.middle, edge.to));
+          toUnpack.push(findEdge(edge.from, edge.middle));
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Find the edge in this hierarchy from one node to another.
+   *
+   * @param from node the edge starts from.
+   * @param to node the edge goes to.
+   * @return the edge from one node to another.
+   */
+  private Edge findEdge(int from, int to) {
+    Edge[] candidates = rank[from] < rank[to] ? upwardEdges[from] : downwardEdges[to];
+    for (Edge edge : candidates) {
+      if (edge.from == from && edge.to == to) {
+        return edge;
+      }
+    }
+    throw new IllegalStateException("Missing edge in contraction hierarchy!");
+  }
+
+  /**
+   * Get the priority of a node, the fewer shortcuts contracting it adds compared to the edges it
+   * removes, the earlier it should be contracted. Nodes whose neighbors have been contracted are
+   * postponed to keep the hierarchy balanced.
+   */
+  private int getPriority(
+      int node, boolean[] contracted, int[] contractedNeighbors, SearchSpace witnessSearch) {
+    int shortcuts = contractNode(node, contracted, witnessSearch, false);
+    int removedEdges = 0;
+    for (Edge edge : outEdges.get(node)) {
+      if (!contracted[edge.to]) {
+        removedEdges++;
+      }
+    }
+    for (Edge edge : inEdges.get(node)) {
+      if (!contracted[edge.from]) {
+        removedEdges++;
+      }
+    }
+    return shortcuts - removedEdges + contractedNeighbors[node];
+  }
+
+  /**
+   * Find the shortcuts needed to keep shortest distances between the neighbors of a node if this
+   * node is removed. A shortcut is not needed if a witness path that avoids this node is at most as
+   * long.
+   *
+   * @param node the node to contract.
+   * @param contracted nodes that have been contracted.
+   * @param witnessSearch search space for witness searches.
+   * @param addShortcuts whether to add the shortcuts or only count them.
+   * @return number of shortcuts needed.
+   */
+  private int contractNode(
+      int node, boolean[] contracted, SearchSpace witnessSearch, boolean addShortcuts) {
+    int shortcuts = 0;
+    double maxOutWeight = 0;
+    for (Edge out : outEdges.get(node)) {
+      if (!contracted[out.to]) {
+        maxOutWeight = Math.max(maxOutWeight, out.weight);
+      }
+    }
+    for (Edge in : inEdges.get(node)) {
+      if (contracted[in.from]) {
+        continue;
+      }
+      findWitnesses(in.from, node, in.weight + maxOutWeight, contracted, witnessSearch);
+      for (Edge out : outEdges.get(node)) {
+        if (contracted[out.to] || out.to == in.from) {
+          continue;
+        }
+        double viaNode = in.weight + out.weight;
+        if (witnessSearch.distance[out.to] > viaNode) {
+          shortcuts++;
+          if (addShortcuts) {
+            addEdge(in.from, out.to, viaNode, node);
+          }
+        }
+      }
+      witnessSearch.reset();
+    }
+    return shortcuts;
+  }
+
+  /**
+   * Search shortest distances from a source node in the remaining graph without passing the node to
+   * contract. The search stops at the distance bound or after settling enough nodes, in which case
+   * distances are over estimated and extra shortcuts may be added.
+   */
+  private void findWitnesses(
+      int source, int avoid, double bound, boolean[] contracted, SearchSpace witnessSearch) {
+    witnessSearch.start(source);
+    int settled = 0;
+    while (!witnessSearch.heap.isEmpty() && witnessSearch.heap.peekKey() <= bound) {
+      double key = witnessSearch.heap.peekKey();
+      int node = witnessSearch.heap.pop();
+      if (key > witnessSearch.distance[node]) {
+        continue;
+      }
+      if (++settled > WITNESS_SETTLE_LIMIT) {
+        break;
+      }
+      for (Edge edge : outEdges.get(node)) {
+        if (edge.to != avoid && !contracted[edge.to]) {
+          witnessSearch.relax(edge.to, key + edge.weight, edge);
+        }
+      }
+    }
+  }
+
+  /**
+   * Add an edge to the remaining graph, or shorten the existing edge between these two nodes.
+   *
+   * @param from node this edge starts from.
+   * @param to node this edge goes to.
+   * @param weight distance of this edge.
+   * @param middle the contracted node this shortcut skips, -1 for an original edge.
+   */
+  private void addEdge(int from, int to, double weight, int middle) {
+    for (Edge edge : outEdges.get(from)) {
+      if (edge.to == to) {
+        if (weight < edge.weight) {
+          edge.weight = weight;
+          edge.middle = middle;
+        }
+        return;
+      }
+    }
+    Edge edge = new Edge(from, to, weight, middle);
+    outEdges.get(from).add(edge);
+    inEdges.get(to).add(edge);
+  }
+
+  /**
+   * Get edges of a node to nodes that have not been contracted.
+   *
+   * @param edges out edges or in edges of a node.
+   * @param contracted nodes that have been contracted.
+   * @param outgoing whether these are out edges.
+   * @return edges of a node to nodes that have not been contracted.
+   */
+  private Edge[] getRemainingEdges(List<Edge> edges, boolean[] contracted, boolean outgoing) {
+    List<Edge> result = new ArrayList<>();
+    for (Edge edge : edges) {
+      if (!contracted[outgoing ? edge.to : edge.from]) {
+        result.add(edge);
+      }
+    }
+    return result.toArray(new Edge[0]);
+  }
+
+  /**
+   * Get the node index of this vertex in this hierarchy.
+   *
+   * @param vertex the vertex to look up.
+   * @return node index of this vertex, -1 if it is not in this hierarchy.
+   */
+  private int getNode(Vertex vertex) {
+    int vertexId = vertex.getId();
+    return vertexId < nodeByVertexId.length ? nodeByVertexId[vertexId] : -1;
+  }
+
+  /** An edge is an original edge between two stations/stops or a shortcut over a node. */
+  private static class Edge {
+
+    private final int from;
+    private final int to;
+    private double weight;
+    private int middle;
+
+    private Edge(int from, int to, double weight, int middle) {
+      this.from = from;
+      this.to = to;
+      this.weight = weight;
+      this.middle = middle;
+    }
+  }
+
+  /**
+   * A search space stores tentative distances and the edge each node is reached by. Only touched
+   * nodes are reset after a search, so a search space can be reused without allocation.
+   */
+  private static class SearchSpace {
+
+    private final double[] distance;
+    private final Edge[] parentEdge;
+    private final int[] touched;
+    private final NodeHeap heap;
+    private int touchedCount;
+
+    private SearchSpace(int nodeCount) {
+      this.distance = new double[nodeCount];
+      Arrays.fill(distance, Double.POSITIVE_INFINITY);
+      this.parentEdge = new Edge[nodeCount];
+      this.touched = new int[nodeCount];
+      this.heap = new NodeHeap();
+    }
+
+    /** Start a new search from this node. */
+    private void start(int source) {
+      relax(source, 0, null);
+    }
+
+    /** Record a shorter distance to this node if there is one. */
+    private void relax(int node, double newDistance, Edge edge) {
+      if (newDistance < distance[node]) {
+        if (distance[node] == Double.POSITIVE_INFINITY) {
+          touched[touchedCount++] = node;
+        }
+        distance[node] = newDistance;
+        parentEdge[node] = edge;
+        heap.push(node, newDistance);
+      }
+    }
+
+    /** Clear all touched nodes for next search. */
+    private void reset() {
+      for (int i = 0; i < touchedCount; i++) {
+        distance[touched[i]] = Double.POSITIVE_INFINITY;
+        parentEdge[touched[i]] = null;
+      }
+      touchedCount = 0;
+      heap.clear();
+    }
+  }
+}
@@ -0,0 +1,100 @@
+package map;
+
+/**
+ * A count-min sketch estimates how many times each key has been added, in a fixed table of
+ * counters whatever the number of different keys. Each key is hashed to one counter in every row,
+ * and its estimate is the smallest of these counters.
+ *
+ * <p>An estimate is never lower than the real count. With a width of ceil(e / epsilon) and a depth
+ * of ceil(ln(1 / delta)), an estimate is at most epsilon times the total count higher than the
+ * real count, with probability at least 1 - delta. Counters are added with conservative update,
+ * which only raises the smallest counters of a key and keeps these bounds.
+ */
+class CountMinSketch {
+
+  private final int width;
+  private final int depth;
+  /* counters of all rows, row by row */
+  private final long[] counters;
+  /* seed of the hash of each row */
+  private final long[] seeds;
+  private long totalCount;
+
+  /**
+   * Create a new count-min sketch.
+   *
+   * @param epsilon the largest over count of an estimate, as a fraction of the total count.
+   * @param delta the probability that an estimate is over counted by more than epsilon.
+   */
+  CountMinSketch(double epsilon, double delta) {
+    this.width = (int) Math.ceil(Math.E / epsilon);
+    this.depth = (int) Math.ceil(Math.log(1 / delta));
+    this.counters = new long[width * depth];
+    this.seeds = new long[depth];
+    for (int row = 0; row < depth; row++) {
+      seeds[row] = mix(0x9E3779B97F4A7C15L * (row + 1));
+    }
+  }
+
+  /**
+   * Add one to the count of a key.
+   *
+   * @param key the key to count.
+   */
+  void add(long key) {
+    long estimate = estimate(key);
+    for (int row = 0; row < depth; row++) {
+      int index = getIndex(row, key);
+      if (counters[index] == estimate) { // only raise the smallest counters
+        counters[index]++;
+      }
+    }
+    totalCount++;
+  }
+
+  /**
+   * Estimate how many times a key has been added.
+   *
+   * @param key the key to estimate.
+   * @return the estimated count, never lower than the real count.
+   */
+  long estimate(long key) {
+    long estimate = Long.MAX_VALUE;
+    for (int row = 0; row < depth; row++) {
+      estimate = Math.min(estimate, counters[getIndex(row, key)]);
+    }
+    return estimate;
+  }
+
+  /**
+   * Get how many times all keys have been added.
+   *
+   * @return the total count.
+   */
+  long getTotalCount() {
+    return totalCount;
+  }
+
+  /**
+   * Get the index of the counter of a key in a row.
+   *
+   * @param row the row of this counter.
+   * @param key the key.
+   * @return index of this counter in counters.
+   */
+  private int getIndex(int row, long key) {
+    return row * width + (int) ((mix(key ^ seeds[row]) >>> 1) % width);
+  }
+
+  /**
+   * Mix all bits of a long value, with the finalizer of SplitMix64.
+   *
+   * @param value the value to mix.
+   * @return the mixed value.
+   */
+  private static long mix(long value) {
+    value = (value ^ (value >>> 30)) * 0xBF58476D1CE4E5B9L;
+    value = (value ^ (value >>> 27)) * 0x94D049BB133111EBL;
+    return value ^ (value >>> 31);
+  }
+}
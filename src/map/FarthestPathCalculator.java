@@ -15,6 +15,8 @@ import ride.Ride;
  */
 class FarthestPathCalculator implements Serializable {
 
+  /* serialVersionUID of the first farthest path calculator, its serialized fields are unchanged */
+  private static final long serialVersionUID = 2658414057988265730L;
   private final SystemMap systemMap; // the system map used to calculate farthest path
 
   /**
@@ -40,16 +42,17 @@ class FarthestPathCalculator implements Serializable {
    * Get the path from this vertex to the farthest end of the route that contains this vertex.
    *
    * @param vertexName name of this vertex(station/stop)
-   * @param ride this ride
+   * @param transitType transit type of this ride
+   * @param missedTapIn true if this ride has missed tap in, false if it has missed tap out
    * @return the path from this vertex to the farthest end of the route that contains this vertex.
    */
-  LinkedList<Vertex> getPathToFarthestEnd(String vertexName, Ride ride) {
+  LinkedList<Vertex> getPathToFarthestEnd(
+      String vertexName, Ride.TransitType transitType, boolean missedTapIn) {
     /* get bus routes if this ride is a bus ride, get subway routes */
     /* if this ride is a subway ride. */
-    Collection<Pair<String, ArrayList<String>>> routes =
-        getRoutesByTransitType(ride.getTransitType());
+    Collection<Pair<String, ArrayList<String>>> routes = getRoutesByTransitType(transitType);
     /* get a list of vertices on the path from this vertex to the farthest end. */
-    List<Vertex> vertexToFarthestEnd = findVertexToFarthestEnd(routes, vertexName, ride);
+    List<Vertex> vertexToFarthestEnd = findVertexToFarthestEnd(routes, vertexName, missedTapIn);
     LinkedList<Vertex> result = new LinkedList<>();
     /* create a path according to this list of vertices. */
     for (Vertex vertex : vertexToFarthestEnd) {
@@ -82,12 +85,12 @@ class FarthestPathCalculator implements Serializable {
    *     string with information of all adjacent vertices on this route, including vertex name and
    *     edge distance.
    * @param vertexName name of this vertex
-   * @param ride this ride
+   * @param missedTapIn true if this ride has missed tap in, false if it has missed tap out
    * @return a list of vertices on the path from this vertex to the farthest end on this route.
    */
   private List<Vertex> findVertexToFarthestEnd(
-      Collection<Pair<String, ArrayList<String>>> routes, String vertexName, Ride ride) {
-    Vertex vertex = systemMap.getVertex(vertexName);
+      Collection<Pair<String, ArrayList<String>>> routes, String vertexName, boolean missedTapIn) {
+    Vertex vertex = systemMap.findVertex(vertexName); // not on any route if it is not found
     List<Vertex> result = new ArrayList<>();
     double distance = 0;
     for (Pair<String, ArrayList<String>> route : routes) {
@@ -96,10 +99,10 @@ class FarthestPathCalculator implements Serializable {
         List<Vertex> temp = new ArrayList<>();
         double thisDistance;
         if (route.getKey().equals("ONE WAY")) {
-          temp = getVerticesToFarthestEndInOneWay(ride, verticesList, vertex);
+          temp = getVerticesToFarthestEndInOneWay(missedTapIn, verticesList, vertex);
         }
         if (route.getKey().equals("BOTH WAY")) {
-          temp = getVerticesToFarthestEndInBothWay(ride, verticesList, vertex);
+          temp = getVerticesToFarthestEndInBothWay(missedTapIn, verticesList, vertex);
         }
         /* record the distance from this vertex to farthest end in last vertex on this path */
         thisDistance = temp.get(temp.size() - 1).getDistance();
@@ -140,15 +143,15 @@ class FarthestPathCalculator implements Serializable {
   /**
    * Get list of vertices to the end on a route with only one way.
    *
-   * @param ride this ride
+   * @param missedTapIn true if this ride has missed tap in, false if it has missed tap out
    * @param verticesList a list of all vertices on a route
    * @param vertex this vertex
    * @return get list of vertices to the end on a route.
    */
   private List<Vertex> getVerticesToFarthestEndInOneWay(
-      Ride ride, List<Vertex> verticesList, Vertex vertex) {
+      boolean missedTapIn, List<Vertex> verticesList, Vertex vertex) {
     List<Vertex> temp;
-    if (ride.getTapInLocation().equals("(Missed Tap In)")) { // this ride has missed tap in
+    if (missedTapIn) { // this ride has missed tap in
       /* consider start of this route as tap in location */
       temp = verticesList.subList(0, verticesList.indexOf(vertex) + 1);
     } else { // this ride has missed tap out
@@ -162,13 +165,13 @@ class FarthestPathCalculator implements Serializable {
   /**
    * Get a list of vertices to the farthest end on a route with both way.
    *
-   * @param ride this ride
+   * @param missedTapIn true if this ride has missed tap in, false if it has missed tap out
    * @param verticesList a list of vertices on a route
    * @param vertex this vertex
    * @return a list of vertices to the farthest end on a route with both way.
    */
   private List<Vertex> getVerticesToFarthestEndInBothWay(
-      Ride ride, List<Vertex> verticesList, Vertex vertex) {
+      boolean missedTapIn, List<Vertex> verticesList, Vertex vertex) {
     double result;
     List<Vertex> temp;
     /* list of vertices from one end to this vertex */
@@ -183,13 +186,13 @@ class FarthestPathCalculator implements Serializable {
     if (distance1 >= distance2) {
       temp = result1;
       result = distance1;
-      if (ride.getTapOutLocation().equals("(Missed Tap Out)")) {
+      if (!missedTapIn) { // this ride has missed tap out
         temp = getReverseOrderList(temp);
       }
     } else {
       temp = result2;
       result = distance2;
-      if (ride.getTapInLocation().equals("(Missed Tap In)")) {
+      if (missedTapIn) {
         temp = getReverseOrderList(temp);
       }
     }
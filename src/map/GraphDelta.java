@@ -0,0 +1,191 @@
+package map;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A graph delta records how the graph of a system map changed when a route is added or removed,
+ * including edges added, edges removed, stations/stops added and stations/stops removed. An edge
+ * whose distance changed is recorded as removed with its old distance and added with its new
+ * distance. A system map notifies its observers with a graph delta after each change, so that
+ * structures derived from the graph can be repaired instead of rebuilt.
+ */
+public class GraphDelta {
+
+  private final String routeName;
+  private final List<Edge> addedEdges;
+  private final List<Edge> removedEdges;
+  private final List<Vertex> addedVertices;
+  private final List<Vertex> removedVertices;
+
+  /**
+   * Create a new empty graph delta.
+   *
+   * @param routeName name of the route that is added or removed.
+   */
+  GraphDelta(String routeName) {
+    this.routeName = routeName;
+    this.addedEdges = new ArrayList<>();
+    this.removedEdges = new ArrayList<>();
+    this.addedVertices = new ArrayList<>();
+    this.removedVertices = new ArrayList<>();
+  }
+
+  /**
+   * Get the name of the route that is added or removed.
+   *
+   * @return the name of the route that is added or removed.
+   */
+  public String getRouteName() {
+    return routeName;
+  }
+
+  /**
+   * Get edges added to the graph.
+   *
+   * @return an unmodifiable list of edges added to the graph.
+   */
+  public List<Edge> getAddedEdges() {
+    return Collections.unmodifiableList(addedEdges);
+  }
+
+  /**
+   * Get edges removed from the graph.
+   *
+   * @return an unmodifiable list of edges removed from the graph.
+   */
+  public List<Edge> getRemovedEdges() {
+    return Collections.unmodifiableList(removedEdges);
+  }
+
+  /**
+   * Get stations/stops added to the graph.
+   *
+   * @return an unmodifiable list of stations/stops added to the graph.
+   */
+  public List<Vertex> getAddedVertices() {
+    return Collections.unmodifiableList(addedVertices);
+  }
+
+  /**
+   * Get stations/stops removed from the graph.
+   *
+   * @return an unmodifiable list of stations/stops removed from the graph.
+   */
+  public List<Vertex> getRemovedVertices() {
+    return Collections.unmodifiableList(removedVertices);
+  }
+
+  /**
+   * Check whether the graph has not changed at all.
+   *
+   * @return true if nothing is added or removed.
+   */
+  public boolean isEmpty() {
+    return addedEdges.isEmpty()
+        && removedEdges.isEmpty()
+        && addedVertices.isEmpty()
+        && removedVertices.isEmpty();
+  }
+
+  /**
+   * Record an edge added to the graph.
+   *
+   * @param from the vertex this edge starts from.
+   * @param to the vertex this edge goes to.
+   * @param distance distance of this edge.
+   */
+  void recordAddedEdge(Vertex from, Vertex to, double distance) {
+    addedEdges.add(new Edge(from, to, distance));
+  }
+
+  /**
+   * Record an edge removed from the graph. If this edge has been added in this change, it is no
+   * longer recorded as added instead.
+   *
+   * @param from the vertex this edge starts from.
+   * @param to the vertex this edge goes to.
+   * @param distance distance of this edge before it is removed.
+   */
+  void recordRemovedEdge(Vertex from, Vertex to, double distance) {
+    for (int i = addedEdges.size() - 1; i >= 0; i--) {
+      Edge addedEdge = addedEdges.get(i);
+      if (addedEdge.from == from && addedEdge.to == to) {
+        /* this edge did not exist before this change, it is simply not added */
+        addedEdges.remove(i);
+        return;
+      }
+    }
+    removedEdges.add(new Edge(from, to, distance));
+  }
+
+  /**
+   * Record a station/stop added to the graph.
+   *
+   * @param vertex the station/stop added.
+   */
+  void recordAddedVertex(Vertex vertex) {
+    addedVertices.add(vertex);
+  }
+
+  /**
+   * Record a station/stop removed from the graph.
+   *
+   * @param vertex the station/stop removed.
+   */
+  void recordRemovedVertex(Vertex vertex) {
+    removedVertices.add(vertex);
+  }
+
+  /**
+   * Get the information of this graph delta.
+   *
+   * @return A String representing what has changed in the graph.
+   */
+  @Override
+  public String toString() {
+    return "Graph Changed By Route "
+        + routeName
+        + ": "
+        + addedEdges.size()
+        + " Edges Added, "
+        + removedEdges.size()
+        + " Edges Removed, "
+        + addedVertices.size()
+        + " Stations/Stops Added, "
+        + removedVertices.size()
+        + " Stations/Stops Removed!";
+  }
+
+  /** An edge is a directed connection from one station/stop to another with its distance. */
+  public static class Edge {
+
+    private final Vertex from;
+    private final Vertex to;
+    private final double distance;
+
+    private Edge(Vertex from, Vertex to, double distance) {
+      this.from = from;
+      this.to = to;
+      this.distance = distance;
+    }
+
+    public Vertex getFrom() {
+      return from;
+    }
+
+    public Vertex getTo() {
+      return to;
+    }
+
+    public double getDistance() {
+      return distance;
+    }
+
+    @Override
+    public String toString() {
+      return from + "->" + distance + "->" + to;
+    }
+  }
+}
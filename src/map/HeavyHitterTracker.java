@@ -0,0 +1,150 @@
+package map;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import javafx.util.Pair;
+
+/**
+ * A heavy hitter tracker finds the busiest origin destination pairs and the busiest
+ * stations/stops approximately, in a fixed amount of memory whatever the size of the network. It
+ * is meant for networks too large for an origin destination matrix of every pair.
+ *
+ * <p>Each finished ride is added to a count-min sketch and a space saving summary, for its pair and
+ * for both its stations/stops. The space saving summary keeps the candidates for the busiest ones,
+ * and the count of each candidate is the smaller of its two over estimates. Let n be the number
+ * of rides added: a reported count is never lower than the real count, and is at most
+ * min(n / k, epsilon * n) higher with probability at least 1 - delta, where k is the number of
+ * candidates kept. Every pair or station/stop with more than n / k rides is reported when enough
+ * of them are asked for. A station/stop is counted once as origin and once as destination of a
+ * ride, so n is twice the number of rides for stations/stops.
+ */
+public class HeavyHitterTracker {
+
+  /* over count of origin destination pairs, as a fraction of rides */
+  private static final double PAIR_EPSILON = 0.0005;
+  private static final int PAIR_CANDIDATES = 1000;
+  /* over count of stations/stops, as a fraction of rides */
+  private static final double STATION_EPSILON = 0.001;
+  private static final int STATION_CANDIDATES = 200;
+  /* probability that an estimate of the count-min sketch is over counted more than epsilon */
+  private static final double DELTA = 0.001;
+
+  private final CountMinSketch pairSketch;
+  private final SpaceSaving pairCandidates;
+  private final CountMinSketch stationSketch;
+  private final SpaceSaving stationCandidates;
+  /* vertices of candidates, by vertex id */
+  private Vertex[] vertices;
+
+  /** Create a new heavy hitter tracker. */
+  HeavyHitterTracker() {
+    this.pairSketch = new CountMinSketch(PAIR_EPSILON, DELTA);
+    this.pairCandidates = new SpaceSaving(PAIR_CANDIDATES);
+    this.stationSketch = new CountMinSketch(STATION_EPSILON, DELTA);
+    this.stationCandidates = new SpaceSaving(STATION_CANDIDATES);
+    this.vertices = new Vertex[0];
+  }
+
+  /**
+   * Add a finished ride.
+   *
+   * @param origin the station/stop where this ride started.
+   * @param destination the station/stop where this ride ended.
+   */
+  synchronized void record(Vertex origin, Vertex destination) {
+    int needed = Math.max(origin.getId(), destination.getId()) + 1;
+    if (needed > vertices.length) {
+      vertices = Arrays.copyOf(vertices, Math.max(needed, vertices.length * 2));
+    }
+    vertices[origin.getId()] = origin;
+    vertices[destination.getId()] = destination;
+    long pair = getPairKey(origin.getId(), destination.getId());
+    pairSketch.add(pair);
+    pairCandidates.add(pair);
+    for (Vertex vertex : new Vertex[] {origin, destination}) {
+      stationSketch.add(vertex.getId());
+      stationCandidates.add(vertex.getId());
+    }
+  }
+
+  /**
+   * Get the number of rides added.
+   *
+   * @return the number of rides added.
+   */
+  public synchronized long getRideCount() {
+    return pairSketch.getTotalCount();
+  }
+
+  /**
+   * Estimate the number of rides from an origin to a destination.
+   *
+   * @param origin the station/stop where these rides started.
+   * @param destination the station/stop where these rides ended.
+   * @return the estimated number of rides, never lower than the real number.
+   */
+  public synchronized long estimateRides(Vertex origin, Vertex destination) {
+    return pairSketch.estimate(getPairKey(origin.getId(), destination.getId()));
+  }
+
+  /**
+   * Get the origin destination pairs with most rides.
+   *
+   * @param count the maximum number of pairs to get, at most 1000 are kept.
+   * @return origin destination pairs with their estimated rides, the most rides first.
+   */
+  public synchronized List<OriginDestinationPair> getBusiestPairs(int count) {
+    List<OriginDestinationPair> result = new ArrayList<>();
+    for (long[] candidate : getTop(pairCandidates, pairSketch, count)) {
+      result.add(
+          new OriginDestinationPair(
+              vertices[(int) (candidate[0] >>> 32)],
+              vertices[(int) candidate[0]],
+              (int) candidate[1]));
+    }
+    return result;
+  }
+
+  /**
+   * Get the stations/stops where most rides started or ended.
+   *
+   * @param count the maximum number of stations/stops to get, at most 200 are kept.
+   * @return pairs of station/stop and its estimated rides, the most rides first.
+   */
+  public synchronized List<Pair<Vertex, Integer>> getBusiestStations(int count) {
+    List<Pair<Vertex, Integer>> result = new ArrayList<>();
+    for (long[] candidate : getTop(stationCandidates, stationSketch, count)) {
+      result.add(new Pair<>(vertices[(int) candidate[0]], (int) candidate[1]));
+    }
+    return result;
+  }
+
+  /**
+   * Get the candidates with the largest counts, each with the smaller of its two estimates.
+   *
+   * @param candidates the space saving summary of candidates.
+   * @param sketch the count-min sketch of the same keys.
+   * @param count the maximum number of candidates to get.
+   * @return arrays of key and estimated count, the largest count first.
+   */
+  private static List<long[]> getTop(SpaceSaving candidates, CountMinSketch sketch, int count) {
+    List<long[]> result = new ArrayList<>();
+    for (long[] candidate : candidates.getCounters()) {
+      result.add(new long[] {candidate[0], Math.min(candidate[1], sketch.estimate(candidate[0]))});
+    }
+    result.sort((a, b) -> Long.compare(b[1], a[1]));
+    return result.subList(0, Math.min(count, result.size()));
+  }
+
+  /**
+   * Get the key of an origin destination pair.
+   *
+   * @param originId id of the origin station/stop.
+   * @param destinationId id of the destination station/stop.
+   * @return the key of this pair.
+   */
+  private static long getPairKey(int originId, int destinationId) {
+    return ((long) originId << 32) | destinationId;
+  }
+}
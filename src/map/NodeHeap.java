@@ -0,0 +1,104 @@
+package map;
+
+import java.util.Arrays;
+
+/**
+ * A node heap is a binary min heap of node indices ordered by a double key, used by the searches in
+ * routing indices. A node may be pushed more than once, the caller skips entries whose key is
+ * larger than the node's settled distance.
+ */
+class NodeHeap {
+
+  private double[] keys;
+  private int[] nodes;
+  private int size;
+
+  /** Create a new empty node heap. */
+  NodeHeap() {
+    this.keys = new double[16];
+    this.nodes = new int[16];
+  }
+
+  /**
+   * Check whether this heap has no entry left.
+   *
+   * @return true if this heap is empty.
+   */
+  boolean isEmpty() {
+    return size == 0;
+  }
+
+  /**
+   * Get the smallest key in this heap.
+   *
+   * @return the smallest key, or positive infinity if this heap is empty.
+   */
+  double peekKey() {
+    return size == 0 ? Double.POSITIVE_INFINITY : keys[0];
+  }
+
+  /** Remove all entries of this heap. */
+  void clear() {
+    size = 0;
+  }
+
+  /**
+   * Add a node with its key to this heap.
+   *
+   * @param node index of the node.
+   * @param key key of the node, normally its tentative distance.
+   */
+  void push(int node, double key) {
+    if (size == keys.length) {
+      keys = Arrays.copyOf(keys, size * 2);
+      nodes = Arrays.copyOf(nodes, size * 2);
+    }
+    int i = size++;
+    /* sift up */
+    while (i > 0) {
+      int parent = (i - 1) >>> 1;
+      if (keys[parent] <= key) {
+        break;
+      }
+      keys[i] = keys[parent];
+      nodes[i] = nodes[parent];
+      i = parent;
+    }
+    keys[i] = key;
+    nodes[i] = node;
+  }
+
+  /**
+   * Remove the node with the smallest key from this heap.
+   *
+   * @return index of the node with the smallest key.
+   */
+  int pop() {
+    int result = nodes[0];
+    size--;
+    if (size > 0) {
+      double key = keys[size];
+      int node = nodes[size];
+      int i = 0;
+      /* sift down */
+      while (true) {
+        int child = 2 * i + 1;
+        if (child >= size) {
+          break;
+        }
+        if (child + 1 < size && keys[child + 1] < keys[child]) {
+          child++;
+        }
+        if (key <= keys[child]) {
+          break;
+        }
+        keys[i] = keys[child];
+        nodes[i] = nodes[child];
+        i = child;
+      }
+      keys[i] = key;
+      nodes[i] = node;
+    }
+    return result;
+  }
+}
@@ -0,0 +1,229 @@
+package map;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import ride.Ride;
+
+/**
+ * An origin destination accumulator counts finished rides in one origin destination matrix per day
+ * and per transit type. Each ride is only added to its matrix in memory. A matrix with rides not
+ * written yet is written to the binary file of its day as a whole when a ride of a later day comes,
+ * when it is dropped from memory, and when the accumulator is flushed at the end of a batch, so
+ * matrices of past days are read back from their files when they are queried, without going
+ * through any ride record.
+ *
+ * <p>A file is named by its day and transit type, for example "2018-11-05_SUBWAY.od". It starts
+ * with a magic number and a format version, followed by the origin id, destination id and rides
+ * of each pair with any ride, all as 4 byte ints. Files of the first version have the origin id
+ * and destination id of each ride instead, they are read the same way and written again in the
+ * current version.
+ */
+public class OriginDestinationAccumulator {
+
+  /* "OD" followed by two zero bytes, marks an origin destination file */
+  private static final int MAGIC = 0x4F440000;
+  private static final int VERSION = 2;
+  /* the first version appends each ride, with no count of rides */
+  private static final int VERSION_BY_RIDE = 1;
+  /* the number of matrices of a day and transit type kept in memory */
+  private static final int CACHED_MATRICES = 16;
+
+  private final String directory;
+  /* matrices of latest used days by file name, the least recently used one is dropped first */
+  private final LinkedHashMap<String, OriginDestinationMatrix> matrices;
+  /* file names of matrices in memory with rides not written to their files yet */
+  private final Set<String> unwrittenMatrices;
+  /* the latest day of a ride recorded, in days since epoch */
+  private long latestDay;
+
+  /**
+   * Create a new origin destination accumulator.
+   *
+   * @param directory the directory of origin destination files.
+   */
+  OriginDestinationAccumulator(String directory) {
+    this.directory = directory;
+    this.unwrittenMatrices = new HashSet<>();
+    this.latestDay = Long.MIN_VALUE;
+    this.matrices =
+        new LinkedHashMap<String, OriginDestinationMatrix>(CACHED_MATRICES, 0.75f, true) {
+          @Override
+          protected boolean removeEldestEntry(Map.Entry<String, OriginDestinationMatrix> eldest) {
+            if (size() <= CACHED_MATRICES) {
+              return false;
+            }
+            if (unwrittenMatrices.remove(eldest.getKey())) {
+              writeMatrix(new File(directory, eldest.getKey()), eldest.getValue());
+            }
+            return true;
+          }
+        };
+  }
+
+  /**
+   * Add a finished ride to the matrix of its day and transit type in memory. The first ride of a
+   * later day writes matrices of earlier days to their files.
+   *
+   * @param transitType transit type of this ride.
+   * @param originId id of the station/stop where this ride started.
+   * @param destinationId id of the station/stop where this ride ended.
+   * @param timeInMillis the time of this ride.
+   */
+  synchronized void record(
+      Ride.TransitType transitType, int originId, int destinationId, long timeInMillis) {
+    long day = PassengerFlow.getDay(timeInMillis);
+    if (day > latestDay) { // a new day has started
+      flush();
+      latestDay = day;
+    }
+    File file = getFile(day, transitType);
+    getMatrix(file).add(originId, destinationId, 1);
+    unwrittenMatrices.add(file.getName());
+  }
+
+  /** Write every matrix in memory with rides not written yet to its file. */
+  synchronized void flush() {
+    for (String fileName : unwrittenMatrices) {
+      writeMatrix(new File(directory, fileName), matrices.get(fileName));
+    }
+    unwrittenMatrices.clear();
+  }
+
+  /**
+   * Get rides of every day in a period added together.
+   *
+   * @param transitType transit type of rides, or null for rides of all transit types.
+   * @param fromDay the first day of this period, in days since epoch.
+   * @param toDay the last day of this period, in days since epoch.
+   * @return a new origin destination matrix with all rides in this period.
+   */
+  synchronized OriginDestinationMatrix getMatrix(
+      Ride.TransitType transitType, long fromDay, long toDay) {
+    OriginDestinationMatrix result = new OriginDestinationMatrix();
+    for (long day = fromDay; day <= toDay; day++) {
+      for (Ride.TransitType type : Ride.TransitType.values()) {
+        if (transitType == null || transitType == type) {
+          result.addAll(getMatrix(day, type));
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Get the matrix of a day and transit type, read it from its file if it is not in memory.
+   *
+   * @param day the day of this matrix, in days since epoch.
+   * @param transitType the transit type of this matrix.
+   * @return the origin destination matrix of this day and transit type.
+   */
+  private OriginDestinationMatrix getMatrix(long day, Ride.TransitType transitType) {
+    return getMatrix(getFile(day, transitType));
+  }
+
+  /**
+   * Get the matrix of an origin destination file, read it from the file if it is not in memory.
+   *
+   * @param file the origin destination file.
+   * @return the origin destination matrix of this file.
+   */
+  private OriginDestinationMatrix getMatrix(File file) {
+    OriginDestinationMatrix matrix = matrices.get(file.getName());
+    if (matrix == null) {
+      matrix = readMatrix(file);
+      matrices.put(file.getName(), matrix);
+    }
+    return matrix;
+  }
+
+  /**
+   * Read a matrix from an origin destination file.
+   *
+   * @param file the origin destination file.
+   * @return the origin destination matrix in this file, or an empty one if there is no such file.
+   */
+  private OriginDestinationMatrix readMatrix(File file) {
+    OriginDestinationMatrix matrix = new OriginDestinationMatrix();
+    if (!file.exists()) {
+      return matrix;
+    }
+    try (DataInputStream inputStream =
+        new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+      int version = inputStream.readInt() == MAGIC ? inputStream.readInt() : -1;
+      if (version != VERSION && version != VERSION_BY_RIDE) {
+        System.out.println("Fail to Read Origin Destination: Unknown Format Of " + file);
+        return matrix;
+      }
+      while (true) {
+        int originId;
+        try {
+          originId = inputStream.readInt();
+        } catch (EOFException e) {
+          break; // end of file
+        }
+        int destinationId = inputStream.readInt();
+        matrix.add(originId, destinationId, version == VERSION ? inputStream.readInt() : 1);
+      }
+    } catch (IOException e) {
+      System.out.println("Fail to Read Origin Destination:" + e);
+    }
+    return matrix;
+  }
+
+  /**
+   * Write a matrix to an origin destination file, replacing the file only once it is written.
+   *
+   * @param file the origin destination file.
+   * @param matrix the origin destination matrix to write.
+   */
+  private void writeMatrix(File file, OriginDestinationMatrix matrix) {
+    if (!file.getParentFile().exists() && !file.getParentFile().mkdirs()) {
+      System.out.println("Fail to Write Origin Destination: Cannot Create " + directory);
+      return;
+    }
+    File newFile = new File(directory, file.getName() + ".new");
+    try (DataOutputStream outputStream =
+        new DataOutputStream(new BufferedOutputStream(new FileOutputStream(newFile)))) {
+      outputStream.writeInt(MAGIC);
+      outputStream.writeInt(VERSION);
+      for (int[] pair : matrix.getPairs()) {
+        outputStream.writeInt(pair[0]);
+        outputStream.writeInt(pair[1]);
+        outputStream.writeInt(pair[2]);
+      }
+    } catch (IOException e) {
+      System.out.println("Fail to Write Origin Destination:" + e);
+      return;
+    }
+    try {
+      Files.move(newFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    } catch (IOException e) {
+      System.out.println("Fail to Write Origin Destination:" + e);
+    }
+  }
+
+  /**
+   * Get the origin destination file of a day and transit type.
+   *
+   * @param day the day in days since epoch.
+   * @param transitType the transit type.
+   * @return the origin destination file.
+   */
+  private File getFile(long day, Ride.TransitType transitType) {
+    return new File(directory, LocalDate.ofEpochDay(day) + "_" + transitType + ".od");
+  }
+}
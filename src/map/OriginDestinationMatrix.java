@@ -0,0 +1,158 @@
+package map;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * An origin destination matrix counts rides from each station/stop to each station/stop, in a
+ * dense primitive array indexed by the ids of both stations/stops. The matrix grows when a new
+ * station/stop is added to the system map.
+ */
+public class OriginDestinationMatrix {
+
+  /* the number of stations/stops in each row and column */
+  private int size;
+  /* rides from origin to destination, at origin times size plus destination */
+  private int[] counts;
+
+  /** Create a new empty origin destination matrix. */
+  OriginDestinationMatrix() {
+    this.counts = new int[0];
+  }
+
+  /**
+   * Add rides from an origin to a destination.
+   *
+   * @param originId id of the station/stop where the rides started.
+   * @param destinationId id of the station/stop where the rides ended.
+   * @param rides the number of rides to add.
+   */
+  void add(int originId, int destinationId, int rides) {
+    int needed = Math.max(originId, destinationId) + 1;
+    if (needed > size) {
+      resize(Math.max(needed, size * 2));
+    }
+    counts[originId * size + destinationId] += rides;
+  }
+
+  /**
+   * Add all rides of another origin destination matrix to this one.
+   *
+   * @param other another origin destination matrix.
+   */
+  void addAll(OriginDestinationMatrix other) {
+    if (other.size > size) {
+      resize(other.size);
+    }
+    for (int origin = 0; origin < other.size; origin++) {
+      for (int destination = 0; destination < other.size; destination++) {
+        counts[origin * size + destination] += other.counts[origin * other.size + destination];
+      }
+    }
+  }
+
+  /**
+   * Remove all rides from or to a station/stop.
+   *
+   * @param id id of this station/stop.
+   */
+  void clearStation(int id) {
+    if (id >= size) {
+      return;
+    }
+    Arrays.fill(counts, id * size, (id + 1) * size, 0);
+    for (int origin = 0; origin < size; origin++) {
+      counts[origin * size + id] = 0;
+    }
+  }
+
+  /**
+   * Get the number of rides from an origin to a destination.
+   *
+   * @param originId id of the station/stop where the rides started.
+   * @param destinationId id of the station/stop where the rides ended.
+   * @return the number of rides.
+   */
+  public int getRides(int originId, int destinationId) {
+    if (originId >= size || destinationId >= size) {
+      return 0;
+    }
+    return counts[originId * size + destinationId];
+  }
+
+  /**
+   * Get every pair of origin and destination with any ride.
+   *
+   * @return arrays of origin id, destination id and rides, in order of origin and destination.
+   */
+  List<int[]> getPairs() {
+    List<int[]> result = new ArrayList<>();
+    for (int cell = 0; cell < size * size; cell++) {
+      if (counts[cell] != 0) {
+        result.add(new int[] {cell / size, cell % size, counts[cell]});
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Get the pairs of origin and destination with the most rides.
+   *
+   * @param count the maximum number of pairs to get.
+   * @return arrays of origin id, destination id and rides, the most rides first.
+   */
+  List<int[]> getTopPairs(int count) {
+    /* keep the cells with most rides found so far, sorted by rides from high to low */
+    int[] topCells = new int[count];
+    int[] topRides = new int[count];
+    int found = 0;
+    for (int cell = 0; cell < size * size; cell++) {
+      int rides = counts[cell];
+      if (rides == 0 || (found == count && rides <= topRides[found - 1])) {
+        continue;
+      }
+      int position = found < count ? found++ : found - 1;
+      while (position > 0 && topRides[position - 1] < rides) {
+        topCells[position] = topCells[position - 1];
+        topRides[position] = topRides[position - 1];
+        position--;
+      }
+      topCells[position] = cell;
+      topRides[position] = rides;
+    }
+    List<int[]> result = new ArrayList<>();
+    for (int i = 0; i < found; i++) {
+      result.add(new int[] {topCells[i] / size, topCells[i] % size, topRides[i]});
+    }
+    return result;
+  }
+
+  /**
+   * Make room for more stations/stops, keeping all rides.
+   *
+   * @param newSize the new number of stations/stops in each row and column.
+   */
+  private void resize(int newSize) {
+    int[] newCounts = new int[newSize * newSize];
+    for (int origin = 0; origin < size; origin++) {
+      System.arraycopy(counts, origin * size, newCounts, origin * newSize, size);
+    }
+    counts = newCounts;
+    size = newSize;
+  }
+
+  /**
+   * Get the information of this origin destination matrix.
+   *
+   * @return A String representing the size and total rides of this matrix.
+   */
+  @Override
+  public String toString() {
+    return "Origin Destination Matrix of "
+        + size
+        + " Stations/Stops With "
+        + Arrays.stream(counts).asLongStream().sum()
+        + " Rides";
+  }
+}
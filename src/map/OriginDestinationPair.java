@@ -0,0 +1,59 @@
+package map;
+
+/** An origin destination pair has the number of rides from one station/stop to another. */
+public class OriginDestinationPair {
+
+  private final Vertex origin;
+  private final Vertex destination;
+  private final int rides;
+
+  /**
+   * Create a new origin destination pair.
+   *
+   * @param origin the station/stop where these rides started.
+   * @param destination the station/stop where these rides ended.
+   * @param rides the number of rides.
+   */
+  OriginDestinationPair(Vertex origin, Vertex destination, int rides) {
+    this.origin = origin;
+    this.destination = destination;
+    this.rides = rides;
+  }
+
+  /**
+   * Get the station/stop where these rides started.
+   *
+   * @return the origin station/stop.
+   */
+  public Vertex getOrigin() {
+    return origin;
+  }
+
+  /**
+   * Get the station/stop where these rides ended.
+   *
+   * @return the destination station/stop.
+   */
+  public Vertex getDestination() {
+    return destination;
+  }
+
+  /**
+   * Get the number of rides from origin to destination.
+   *
+   * @return the number of rides.
+   */
+  public int getRides() {
+    return rides;
+  }
+
+  /**
+   * Get the information of this origin destination pair.
+   *
+   * @return A String representing the origin, destination and rides.
+   */
+  @Override
+  public String toString() {
+    return origin + " -> " + destination + ": " + rides + " Rides";
+  }
+}
@@ -0,0 +1,602 @@
+package map;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.Calendar;
+import java.util.TimeZone;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A passenger flow counts tap in times, tap out times and arrived times of one station/stop in 15
+ * minute buckets of local time. Every count is also rolled up into its hour, day, week and month
+ * when it is added, so a report or a range query only sums the fewest buckets that cover it,
+ * however long the history is. Counts can be added by many threads at once without a lock, and a
+ * report sees a count added by another thread once that add has finished.
+ *
+ * <p>Reports of a day, week or month only read buckets of a day or longer. Buckets finer than a
+ * day are for peak hours of recent days only, so only the latest few days of them are kept. All
+ * buckets kept are written to snapshots, each chunk of buckets as the counts that are not 0.
+ */
+class PassengerFlow implements Serializable {
+
+  /* serialVersionUID of the first passenger flow that keeps its 15 minute and hour buckets */
+  private static final long serialVersionUID = 3449132554871639039L;
+  /* report contents, in the order of their counts in each bucket */
+  static final String[] REPORT_CONTENTS = {
+    "TAP IN TIMES", "TAP OUT TIMES", "ARRIVED TIMES"
+  };
+  private static final long MILLIS_PER_QUARTER_HOUR = 15 * 60 * 1000L;
+  private static final int QUARTER_HOURS_PER_HOUR = 4;
+  private static final int QUARTER_HOURS_PER_DAY = 96;
+  /* how many days of 15 minute buckets and hour buckets are kept, today and the days before */
+  private static final int QUARTER_HOUR_RETENTION_DAYS = 2;
+  private static final int HOUR_RETENTION_DAYS = 7;
+
+  /* buckets finer than a day only keep their latest days */
+  private CountSeries quarterHours; // by 15 minutes since epoch
+  private CountSeries hours; // by hours since epoch
+  private final CountSeries days; // by days since epoch
+  private final CountSeries weeks; // by weeks since the first week start before epoch
+  private final CountSeries months; // by months since January 1970
+  /* the first day of week when this passenger flow is created, so weeks never shift */
+  private final int firstDayOfWeek;
+
+  /** Create a new passenger flow with no counts. */
+  PassengerFlow() {
+    createRecentBuckets();
+    this.days = new CountSeries(32, Integer.MAX_VALUE);
+    this.weeks = new CountSeries(16, Integer.MAX_VALUE);
+    this.months = new CountSeries(12, Integer.MAX_VALUE);
+    this.firstDayOfWeek = Calendar.getInstance().getFirstDayOfWeek();
+  }
+
+  /** Create empty series of buckets finer than a day, a chunk of them is one day. */
+  private void createRecentBuckets() {
+    this.quarterHours = new CountSeries(QUARTER_HOURS_PER_DAY, QUARTER_HOUR_RETENTION_DAYS);
+    this.hours =
+        new CountSeries(QUARTER_HOURS_PER_DAY / QUARTER_HOURS_PER_HOUR, HOUR_RETENTION_DAYS);
+  }
+
+  /**
+   * Add one to a count of the bucket of this time, and of every bucket it rolls up into.
+   *
+   * @param timeInMillis the time to add at.
+   * @param reportContent report content, "TAP IN TIMES" or "TAP OUT TIMES" or "ARRIVED TIMES"
+   */
+  void add(long timeInMillis, String reportContent) {
+    add(timeInMillis, reportContent, 1);
+  }
+
+  /**
+   * Add to a count of the bucket of this time, and of every bucket it rolls up into.
+   *
+   * @param timeInMillis the time to add at.
+   * @param reportContent report content, "TAP IN TIMES" or "TAP OUT TIMES" or "ARRIVED TIMES"
+   * @param count the number to add.
+   */
+  void add(long timeInMillis, String reportContent, long count) {
+    int content = getContentIndex(reportContent);
+    long quarterHour = getQuarterHour(timeInMillis);
+    long day = Math.floorDiv(quarterHour, QUARTER_HOURS_PER_DAY);
+    quarterHours.add(quarterHour, content, count);
+    hours.add(Math.floorDiv(quarterHour, QUARTER_HOURS_PER_HOUR), content, count);
+    days.add(day, content, count);
+    weeks.add(getWeek(day), content, count);
+    months.add(getMonth(day), content, count);
+  }
+
+  /**
+   * Get the total count of a report content in a report period that includes now. A week is the
+   * part of this week in this month, like the week of month of a Calendar.
+   *
+   * @param reportPeriod report period, DAY or WEEK or MONTH
+   * @param reportContent report content, TAP IN TIMES or TAP OUT TIMES or ARRIVED TIMES
+   * @param nowInMillis current time.
+   * @return the total count in this report period, 0 if the report period is unknown.
+   */
+  int get(String reportPeriod, String reportContent, long nowInMillis) {
+    int content = getContentIndex(reportContent);
+    long today = getDay(nowInMillis);
+    long month = getMonth(today);
+    switch (reportPeriod) {
+      case "DAY":
+        return days.get(today, content);
+      case "WEEK":
+        long week = getWeek(today);
+        long firstDay = Math.max(getFirstDayOfWeek(week), getFirstDayOfMonth(month));
+        long lastDay = Math.min(getFirstDayOfWeek(week + 1), getFirstDayOfMonth(month + 1)) - 1;
+        if (lastDay - firstDay == 6) { // this week is all in this month
+          return weeks.get(week, content);
+        }
+        return days.sum(firstDay, lastDay, content);
+      case "MONTH":
+        return months.get(month, content);
+      default:
+        return 0;
+    }
+  }
+
+  /**
+   * Get the total count of a report content from one time to another, in 15 minute buckets. Parts
+   * of the range finer than a day that are older than the buckets kept count as 0.
+   *
+   * @param fromInMillis start of the range, the bucket including it is included.
+   * @param toInMillis end of the range, the bucket including it is excluded.
+   * @param reportContent report content, TAP IN TIMES or TAP OUT TIMES or ARRIVED TIMES
+   * @return the total count in this range.
+   */
+  int get(long fromInMillis, long toInMillis, String reportContent) {
+    int content = getContentIndex(reportContent);
+    long quarterHour = getQuarterHour(fromInMillis);
+    long end = getQuarterHour(toInMillis);
+    int result = 0;
+    /* 15 minute buckets up to the first whole hour, then hours up to the first whole day */
+    while (quarterHour < end && Math.floorMod(quarterHour, QUARTER_HOURS_PER_HOUR) != 0) {
+      result += quarterHours.get(quarterHour++, content);
+    }
+    while (quarterHour + QUARTER_HOURS_PER_HOUR <= end
+        && Math.floorMod(quarterHour, QUARTER_HOURS_PER_DAY) != 0) {
+      result += hours.get(quarterHour / QUARTER_HOURS_PER_HOUR, content);
+      quarterHour += QUARTER_HOURS_PER_HOUR;
+    }
+    /* whole months and days */
+    while (quarterHour + QUARTER_HOURS_PER_DAY <= end) {
+      long day = quarterHour / QUARTER_HOURS_PER_DAY;
+      long month = getMonth(day);
+      long nextMonth = getFirstDayOfMonth(month + 1);
+      if (getFirstDayOfMonth(month) == day && nextMonth * QUARTER_HOURS_PER_DAY <= end) {
+        result += months.get(month, content);
+        quarterHour = nextMonth * QUARTER_HOURS_PER_DAY;
+      } else {
+        result += days.get(day, content);
+        quarterHour += QUARTER_HOURS_PER_DAY;
+      }
+    }
+    /* hours and 15 minute buckets left in the last day */
+    while (quarterHour + QUARTER_HOURS_PER_HOUR <= end) {
+      result += hours.get(quarterHour / QUARTER_HOURS_PER_HOUR, content);
+      quarterHour += QUARTER_HOURS_PER_HOUR;
+    }
+    while (quarterHour < end) {
+      result += quarterHours.get(quarterHour++, content);
+    }
+    return result;
+  }
+
+  /**
+   * Get the counts of a report content in each hour of the day of this time.
+   *
+   * @param dayInMillis a time in the day.
+   * @param reportContent report content, TAP IN TIMES or TAP OUT TIMES or ARRIVED TIMES
+   * @return counts of the 24 hours of this day, 0 for hours older than the buckets kept.
+   */
+  int[] getHourly(long dayInMillis, String reportContent) {
+    int content = getContentIndex(reportContent);
+    int hoursPerDay = QUARTER_HOURS_PER_DAY / QUARTER_HOURS_PER_HOUR;
+    long firstHour = getDay(dayInMillis) * hoursPerDay;
+    int[] result = new int[hoursPerDay];
+    for (int hour = 0; hour < hoursPerDay; hour++) {
+      result[hour] = hours.get(firstHour + hour, content);
+    }
+    return result;
+  }
+
+  /**
+   * Visit every 15 minute bucket kept with any count, oldest first. Only recent days are kept.
+   *
+   * @param visitor the visitor of buckets, given 15 minutes since epoch in local time.
+   */
+  void visitQuarterHours(Vertex.PassengerFlowVisitor visitor) {
+    quarterHours.visit(visitor);
+  }
+
+  /**
+   * Visit every day with any count, oldest first.
+   *
+   * @param visitor the visitor of buckets, given days since epoch in local time.
+   */
+  void visitDays(Vertex.PassengerFlowVisitor visitor) {
+    days.visit(visitor);
+  }
+
+  /**
+   * Get the 15 minute bucket of this time in local time.
+   *
+   * @param timeInMillis a time in millis since epoch.
+   * @return the number of 15 minutes since epoch in local time.
+   */
+  private static long getQuarterHour(long timeInMillis) {
+    long localMillis = timeInMillis + TimeZone.getDefault().getOffset(timeInMillis);
+    return Math.floorDiv(localMillis, MILLIS_PER_QUARTER_HOUR);
+  }
+
+  /**
+   * Get the day since epoch of this time in local time.
+   *
+   * @param timeInMillis a time in millis since epoch.
+   * @return the number of days since epoch in local time.
+   */
+  static long getDay(long timeInMillis) {
+    return Math.floorDiv(getQuarterHour(timeInMillis), QUARTER_HOURS_PER_DAY);
+  }
+
+  /**
+   * Get the week of this day, weeks start on the first day of week.
+   *
+   * @param day a day since epoch.
+   * @return the number of weeks since the first week start before epoch.
+   */
+  private long getWeek(long day) {
+    return Math.floorDiv(day - getFirstWeekStart(), 7);
+  }
+
+  /**
+   * Get the first day of this week.
+   *
+   * @param week weeks since the first week start before epoch.
+   * @return the first day of this week since epoch.
+   */
+  private long getFirstDayOfWeek(long week) {
+    return week * 7 + getFirstWeekStart();
+  }
+
+  /**
+   * Get the first day on or after epoch that starts a week. The epoch day is a Thursday.
+   *
+   * @return the day since epoch of first week start.
+   */
+  private long getFirstWeekStart() {
+    return Math.floorMod(firstDayOfWeek - Calendar.THURSDAY, 7);
+  }
+
+  /**
+   * Get the month of this day, in the Gregorian calendar.
+   *
+   * @param day a day since epoch.
+   * @return the number of months since January 1970.
+   */
+  static long getMonth(long day) {
+    /* count from March 1st of year 0, so leap days are at the end of each year */
+    long shiftedDay = day + 719468;
+    long era = Math.floorDiv(shiftedDay, 146097);
+    long dayOfEra = shiftedDay - era * 146097;
+    long yearOfEra =
+        (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+    long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+    long shiftedMonth = (5 * dayOfYear + 2) / 153; // 0 for March
+    long year = era * 400 + yearOfEra + (shiftedMonth >= 10 ? 1 : 0);
+    long month = shiftedMonth < 10 ? shiftedMonth + 2 : shiftedMonth - 10; // 0 for January
+    return (year - 1970) * 12 + month;
+  }
+
+  /**
+   * Get the first day of this month, in the Gregorian calendar.
+   *
+   * @param month months since January 1970.
+   * @return the first day of this month since epoch.
+   */
+  static long getFirstDayOfMonth(long month) {
+    long year = 1970 + Math.floorDiv(month, 12);
+    long monthOfYear = Math.floorMod(month, 12); // 0 for January
+    /* count from March 1st of year 0, so leap days are at the end of each year */
+    if (monthOfYear < 2) {
+      year--;
+    }
+    long era = Math.floorDiv(year, 400);
+    long yearOfEra = year - era * 400;
+    long shiftedMonth = monthOfYear >= 2 ? monthOfYear - 2 : monthOfYear + 10; // 0 for March
+    long dayOfYear = (153 * shiftedMonth + 2) / 5;
+    long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+    return era * 146097 + dayOfEra - 719468;
+  }
+
+  /**
+   * Get the index of a report content.
+   *
+   * @param reportContent report content, "TAP IN TIMES" or "TAP OUT TIMES" or "ARRIVED TIMES"
+   * @return the index of this report content.
+   */
+  static int getContentIndex(String reportContent) {
+    for (int i = 0; i < REPORT_CONTENTS.length; i++) {
+      if (REPORT_CONTENTS[i].equals(reportContent)) {
+        return i;
+      }
+    }
+    throw new IllegalArgumentException("Unknown Report Content: " + reportContent);
+  }
+
+  /**
+   * Read a passenger flow from a snapshot. A snapshot without buckets finer than a day gets empty
+   * ones.
+   *
+   * @param in the stream to read this passenger flow from.
+   */
+  private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+    in.defaultReadObject();
+    if (quarterHours == null || hours == null) {
+      createRecentBuckets();
+    }
+  }
+
+  /**
+   * A count series keeps counts of each report content in consecutive buckets. Buckets are stored
+   * in chunks that never move once created, so many threads can add to counts without a lock, and
+   * only creating a chunk is synchronized. A series may keep only its latest chunks, older chunks
+   * are dropped when a new chunk is created.
+   */
+  private static class CountSeries implements Serializable {
+
+    /* serialVersionUID of the first count series, its serialized fields are unchanged */
+    private static final long serialVersionUID = 6951942729201411814L;
+    /* the number of buckets in each chunk */
+    private final int bucketsPerChunk;
+    /* the maximum number of chunks kept */
+    private final int maxChunks;
+    /* chunks kept, replaced as a whole when a chunk is created */
+    private volatile ChunkDirectory directory;
+
+    private CountSeries(int bucketsPerChunk, int maxChunks) {
+      this.bucketsPerChunk = bucketsPerChunk;
+      this.maxChunks = maxChunks;
+      this.directory = new ChunkDirectory(0, new Chunk[0]);
+    }
+
+    /**
+     * Add to a count of this bucket.
+     *
+     * @param index index of the bucket.
+     * @param content index of the report content.
+     * @param count the number to add.
+     */
+    private void add(long index, int content, long count) {
+      long chunkIndex = Math.floorDiv(index, bucketsPerChunk);
+      Chunk chunk = getChunk(chunkIndex);
+      if (chunk == null) {
+        chunk = createChunk(chunkIndex);
+      }
+      if (chunk != null) { // null if this bucket is too old to be kept
+        chunk.add(getOffset(index, content), count);
+      }
+    }
+
+    /**
+     * Get a count of this bucket.
+     *
+     * @param index index of the bucket.
+     * @param content index of the report content.
+     * @return the count, 0 if this bucket is not kept.
+     */
+    private int get(long index, int content) {
+      Chunk chunk = getChunk(Math.floorDiv(index, bucketsPerChunk));
+      return chunk == null ? 0 : (int) chunk.get(getOffset(index, content));
+    }
+
+    /**
+     * Sum the counts of a report content from one bucket to another.
+     *
+     * @param from index of the first bucket, included.
+     * @param to index of the last bucket, included.
+     * @param content index of the report content.
+     * @return the sum of counts of these buckets.
+     */
+    private int sum(long from, long to, int content) {
+      int result = 0;
+      for (long index = from; index <= to; index++) {
+        result += get(index, content);
+      }
+      return result;
+    }
+
+    /**
+     * Visit every bucket kept with any count, oldest first.
+     *
+     * @param visitor the visitor of buckets.
+     */
+    private void visit(Vertex.PassengerFlowVisitor visitor) {
+      ChunkDirectory currentDirectory = directory;
+      for (int position = 0; position < currentDirectory.chunks.length; position++) {
+        Chunk chunk = currentDirectory.chunks[position];
+        if (chunk == null) {
+          continue;
+        }
+        long firstIndex = (currentDirectory.firstChunk + position) * bucketsPerChunk;
+        for (int bucket = 0; bucket < bucketsPerChunk; bucket++) {
+          int offset = bucket * REPORT_CONTENTS.length;
+          long tapIn = chunk.get(offset);
+          long tapOut = chunk.get(offset + 1);
+          long arrived = chunk.get(offset + 2);
+          if (tapIn != 0 || tapOut != 0 || arrived != 0) {
+            visitor.visit(firstIndex + bucket, tapIn, tapOut, arrived);
+          }
+        }
+      }
+    }
+
+    private int getOffset(long index, int content) {
+      return Math.floorMod(index, bucketsPerChunk) * REPORT_CONTENTS.length + content;
+    }
+
+    /**
+     * Get a chunk if it is kept.
+     *
+     * @param chunkIndex index of the chunk.
+     * @return the chunk, null if it is not created or not kept.
+     */
+    private Chunk getChunk(long chunkIndex) {
+      ChunkDirectory currentDirectory = directory;
+      long position = chunkIndex - currentDirectory.firstChunk;
+      if (position < 0 || position >= currentDirectory.chunks.length) {
+        return null;
+      }
+      return currentDirectory.chunks[(int) position];
+    }
+
+    /**
+     * Create a chunk, dropping the oldest chunks if too many are kept.
+     *
+     * @param chunkIndex index of the chunk.
+     * @return the chunk, null if it is too old to be kept.
+     */
+    private synchronized Chunk createChunk(long chunkIndex) {
+      Chunk chunk = getChunk(chunkIndex);
+      if (chunk != null) { // created by another thread
+        return chunk;
+      }
+      ChunkDirectory currentDirectory = directory;
+      long currentFirst = currentDirectory.firstChunk;
+      Chunk[] currentChunks = currentDirectory.chunks;
+      long first = chunkIndex;
+      long last = chunkIndex;
+      if (currentChunks.length > 0) {
+        first = Math.min(currentFirst, chunkIndex);
+        last = Math.max(currentFirst + currentChunks.length - 1, chunkIndex);
+      }
+      if (last - first + 1 > maxChunks) {
+        if (chunkIndex < currentFirst) {
+          return null;
+        }
+        first = last - maxChunks + 1;
+      }
+      Chunk[] newChunks = new Chunk[(int) (last - first + 1)];
+      for (int i = 0; i < currentChunks.length; i++) {
+        long position = currentFirst + i - first;
+        if (position >= 0 && position < newChunks.length) {
+          newChunks[(int) position] = currentChunks[i];
+        }
+      }
+      chunk = new Chunk(bucketsPerChunk * REPORT_CONTENTS.length);
+      newChunks[(int) (chunkIndex - first)] = chunk;
+      /* chunks kept are shared by the new directory, so no count added to them is lost */
+      directory = new ChunkDirectory(first, newChunks);
+      return chunk;
+    }
+  }
+
+  /** A chunk directory is an immutable list of chunks from the first chunk kept. */
+  private static class ChunkDirectory implements Serializable {
+
+    /* serialVersionUID of the first chunk directory, its serialized fields are unchanged */
+    private static final long serialVersionUID = 5332901642754211079L;
+    /* index of the first chunk kept */
+    private final long firstChunk;
+    /* chunks from the first chunk kept, null for a chunk with no counts */
+    private final Chunk[] chunks;
+
+    private ChunkDirectory(long firstChunk, Chunk[] chunks) {
+      this.firstChunk = firstChunk;
+      this.chunks = chunks;
+    }
+  }
+
+  /**
+   * A chunk keeps counts in an atomic array. When threads contend to add to it, counts are spread
+   * over a few more arrays by thread, and a count is the sum over all arrays, like a LongAdder.
+   * Only the sums that are not 0 are written to a snapshot, most buckets of a station/stop have
+   * no count.
+   */
+  private static class Chunk implements Serializable {
+
+    /* serialVersionUID of the first chunk written as its counts that are not 0 */
+    private static final long serialVersionUID = -2487530668814243073L;
+    /* the number of extra arrays when contended, a power of 2 */
+    private static final int CELLS = 4;
+
+    /* not serialized, the counts are written as sums that are not 0 instead */
+    private transient AtomicLongArray base;
+    private transient volatile AtomicLongArray[] cells;
+
+    private Chunk(int length) {
+      this.base = new AtomicLongArray(length);
+    }
+
+    /**
+     * Add to a count.
+     *
+     * @param offset offset of the count in this chunk.
+     * @param delta the number to add.
+     */
+    private void add(int offset, long delta) {
+      AtomicLongArray[] currentCells = cells;
+      if (currentCells == null) {
+        long count = base.get(offset);
+        if (base.compareAndSet(offset, count, count + delta)) {
+          return;
+        }
+        currentCells = getCells(); // another thread added at the same time
+      }
+      int cell = (int) Thread.currentThread().getId() & (CELLS - 1);
+      currentCells[cell].addAndGet(offset, delta);
+    }
+
+    /**
+     * Get a count.
+     *
+     * @param offset offset of the count in this chunk.
+     * @return the count.
+     */
+    private long get(int offset) {
+      long result = base.get(offset);
+      AtomicLongArray[] currentCells = cells;
+      if (currentCells != null) {
+        for (AtomicLongArray cell : currentCells) {
+          result += cell.get(offset);
+        }
+      }
+      return result;
+    }
+
+    /**
+     * Write the number of counts of this chunk, then the offset and sum of each count that is not
+     * 0, without its extra arrays.
+     *
+     * @param out the stream to write this chunk to.
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+      out.defaultWriteObject();
+      long[] counts = new long[base.length()];
+      int nonZeroCounts = 0;
+      for (int offset = 0; offset < counts.length; offset++) {
+        counts[offset] = get(offset);
+        if (counts[offset] != 0) {
+          nonZeroCounts++;
+        }
+      }
+      out.writeInt(counts.length);
+      out.writeInt(nonZeroCounts);
+      for (int offset = 0; offset < counts.length; offset++) {
+        if (counts[offset] != 0) {
+          out.writeInt(offset);
+          out.writeLong(counts[offset]);
+        }
+      }
+    }
+
+    /**
+     * Read the counts of a chunk into one atomic array.
+     *
+     * @param in the stream to read this chunk from.
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+      in.defaultReadObject();
+      base = new AtomicLongArray(in.readInt());
+      int nonZeroCounts = in.readInt();
+      for (int i = 0; i < nonZeroCounts; i++) {
+        int offset = in.readInt();
+        base.set(offset, in.readLong());
+      }
+    }
+
+    private synchronized AtomicLongArray[] getCells() {
+      if (cells == null) {
+        AtomicLongArray[] newCells = new AtomicLongArray[CELLS];
+        for (int i = 0; i < CELLS; i++) {
+          newCells[i] = new AtomicLongArray(base.length());
+        }
+        cells = newCells;
+      }
+      return cells;
+    }
+  }
+}
@@ -0,0 +1,109 @@
+package map;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * A path pool keeps one interned ride path for every distinct sequence of stations/stops that
+ * rides have gone through. Most cardholders repeat the same few paths, so rides share the ride
+ * path of the pool instead of each keeping a list of its own, and a snapshot writes each path
+ * once.
+ *
+ * <p>Stations/stops on interned paths are kept by id, even after they are removed from the
+ * graph, so a path of an old ride can still be read.
+ */
+public final class PathPool implements Serializable {
+
+  /* serialVersionUID of the first path pool, its serialized fields are unchanged */
+  private static final long serialVersionUID = -6516864535085594833L;
+  /* interned paths by path id */
+  private final ArrayList<RidePath> paths;
+  /* stations/stops on interned paths by vertex id, replaced by a larger copy when a new id comes */
+  private volatile Vertex[] verticesById;
+  /* interned paths by their stations/stops, not serialized, rebuilt from paths when needed */
+  private transient HashMap<RidePath, RidePath> internedPaths;
+
+  /** Create a new path pool. */
+  PathPool() {
+    this.paths = new ArrayList<>();
+    this.verticesById = new Vertex[0];
+  }
+
+  /**
+   * Get the interned ride path going through these stations/stops, adding it to this pool if no
+   * ride has gone through it before. The stations/stops of a path interned in this pool are that
+   * path already, and are returned without locking this pool.
+   *
+   * @param path the stations/stops of a path, in order.
+   * @return the interned RidePath of this path.
+   */
+  public RidePath intern(List<Vertex> path) {
+    if (path instanceof RidePath.VertexList) {
+      RidePath ridePath = ((RidePath.VertexList) path).getRidePath();
+      if (ridePath.isInternedIn(this)) {
+        return ridePath;
+      }
+    }
+    return internNewPath(path);
+  }
+
+  /**
+   * Get the interned ride path going through these stations/stops, adding it to this pool if no
+   * ride has gone through it before.
+   *
+   * @param path the stations/stops of a path, in order.
+   * @return the interned RidePath of this path.
+   */
+  private synchronized RidePath internNewPath(List<Vertex> path) {
+    int[] stationIds = new int[path.size()];
+    int i = 0;
+    for (Vertex vertex : path) {
+      stationIds[i++] = vertex.getId();
+    }
+    if (internedPaths == null) { // not serialized, rebuild it after de-serialization
+      internedPaths = new HashMap<>();
+      for (RidePath ridePath : paths) {
+        internedPaths.put(ridePath, ridePath);
+      }
+    }
+    RidePath ridePath = new RidePath(paths.size(), stationIds, this);
+    RidePath interned = internedPaths.get(ridePath);
+    if (interned != null) {
+      return interned;
+    }
+    Vertex[] vertices = verticesById;
+    for (Vertex vertex : path) {
+      if (vertex.getId() >= vertices.length) {
+        vertices = Arrays.copyOf(vertices, Math.max(vertex.getId() + 1, vertices.length * 2));
+      }
+      vertices[vertex.getId()] = vertex;
+    }
+    /* publish the stations/stops before the path that reads them */
+    verticesById = vertices;
+    paths.add(ridePath);
+    internedPaths.put(ridePath, ridePath);
+    return ridePath;
+  }
+
+  /**
+   * Get the number of distinct paths interned in this pool.
+   *
+   * @return the number of interned paths.
+   */
+  public synchronized int size() {
+    return paths.size();
+  }
+
+  /**
+   * Get a station/stop on an interned path.
+   *
+   * @param id the id of this station/stop.
+   * @return the Vertex with this id.
+   */
+  Vertex getVertex(int id) {
+    return verticesById[id];
+  }
+}
@@ -0,0 +1,213 @@
+package map;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import javafx.util.Pair;
+
+/**
+ * A reachability index answers whether one station/stop can be reached from another on routes of
+ * one transit type, without searching. Stations/stops that can reach each other form a strongly
+ * connected component. Components form a directed acyclic graph, and each component stores a bitset
+ * of all components it can reach, so a query is a single bit lookup.
+ */
+class ReachabilityIndex {
+
+  /* component of each vertex by vertex id, -1 if the vertex is not on any of these routes */
+  private final int[] componentByVertexId;
+  /* bitset of components reachable from each component, including itself */
+  private final long[][] reachableComponents;
+
+  /**
+   * Build a reachability index from these routes.
+   *
+   * @param routes whether each route is both way or one way, and all adjacent vertices on it.
+   * @param verticesByName all stations/stops by their names.
+   * @param vertexCount the number of vertex ids used so far.
+   */
+  ReachabilityIndex(
+      Collection<Pair<String, ArrayList<String>>> routes,
+      Map<String, Vertex> verticesByName,
+      int vertexCount) {
+    /* number vertices on these routes as nodes, and collect edges between them */
+    int[] nodeByVertexId = new int[vertexCount];
+    Arrays.fill(nodeByVertexId, -1);
+    int nodeCount = 0;
+    int[] edgeFrom = new int[16];
+    int[] edgeTo = new int[16];
+    int edgeCount = 0;
+    for (Pair<String, ArrayList<String>> route : routes) {
+      for (String neighbor : route.getValue()) {
+        String[] vertices = neighbor.split("->");
+        int from = verticesByName.get(vertices[0]).getId();
+        int to = verticesByName.get(vertices[2]).getId();
+        if (nodeByVertexId[from] < 0) {
+          nodeByVertexId[from] = nodeCount++;
+        }
+        if (nodeByVertexId[to] < 0) {
+          nodeByVertexId[to] = nodeCount++;
+        }
+        if (edgeCount + 2 > edgeFrom.length) {
+          edgeFrom = Arrays.copyOf(edgeFrom, edgeFrom.length * 2);
+          edgeTo = Arrays.copyOf(edgeTo, edgeTo.length * 2);
+        }
+        edgeFrom[edgeCount] = nodeByVertexId[from];
+        edgeTo[edgeCount++] = nodeByVertexId[to];
+        if (route.getKey().equals("BOTH WAY")) {
+          edgeFrom[edgeCount] = nodeByVertexId[to];
+          edgeTo[edgeCount++] = nodeByVertexId[from];
+        }
+      }
+    }
+    /* adjacency of nodes in compressed rows */
+    int[] firstEdge = new int[nodeCount + 1];
+    for (int i = 0; i < edgeCount; i++) {
+      firstEdge[edgeFrom[i] + 1]++;
+    }
+    for (int node = 0; node < nodeCount; node++) {
+      firstEdge[node + 1] += firstEdge[node];
+    }
+    int[] targets = new int[edgeCount];
+    int[] filled = Arrays.copyOf(firstEdge, nodeCount);
+    for (int i = 0; i < edgeCount; i++) {
+      targets[filled[edgeFrom[i]]++] = edgeTo[i];
+    }
+    int[] componentByNode = new int[nodeCount];
+    int componentCount = findComponents(firstEdge, targets, componentByNode);
+    this.componentByVertexId = new int[vertexCount];
+    Arrays.fill(componentByVertexId, -1);
+    for (int vertexId = 0; vertexId < vertexCount; vertexId++) {
+      if (nodeByVertexId[vertexId] >= 0) {
+        componentByVertexId[vertexId] = componentByNode[nodeByVertexId[vertexId]];
+      }
+    }
+    this.reachableComponents = new long[componentCount][];
+    /* components are numbered in reverse topological order, every component a component can
+     * reach has a smaller number, so their bitsets are ready first */
+    int words = (componentCount + 63) >>> 6;
+    /* nodes sorted by their components */
+    int[] firstNodeOfComponent = new int[componentCount + 1];
+    for (int node = 0; node < nodeCount; node++) {
+      firstNodeOfComponent[componentByNode[node] + 1]++;
+    }
+    for (int component = 0; component < componentCount; component++) {
+      firstNodeOfComponent[component + 1] += firstNodeOfComponent[component];
+    }
+    int[] nodesByComponent = new int[nodeCount];
+    int[] position = Arrays.copyOf(firstNodeOfComponent, componentCount);
+    for (int node = 0; node < nodeCount; node++) {
+      nodesByComponent[position[componentByNode[node]]++] = node;
+    }
+    for (int component = 0; component < componentCount; component++) {
+      long[] reachable = new long[words];
+      reachable[component >>> 6] |= 1L << component;
+      for (int i = firstNodeOfComponent[component]; i < firstNodeOfComponent[component + 1]; i++) {
+        int node = nodesByComponent[i];
+        for (int edge = firstEdge[node]; edge < firstEdge[node + 1]; edge++) {
+          int next = componentByNode[targets[edge]];
+          if (next != component && (reachable[next >>> 6] & (1L << next)) == 0) {
+            long[] nextReachable = reachableComponents[next];
+            for (int word = 0; word < words; word++) {
+              reachable[word] |= nextReachable[word];
+            }
+          }
+        }
+      }
+      reachableComponents[component] = reachable;
+    }
+  }
+
+  /**
+   * Check whether the end vertex can be reached from the start vertex.
+   *
+   * @param startVertex the start vertex.
+   * @param endVertex the end vertex.
+   * @return true if both vertices are on these routes and the end vertex can be reached.
+   */
+  boolean canReach(Vertex startVertex, Vertex endVertex) {
+    int from = getComponent(startVertex);
+    int to = getComponent(endVertex);
+    return from >= 0 && to >= 0 && (reachableComponents[from][to >>> 6] & (1L << to)) != 0;
+  }
+
+  /**
+   * Get the component of this vertex.
+   *
+   * @param vertex the vertex to look up.
+   * @return the component of this vertex, -1 if it is not on these routes.
+   */
+  private int getComponent(Vertex vertex) {
+    int vertexId = vertex.getId();
+    return vertexId < componentByVertexId.length ? componentByVertexId[vertexId] : -1;
+  }
+
+  /**
+   * Find strongly connected components with Tarjan's algorithm, without recursion. A component is
+   * numbered when it is completed, after every component it can reach.
+   *
+   * @param firstEdge index of the first edge of each node in targets.
+   * @param targets the node each edge goes to.
+   * @param componentByNode records the component of each node.
+   * @return the number of components.
+   */
+  private static int findComponents(int[] firstEdge, int[] targets, int[] componentByNode) {
+    int nodeCount = componentByNode.length;
+    int[] index = new int[nodeCount];
+    Arrays.fill(index, -1);
+    int[] lowLink = new int[nodeCount];
+    boolean[] onStack = new boolean[nodeCount];
+    int[] stack = new int[nodeCount];
+    int stackSize = 0;
+    /* depth first search path, with the next edge to visit of each node on it */
+    int[] path = new int[nodeCount];
+    int[] nextEdge = new int[nodeCount];
+    int nextIndex = 0;
+    int componentCount = 0;
+    for (int root = 0; root < nodeCount; root++) {
+      if (index[root] >= 0) {
+        continue;
+      }
+      int depth = 0;
+      path[0] = root;
+      nextEdge[0] = firstEdge[root];
+      index[root] = nextIndex;
+      lowLink[root] = nextIndex++;
+      stack[stackSize++] = root;
+      onStack[root] = true;
+      while (depth >= 0) {
+        int node = path[depth];
+        if (nextEdge[depth] < firstEdge[node + 1]) {
+          int next = targets[nextEdge[depth]++];
+          if (index[next] < 0) { // visit this neighbor
+            depth++;
+            path[depth] = next;
+            nextEdge[depth] = firstEdge[next];
+            index[next] = nextIndex;
+            lowLink[next] = nextIndex++;
+            stack[stackSize++] = next;
+            onStack[next] = true;
+          } else if (onStack[next]) {
+            lowLink[node] = Math.min(lowLink[node], index[next]);
+          }
+        } else { // all neighbors visited
+          if (lowLink[node] == index[node]) { // node is the root of a component
+            int member;
+            do {
+              member = stack[--stackSize];
+              onStack[member] = false;
+              componentByNode[member] = componentCount;
+            } while (member != node);
+            componentCount++;
+          }
+          depth--;
+          if (depth >= 0) {
+            int parent = path[depth];
+            lowLink[parent] = Math.min(lowLink[parent], lowLink[node]);
+          }
+        }
+      }
+    }
+    return componentCount;
+  }
+}
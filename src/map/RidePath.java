@@ -0,0 +1,128 @@
+package map;
+
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * A ride path is an immutable sequence of stations/stops a ride has gone through, interned in a
+ * path pool and shared by every ride that has gone through it. It keeps the ids of its
+ * stations/stops only, and reads them from its pool.
+ */
+public final class RidePath implements Serializable {
+
+  /* serialVersionUID of the first ride path, its serialized fields are unchanged */
+  private static final long serialVersionUID = -518534312615235607L;
+  private final int id;
+  private final int[] stationIds;
+  private final PathPool pool;
+
+  /**
+   * Create a new ride path, only interned by a path pool.
+   *
+   * @param id the id of this path in its pool.
+   * @param stationIds ids of the stations/stops of this path, in order.
+   * @param pool the path pool to read stations/stops from.
+   */
+  RidePath(int id, int[] stationIds, PathPool pool) {
+    this.id = id;
+    this.stationIds = stationIds;
+    this.pool = pool;
+  }
+
+  /**
+   * Get the id of this path in its path pool.
+   *
+   * @return the path id.
+   */
+  public int getId() {
+    return id;
+  }
+
+  /**
+   * Get the number of stations/stops of this path.
+   *
+   * @return the number of stations/stops this path goes through.
+   */
+  public int size() {
+    return stationIds.length;
+  }
+
+  /**
+   * Check whether this path is interned in a path pool.
+   *
+   * @param pathPool the path pool.
+   * @return true if this path is interned in this pool.
+   */
+  boolean isInternedIn(PathPool pathPool) {
+    return pool == pathPool;
+  }
+
+  /**
+   * Get the stations/stops of this path, without copying them.
+   *
+   * @return an unmodifiable list of the stations/stops of this path, in order.
+   */
+  public List<Vertex> getVertices() {
+    return new VertexList();
+  }
+
+  /**
+   * Check whether this path goes through these stations/stops.
+   *
+   * @param path the stations/stops of a path, in order.
+   * @return true if this path goes through the same stations/stops in the same order.
+   */
+  public boolean hasVertices(List<Vertex> path) {
+    if (path.size() != stationIds.length) {
+      return false;
+    }
+    int i = 0;
+    for (Vertex vertex : path) {
+      if (vertex.getId() != stationIds[i++]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    return o instanceof RidePath && Arrays.equals(stationIds, ((RidePath) o).stationIds);
+  }
+
+  @Override
+  public int hashCode() {
+    return Arrays.hashCode(stationIds);
+  }
+
+  @Override
+  public String toString() {
+    return getVertices().toString();
+  }
+
+  /** A vertex list reads the stations/stops of this path from its pool by id. */
+  class VertexList extends AbstractList<Vertex> implements RandomAccess {
+
+    /**
+     * Get the ride path this list reads the stations/stops of.
+     *
+     * @return the RidePath of this list.
+     */
+    RidePath getRidePath() {
+      return RidePath.this;
+    }
+
+    @Override
+    public Vertex get(int index) {
+      return pool.getVertex(stationIds[index]);
+    }
+
+    @Override
+    public int size() {
+      return stationIds.length;
+    }
+  }
+}
@@ -0,0 +1,176 @@
+package map;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.Map;
+
+/**
+ * A shortest path tree cache keeps the shortest path trees of recently used start stations/stops,
+ * so a later query from the same start station/stop only walks back along the tree. When the graph
+ * changes, a tree is only dropped if it lost one of its own edges, and is repaired in place if an
+ * added edge makes some station/stop closer. Trees that cannot reach an added edge, or only reach
+ * it with a longer distance, are kept as they are.
+ */
+class ShortestPathTreeCache {
+
+  /* the maximum number of trees kept, the least recently used tree is dropped first */
+  private static final int MAX_TREES = 64;
+
+  private final Map<Vertex, Tree> trees;
+
+  /** Create a new empty shortest path tree cache. */
+  ShortestPathTreeCache() {
+    this.trees =
+        new LinkedHashMap<Vertex, Tree>(16, 0.75f, true) {
+          @Override
+          protected boolean removeEldestEntry(Map.Entry<Vertex, Tree> eldest) {
+            return size() > MAX_TREES;
+          }
+        };
+  }
+
+  /**
+   * Get the shortest path from the start vertex to the end vertex if the tree of the start vertex
+   * is cached. The distance from the start vertex is recorded in every vertex on the path.
+   *
+   * @param startVertex the start vertex.
+   * @param endVertex the end vertex.
+   * @return A LinkedList of Vertex representing the shortest path, null if the tree of the start
+   *     vertex is not cached.
+   */
+  synchronized LinkedList<Vertex> getShortestPath(Vertex startVertex, Vertex endVertex) {
+    Tree tree = trees.get(startVertex);
+    if (tree == null) {
+      return null;
+    }
+    LinkedList<Vertex> path = new LinkedList<>();
+    Vertex currentVertex = endVertex;
+    currentVertex.setPathDistance(tree.getDistance(currentVertex));
+    path.offerFirst(currentVertex);
+    while (tree.getPrev(currentVertex) != null) {
+      currentVertex = tree.getPrev(currentVertex);
+      currentVertex.setPathDistance(tree.getDistance(currentVertex));
+      path.offerFirst(currentVertex);
+    }
+    return path;
+  }
+
+  /**
+   * Store the shortest path tree from a start vertex, after a full search has recorded distance and
+   * previous vertex in every vertex of the graph.
+   *
+   * @param startVertex the start vertex of the search.
+   * @param graph all vertices of the graph.
+   * @param vertexCount the number of vertex ids used so far.
+   */
+  synchronized void put(Vertex startVertex, Collection<Vertex> graph, int vertexCount) {
+    Tree tree = new Tree(vertexCount);
+    for (Vertex vertex : graph) {
+      tree.set(vertex, vertex.getDistance(), vertex.getPrev());
+    }
+    trees.put(startVertex, tree);
+  }
+
+  /**
+   * Drop or repair cached trees after the graph has changed.
+   *
+   * @param delta how the graph has changed.
+   * @param vertexCount the number of vertex ids used so far.
+   */
+  synchronized void update(GraphDelta delta, int vertexCount) {
+    Iterator<Map.Entry<Vertex, Tree>> iterator = trees.entrySet().iterator();
+    while (iterator.hasNext()) {
+      Map.Entry<Vertex, Tree> entry = iterator.next();
+      if (delta.getRemovedVertices().contains(entry.getKey())
+          || !entry.getValue().repair(delta, vertexCount)) {
+        iterator.remove();
+      }
+    }
+  }
+
+  /** A tree stores the shortest distance and previous vertex of every vertex by vertex id. */
+  private static class Tree {
+
+    private double[] distance;
+    private Vertex[] prev;
+
+    private Tree(int vertexCount) {
+      this.distance = new double[vertexCount];
+      Arrays.fill(distance, Double.POSITIVE_INFINITY);
+      this.prev = new Vertex[vertexCount];
+    }
+
+    private double getDistance(Vertex vertex) {
+      return vertex.getId() < distance.length ? distance[vertex.getId()] : Double.POSITIVE_INFINITY;
+    }
+
+    private Vertex getPrev(Vertex vertex) {
+      return vertex.getId() < prev.length ? prev[vertex.getId()] : null;
+    }
+
+    private void set(Vertex vertex, double newDistance, Vertex newPrev) {
+      distance[vertex.getId()] = newDistance;
+      prev[vertex.getId()] = newPrev;
+    }
+
+    /**
+     * Repair this tree after the graph has changed. A removed edge that is not on this tree does
+     * not change any shortest distance, while a removed tree edge does and cannot be repaired
+     * locally. An added edge only changes this tree if it gives a shorter distance to its end, in
+     * which case shorter distances are spread from there.
+     *
+     * @param delta how the graph has changed.
+     * @param vertexCount the number of vertex ids used so far.
+     * @return false if this tree cannot be repaired and should be dropped.
+     */
+    private boolean repair(GraphDelta delta, int vertexCount) {
+      for (GraphDelta.Edge edge : delta.getRemovedEdges()) {
+        if (getPrev(edge.getTo()) == edge.getFrom()) {
+          return false;
+        }
+      }
+      if (vertexCount > distance.length) { // make room for new vertices
+        int oldLength = distance.length;
+        distance = Arrays.copyOf(distance, vertexCount);
+        Arrays.fill(distance, oldLength, vertexCount, Double.POSITIVE_INFINITY);
+        prev = Arrays.copyOf(prev, vertexCount);
+      }
+      NodeHeap heap = new NodeHeap();
+      for (GraphDelta.Edge edge : delta.getAddedEdges()) {
+        double newDistance = getDistance(edge.getFrom()) + edge.getDistance();
+        if (newDistance < getDistance(edge.getTo())) {
+          set(edge.getTo(), newDistance, edge.getFrom());
+          heap.push(edge.getTo().getId(), newDistance);
+        }
+      }
+      if (heap.isEmpty()) { // no added edge gives a shorter distance
+        return true;
+      }
+      Vertex[] vertices = new Vertex[distance.length];
+      for (GraphDelta.Edge edge : delta.getAddedEdges()) {
+        vertices[edge.getTo().getId()] = edge.getTo();
+      }
+      /* spread shorter distances from the ends of added edges */
+      while (!heap.isEmpty()) {
+        double key = heap.peekKey();
+        int id = heap.pop();
+        if (key > distance[id]) {
+          continue;
+        }
+        Vertex vertex = vertices[id];
+        for (Map.Entry<Vertex, Double> neighbor : vertex.getAdjacentVertices().entrySet()) {
+          double newDistance = key + neighbor.getValue();
+          if (newDistance < getDistance(neighbor.getKey())) {
+            set(neighbor.getKey(), newDistance, vertex);
+            vertices[neighbor.getKey().getId()] = neighbor.getKey();
+            heap.push(neighbor.getKey().getId(), newDistance);
+          }
+        }
+      }
+      return true;
+    }
+  }
+}
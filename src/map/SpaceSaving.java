@@ -0,0 +1,201 @@
+package map;
+
+/**
+ * A space saving summary keeps the keys added most often with a fixed number of counters. When a
+ * new key comes and all counters are used, it takes over the counter with the smallest count, and
+ * the count of that counter is kept as its possible over count.
+ *
+ * <p>With k counters and a total count of n, every key added more than n / k times has a counter,
+ * and the count of a counter is at most n / k higher than the real count of its key. Counters are
+ * kept in a min heap by count, with an open addressing index from key to counter, so adding a key
+ * takes O(log k) time.
+ */
+class SpaceSaving {
+
+  private final int capacity;
+  private int size;
+  /* counters in a min heap by count */
+  private final long[] keys;
+  private final long[] counts;
+  private final long[] errors;
+  /* open addressing index from key to heap position plus one, 0 for an empty slot */
+  private final long[] indexKeys;
+  private final int[] indexPositions;
+  private final int indexMask;
+
+  /**
+   * Create a new space saving summary.
+   *
+   * @param capacity the number of counters.
+   */
+  SpaceSaving(int capacity) {
+    this.capacity = capacity;
+    this.keys = new long[capacity];
+    this.counts = new long[capacity];
+    this.errors = new long[capacity];
+    int indexCapacity = Integer.highestOneBit(Math.max(2, capacity) * 2 - 1) * 2;
+    this.indexKeys = new long[indexCapacity];
+    this.indexPositions = new int[indexCapacity];
+    this.indexMask = indexCapacity - 1;
+  }
+
+  /**
+   * Add one to the count of a key.
+   *
+   * @param key the key to count.
+   */
+  void add(long key) {
+    int position = find(key);
+    if (position < 0) {
+      if (size < capacity) { // a counter is free
+        position = size++;
+        keys[position] = key;
+        counts[position] = 0;
+        errors[position] = 0;
+        siftUp(position);
+        position = find(key);
+      } else { // take over the counter with the smallest count
+        remove(keys[0]);
+        keys[0] = key;
+        errors[0] = counts[0];
+        insert(key, 0);
+        position = 0;
+      }
+    }
+    counts[position]++;
+    siftDown(position);
+  }
+
+  /**
+   * Get all counters in use.
+   *
+   * @return arrays of key, count and over count of counters, in no particular order.
+   */
+  long[][] getCounters() {
+    long[][] result = new long[size][];
+    for (int i = 0; i < size; i++) {
+      result[i] = new long[] {keys[i], counts[i], errors[i]};
+    }
+    return result;
+  }
+
+  /**
+   * Move a counter towards the root of the heap until its parent has a smaller count.
+   *
+   * @param position the heap position of this counter.
+   */
+  private void siftUp(int position) {
+    while (position > 0 && counts[(position - 1) / 2] > counts[position]) {
+      swap(position, (position - 1) / 2);
+      position = (position - 1) / 2;
+    }
+    insert(keys[position], position);
+  }
+
+  /**
+   * Move a counter away from the root of the heap until its children have larger counts.
+   *
+   * @param position the heap position of this counter.
+   */
+  private void siftDown(int position) {
+    while (true) {
+      int smallest = position;
+      for (int child = position * 2 + 1; child <= position * 2 + 2 && child < size; child++) {
+        if (counts[child] < counts[smallest]) {
+          smallest = child;
+        }
+      }
+      if (smallest == position) {
+        return;
+      }
+      swap(position, smallest);
+      position = smallest;
+    }
+  }
+
+  /**
+   * Swap two counters in the heap, and update their positions in the index.
+   *
+   * @param first heap position of a counter.
+   * @param second heap position of another counter.
+   */
+  private void swap(int first, int second) {
+    long key = keys[first];
+    long count = counts[first];
+    long error = errors[first];
+    keys[first] = keys[second];
+    counts[first] = counts[second];
+    errors[first] = errors[second];
+    keys[second] = key;
+    counts[second] = count;
+    errors[second] = error;
+    insert(keys[first], first);
+    insert(keys[second], second);
+  }
+
+  /**
+   * Find the heap position of a key.
+   *
+   * @param key the key to find.
+   * @return heap position of this key, or -1 if it has no counter.
+   */
+  private int find(long key) {
+    for (int slot = getSlot(key); indexPositions[slot] != 0; slot = (slot + 1) & indexMask) {
+      if (indexKeys[slot] == key) {
+        return indexPositions[slot] - 1;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Put a key in the index, or update its heap position if it is in the index.
+   *
+   * @param key the key.
+   * @param position heap position of this key.
+   */
+  private void insert(long key, int position) {
+    int slot = getSlot(key);
+    while (indexPositions[slot] != 0 && indexKeys[slot] != key) {
+      slot = (slot + 1) & indexMask;
+    }
+    indexKeys[slot] = key;
+    indexPositions[slot] = position + 1;
+  }
+
+  /**
+   * Remove a key from the index, moving back the keys after it so that none of them is lost.
+   *
+   * @param key the key to remove.
+   */
+  private void remove(long key) {
+    int slot = getSlot(key);
+    while (indexKeys[slot] != key || indexPositions[slot] == 0) {
+      slot = (slot + 1) & indexMask;
+    }
+    indexPositions[slot] = 0;
+    for (int next = (slot + 1) & indexMask;
+        indexPositions[next] != 0;
+        next = (next + 1) & indexMask) {
+      int home = getSlot(indexKeys[next]);
+      /* move this key back if its home slot is not between the empty slot and itself */
+      if (((next - home) & indexMask) >= ((next - slot) & indexMask)) {
+        indexKeys[slot] = indexKeys[next];
+        indexPositions[slot] = indexPositions[next];
+        indexPositions[next] = 0;
+        slot = next;
+      }
+    }
+  }
+
+  /**
+   * Get the home slot of a key in the index.
+   *
+   * @param key the key.
+   * @return the first slot to look for this key.
+   */
+  private int getSlot(long key) {
+    long hash = key * 0x9E3779B97F4A7C15L;
+    return (int) (hash ^ (hash >>> 32)) & indexMask;
+  }
+}
@@ -0,0 +1,242 @@
+package map;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import ride.Ride;
+
+/**
+ * A station distance table keeps the shortest distance and path between every pair of stations
+ * of a transit type, over a snapshot of the graph of a system map. Once it is built, the distance
+ * of a pair is a single array read, and its path is walked back along the shortest path tree of
+ * the start station without searching the graph. The path of a pair is interned in the path pool
+ * of the system map the first time it is asked for, and read from this table after that.
+ *
+ * <p>The snapshot is copied when the table is created, and the table can be built on another
+ * thread. The table answers queries only after it is ready, and never changes after that, so it
+ * can be read by any number of threads.
+ */
+public final class StationDistanceTable {
+
+  private final int graphVersion;
+  private final Vertex[] vertices;
+  /* node index of each vertex by vertex id, -1 if the vertex is not in this snapshot */
+  private final int[] nodeByVertexId;
+  /* edges of all nodes in one array, edges of a node start at edgeStart[node] */
+  private final int[] edgeStart;
+  private final int[] edgeTargets;
+  private final double[] edgeDistances;
+  /* nodes of the stations in this table, and station index of each node, -1 if not a station */
+  private final int[] stationNodes;
+  private final int[] stationByNode;
+  /* shortest distance from each station to each station, row by start station */
+  private double[] distances;
+  /* previous node on the shortest path from each station to each node, row by start station */
+  private int[] previousNodes;
+  private final PathPool pathPool;
+  /* interned shortest path of each pair of stations, row by start station, filled in when used */
+  private final RidePath[][] paths;
+  private volatile boolean ready;
+
+  /**
+   * Create a new station distance table from a snapshot of the graph. The table is not ready until
+   * it is built.
+   *
+   * @param graph all stations/stops of the system map.
+   * @param graphVersion version of the graph this snapshot is taken from.
+   * @param transitType transit type of stations/stops in this table.
+   * @param pathPool the path pool to intern shortest paths in.
+   */
+  StationDistanceTable(
+      Collection<Vertex> graph,
+      int graphVersion,
+      Ride.TransitType transitType,
+      PathPool pathPool) {
+    this.graphVersion = graphVersion;
+    this.pathPool = pathPool;
+    this.vertices = graph.toArray(new Vertex[0]);
+    int maxVertexId = -1;
+    int stationCount = 0;
+    for (Vertex vertex : vertices) {
+      maxVertexId = Math.max(maxVertexId, vertex.getId());
+      if (vertex.isServedBy(transitType)) {
+        stationCount++;
+      }
+    }
+    this.nodeByVertexId = new int[maxVertexId + 1];
+    Arrays.fill(nodeByVertexId, -1);
+    this.stationNodes = new int[stationCount];
+    this.paths = new RidePath[stationCount][];
+    this.stationByNode = new int[vertices.length];
+    Arrays.fill(stationByNode, -1);
+    int station = 0;
+    for (int node = 0; node < vertices.length; node++) {
+      nodeByVertexId[vertices[node].getId()] = node;
+      if (vertices[node].isServedBy(transitType)) {
+        stationByNode[node] = station;
+        stationNodes[station++] = node;
+      }
+    }
+    /* copy adjacent vertices now, the graph may change while building */
+    this.edgeStart = new int[vertices.length + 1];
+    int edgeCount = 0;
+    for (Vertex vertex : vertices) {
+      edgeCount += vertex.getAdjacentVertices().size();
+    }
+    this.edgeTargets = new int[edgeCount];
+    this.edgeDistances = new double[edgeCount];
+    int edge = 0;
+    for (int from = 0; from < vertices.length; from++) {
+      edgeStart[from] = edge;
+      for (Map.Entry<Vertex, Double> neighbor : vertices[from].getAdjacentVertices().entrySet()) {
+        int to = getNode(neighbor.getKey());
+        if (to >= 0) {
+          edgeTargets[edge] = to;
+          edgeDistances[edge++] = neighbor.getValue();
+        }
+      }
+    }
+    edgeStart[vertices.length] = edge;
+  }
+
+  /**
+   * Get the version of the graph this table is built from.
+   *
+   * @return the version of the graph this table is built from.
+   */
+  int getGraphVersion() {
+    return graphVersion;
+  }
+
+  /**
+   * Get the number of stations in this table.
+   *
+   * @return the number of stations of the transit type of this table.
+   */
+  int getStationCount() {
+    return stationNodes.length;
+  }
+
+  /**
+   * Search the whole snapshot from every station, and keep the distance to every other station and
+   * the shortest path tree of every station.
+   */
+  void build() {
+    int nodeCount = vertices.length;
+    distances = new double[stationNodes.length * stationNodes.length];
+    previousNodes = new int[stationNodes.length * nodeCount];
+    double[] nodeDistances = new double[nodeCount];
+    NodeHeap heap = new NodeHeap();
+    for (int station = 0; station < stationNodes.length; station++) {
+      int row = station * nodeCount;
+      Arrays.fill(nodeDistances, Double.POSITIVE_INFINITY);
+      Arrays.fill(previousNodes, row, row + nodeCount, -1);
+      nodeDistances[stationNodes[station]] = 0;
+      heap.clear();
+      heap.push(stationNodes[station], 0);
+      while (!heap.isEmpty()) {
+        double distance = heap.peekKey();
+        int node = heap.pop();
+        if (distance > nodeDistances[node]) {
+          continue; // already settled with a shorter distance
+        }
+        for (int edge = edgeStart[node]; edge < edgeStart[node + 1]; edge++) {
+          int to = edgeTargets[edge];
+          double newDistance = distance + edgeDistances[edge];
+          if (newDistance < nodeDistances[to]) {
+            nodeDistances[to] = newDistance;
+            previousNodes[row + to] = node;
+            heap.push(to, newDistance);
+          }
+        }
+      }
+      for (int target = 0; target < stationNodes.length; target++) {
+        distances[station * stationNodes.length + target] = nodeDistances[stationNodes[target]];
+      }
+    }
+    ready = true;
+  }
+
+  /**
+   * Get the shortest distance from one station to another.
+   *
+   * @param startVertex the start station.
+   * @param endVertex the end station.
+   * @return the shortest distance, positive infinity if the end station cannot be reached, or NaN
+   *     if either station is not in this table.
+   */
+  public double getDistance(Vertex startVertex, Vertex endVertex) {
+    int start = getStation(startVertex);
+    int end = getStation(endVertex);
+    if (start < 0 || end < 0) {
+      return Double.NaN;
+    }
+    return distances[start * stationNodes.length + end];
+  }
+
+  /**
+   * Get the shortest path from one station to another. The path is walked back and interned the
+   * first time it is asked for, so a ride charged by it later neither builds nor interns it
+   * again. The vertices on the path are not changed, so the distance of the path should be read
+   * from this table.
+   *
+   * @param startVertex the start station.
+   * @param endVertex the end station.
+   * @return the interned RidePath of the shortest path, null if either station is not in this
+   *     table or the end station cannot be reached.
+   */
+  public RidePath getPath(Vertex startVertex, Vertex endVertex) {
+    double distance = getDistance(startVertex, endVertex);
+    if (Double.isNaN(distance) || Double.isInfinite(distance)) {
+      return null;
+    }
+    int start = getStation(startVertex);
+    RidePath[] row = paths[start];
+    if (row == null) { // a row created twice by two threads only loses the paths of one of them
+      row = new RidePath[stationNodes.length];
+      paths[start] = row;
+    }
+    int end = getStation(endVertex);
+    RidePath path = row[end];
+    if (path == null) {
+      int offset = start * vertices.length;
+      int length = 0;
+      for (int node = getNode(endVertex); node >= 0; node = previousNodes[offset + node]) {
+        length++;
+      }
+      Vertex[] pathVertices = new Vertex[length];
+      for (int node = getNode(endVertex); node >= 0; node = previousNodes[offset + node]) {
+        pathVertices[--length] = vertices[node];
+      }
+      /* interned paths never change, so one interned by another thread can be read as it is */
+      path = pathPool.intern(Arrays.asList(pathVertices));
+      row[end] = path;
+    }
+    return path;
+  }
+
+  /**
+   * Get the station index of a vertex in this table.
+   *
+   * @param vertex the vertex to look up.
+   * @return the station index, -1 if this table is not ready or the vertex is not a station in it.
+   */
+  private int getStation(Vertex vertex) {
+    if (!ready || vertex == null) {
+      return -1;
+    }
+    int node = getNode(vertex);
+    return node >= 0 && vertices[node] == vertex ? stationByNode[node] : -1;
+  }
+
+  /**
+   * Get the node index of a vertex in this snapshot.
+   *
+   * @param vertex the vertex to look up.
+   * @return the node index, -1 if the vertex is not in this snapshot.
+   */
+  private int getNode(Vertex vertex) {
+    int id = vertex.getId();
+    return id < nodeByVertexId.length ? nodeByVertexId[id] : -1;
+  }
+}
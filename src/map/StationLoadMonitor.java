@@ -0,0 +1,179 @@
+package map;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import javafx.util.Pair;
+
+/**
+ * A station load monitor keeps tap in times, tap out times and arrived times of every
+ * station/stop in the last few minutes, as a ring of one minute buckets. Each bucket keeps the
+ * taps recorded in its minute, and running totals of the whole window are kept by station/stop,
+ * so the load of a station/stop is a single lookup and the most loaded stations/stops are found
+ * with one pass over the totals. When a minute leaves the window, its taps are taken off the
+ * totals.
+ */
+public class StationLoadMonitor {
+
+  private static final long MILLIS_PER_MINUTE = 60 * 1000L;
+  private static final int WIDTH = PassengerFlow.REPORT_CONTENTS.length;
+
+  private final int windowMinutes;
+  /* taps recorded in each minute of the window, by minute modulo window length */
+  private final TapBucket[] buckets;
+  /* the latest minute of the window, since epoch */
+  private long latestMinute;
+  /* the number of taps in the window of each report content, by vertex id */
+  private int[] totals;
+  /* vertices with taps, by vertex id */
+  private Vertex[] vertices;
+
+  /**
+   * Create a new station load monitor.
+   *
+   * @param windowMinutes how many latest minutes of taps are kept.
+   */
+  StationLoadMonitor(int windowMinutes) {
+    this.windowMinutes = windowMinutes;
+    this.buckets = new TapBucket[windowMinutes];
+    for (int i = 0; i < windowMinutes; i++) {
+      buckets[i] = new TapBucket();
+    }
+    this.latestMinute = Long.MIN_VALUE;
+    this.totals = new int[0];
+    this.vertices = new Vertex[0];
+  }
+
+  /**
+   * Get how many latest minutes of taps are kept.
+   *
+   * @return the length of the window in minutes.
+   */
+  public int getWindowMinutes() {
+    return windowMinutes;
+  }
+
+  /**
+   * Record a tap at a station/stop. A tap older than the window is ignored.
+   *
+   * @param vertex the station/stop tapped at.
+   * @param reportContent report content, "TAP IN TIMES" or "TAP OUT TIMES" or "ARRIVED TIMES"
+   * @param timeInMillis the time of this tap.
+   */
+  synchronized void record(Vertex vertex, String reportContent, long timeInMillis) {
+    int content = PassengerFlow.getContentIndex(reportContent);
+    long minute = Math.floorDiv(timeInMillis, MILLIS_PER_MINUTE);
+    advance(minute);
+    if (minute <= latestMinute - windowMinutes) {
+      return;
+    }
+    int id = vertex.getId();
+    if (id >= vertices.length) {
+      int length = Math.max(id + 1, vertices.length * 2);
+      vertices = Arrays.copyOf(vertices, length);
+      totals = Arrays.copyOf(totals, length * WIDTH);
+    }
+    vertices[id] = vertex;
+    int key = id * WIDTH + content;
+    buckets[Math.floorMod(minute, windowMinutes)].add(key);
+    totals[key]++;
+  }
+
+  /**
+   * Get the number of taps of a report content at a station/stop in the window ending now.
+   *
+   * @param vertex the station/stop.
+   * @param reportContent report content, "TAP IN TIMES" or "TAP OUT TIMES" or "ARRIVED TIMES"
+   * @param nowInMillis current time.
+   * @return the number of taps in the window.
+   */
+  public synchronized int getLoad(Vertex vertex, String reportContent, long nowInMillis) {
+    int content = PassengerFlow.getContentIndex(reportContent);
+    advance(Math.floorDiv(nowInMillis, MILLIS_PER_MINUTE));
+    int id = vertex.getId();
+    return id < vertices.length ? totals[id * WIDTH + content] : 0;
+  }
+
+  /**
+   * Get the stations/stops with the most taps of every report content in the window ending now.
+   *
+   * @param count the maximum number of stations/stops to get.
+   * @param nowInMillis current time.
+   * @return pairs of station/stop and its number of taps, the most loaded first.
+   */
+  public synchronized List<Pair<Vertex, Integer>> getTopLoadedStations(
+      int count, long nowInMillis) {
+    advance(Math.floorDiv(nowInMillis, MILLIS_PER_MINUTE));
+    /* keep the most loaded ids found so far, sorted by load from high to low */
+    int[] topIds = new int[count];
+    int[] topLoads = new int[count];
+    int size = 0;
+    for (int id = 0; id < vertices.length; id++) {
+      int load = 0;
+      for (int content = 0; content < WIDTH; content++) {
+        load += totals[id * WIDTH + content];
+      }
+      if (load == 0 || (size == count && load <= topLoads[size - 1])) {
+        continue;
+      }
+      int position = size < count ? size++ : size - 1;
+      while (position > 0 && topLoads[position - 1] < load) {
+        topIds[position] = topIds[position - 1];
+        topLoads[position] = topLoads[position - 1];
+        position--;
+      }
+      topIds[position] = id;
+      topLoads[position] = load;
+    }
+    List<Pair<Vertex, Integer>> result = new ArrayList<>();
+    for (int i = 0; i < size; i++) {
+      result.add(new Pair<>(vertices[topIds[i]], topLoads[i]));
+    }
+    return result;
+  }
+
+  /**
+   * Move the window forward to end at this minute, taking taps of minutes that leave the window
+   * off the totals.
+   *
+   * @param minute a minute since epoch.
+   */
+  private void advance(long minute) {
+    if (latestMinute == Long.MIN_VALUE) {
+      latestMinute = minute;
+      return;
+    }
+    long steps = Math.min(minute - latestMinute, windowMinutes);
+    for (long step = 1; step <= steps; step++) {
+      buckets[Math.floorMod(latestMinute + step, windowMinutes)].expire(totals);
+    }
+    latestMinute = Math.max(latestMinute, minute);
+  }
+
+  /** A tap bucket keeps the key of every tap recorded in one minute. */
+  private static class TapBucket {
+
+    /* vertex id times report contents plus report content of each tap */
+    private int[] keys = new int[16];
+    private int size;
+
+    private void add(int key) {
+      if (size == keys.length) {
+        keys = Arrays.copyOf(keys, size * 2);
+      }
+      keys[size++] = key;
+    }
+
+    /**
+     * Take taps of this bucket off the totals and empty this bucket.
+     *
+     * @param totals the number of taps of each key in the window.
+     */
+    private void expire(int[] totals) {
+      for (int i = 0; i < size; i++) {
+        totals[keys[i]]--;
+      }
+      size = 0;
+    }
+  }
+}
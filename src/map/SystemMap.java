@@ -1,15 +1,24 @@
 package map;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Comparator;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Observable;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import javafx.util.Pair;
 import log.LogManager;
 import ride.Ride;
@@ -17,18 +26,59 @@ import serialize.SerializeManager;
 
 /**
  * A system map store bus routes and subway routes in this transit system separately. A system map
- * also has a graph with all stations and stops in this transit system.
+ * also has a graph with all stations and stops in this transit system. Whenever a route is added or
+ * removed, a system map repairs its cached shortest path trees, rebuilds its contraction hierarchy
+ * in the background if the change affects it, and notifies its observers with a graph delta.
+ * Shortest path queries search the whole graph until the new hierarchy is ready. A distance table
+ * of every pair of subway stations is rebuilt in the background the same way once it is used.
  */
 public class SystemMap extends Observable implements Serializable {
 
+  /* serialVersionUID of the first system map, whose snapshots are migrated in readObject */
+  private static final long serialVersionUID = -8121193132388106346L;
+  /* how many latest minutes of taps the station load monitor keeps */
+  private static final int STATION_LOAD_WINDOW_MINUTES = 15;
+  /* the largest number of subway stations kept in a distance table of every pair */
+  private static final int MAX_DISTANCE_TABLE_STATIONS = 2000;
+  /* the directory of origin destination files, one file per day and transit type */
+  private static final String ORIGIN_DESTINATION_DIRECTORY = "src/serialize/od";
+
   /* busRoutes and subwayRoutes use route name as key, use pair of string indicates
    * whether the route is both way or one way and the route as value, use a list of
    * vertex names to represent a route.*/
   private final HashMap<String, Pair<String, ArrayList<String>>> busRoutes;
   private final HashMap<String, Pair<String, ArrayList<String>>> subwayRoutes;
   private final Set<map.Vertex> graph;
+  /* all stations/stops in graph by their names, read without the lock of this system map while
+   * routes are only added or removed holding it, rebuilt from graph for the first snapshots */
+  private Map<String, Vertex> verticesByName;
   private final FarthestPathCalculator farthestPathCalculator;
   private final ShortestPathCalculator shortestPathCalculator;
+  /* id for the next new station/stop */
+  private int nextVertexId;
+  /* version of graph, increased whenever a route is added or removed */
+  private volatile int graphVersion;
+  private boolean contractionHierarchyEnabled;
+  /* whether finished rides are added to the origin destination matrices of every pair */
+  private boolean originDestinationMatrixEnabled;
+  /* paths of rides, shared by every ride that has gone through them */
+  private PathPool pathPool;
+  /* routing indices are not serialized, they are rebuilt from graph when needed */
+  private transient volatile ContractionHierarchy contractionHierarchy;
+  private transient ContractionHierarchy pendingContractionHierarchy;
+  private transient volatile StationDistanceTable subwayDistanceTable;
+  private transient StationDistanceTable pendingSubwayDistanceTable;
+  private transient ExecutorService routingIndexBuilder;
+  private transient ShortestPathTreeCache shortestPathTrees;
+  /* shortest path trees are cached unless disabled, for example to measure searches */
+  private transient boolean shortestPathTreesDisabled;
+  private transient volatile EnumMap<Ride.TransitType, ReachabilityIndex> reachabilityIndices;
+  /* live taps are not serialized either, only the latest minutes matter */
+  private transient StationLoadMonitor stationLoadMonitor;
+  /* origin destination matrices are saved in their own files */
+  private transient OriginDestinationAccumulator originDestinationAccumulator;
+  /* busiest pairs and stations/stops are approximate counts since the system started */
+  private transient HeavyHitterTracker heavyHitterTracker;
 
   /** Create a new system map. */
   public SystemMap() {
@@ -38,6 +88,10 @@ public class SystemMap extends Observable implements Serializable {
     this.subwayRoutes = new HashMap<>();
     /* create a new set to store all stations/stops*/
     this.graph = new HashSet<>();
+    this.verticesByName = new ConcurrentHashMap<>();
+    this.contractionHierarchyEnabled = true;
+    this.originDestinationMatrixEnabled = true;
+    this.pathPool = new PathPool();
     this.farthestPathCalculator = FarthestPathCalculator.getInstance(this);
     this.shortestPathCalculator = ShortestPathCalculator.getInstance(this);
     this.addObserver(LogManager.getInstance());
@@ -53,7 +107,7 @@ public class SystemMap extends Observable implements Serializable {
    * @param routeName the name for this route.
    * @param route A string representing the route.
    */
-  public void addNewRoute(
+  public synchronized void addNewRoute(
       Ride.TransitType transitType,
       String direction,
       String routeName,
@@ -61,6 +115,8 @@ public class SystemMap extends Observable implements Serializable {
       String route) {
     ArrayList<String> allAdjacentVertices = new ArrayList<>(Arrays.asList(route.split(" \\| ")));
     storeAllAdjacentVertices(transitType, direction, routeName, allAdjacentVertices);
+    GraphDelta delta = new GraphDelta(routeName);
+    int firstNewVertexId = nextVertexId;
     for (int i = 0; i <= allAdjacentVertices.size() - 1; i++) {
       String[] vertices = allAdjacentVertices.get(i).split("->");
       Vertex vertex1 = getVertex(vertices[0]);
@@ -69,17 +125,44 @@ public class SystemMap extends Observable implements Serializable {
       vertex2.setCoordinate(coordinates.get(i + 1));
       double edge = Double.valueOf(vertices[1]);
       /* add vertex2 as the neighbor of vertex1 and record their edge distance. */
-      vertex1.addAdjacentVertex(vertex2, edge);
+      addEdge(vertex1, vertex2, edge, delta);
       if (direction.equals("BOTH WAY")) {
         /* add vertex1 as the neighbor of vertex2 as well if this route has 2 directions. */
-        vertex2.addAdjacentVertex(vertex1, edge);
+        addEdge(vertex2, vertex1, edge, delta);
+      }
+    }
+    for (Vertex vertex : new LinkedHashSet<>(getVerticesList(allAdjacentVertices))) {
+      vertex.setServedBy(transitType, true);
+      if (vertex.getId() >= firstNewVertexId) {
+        delta.recordAddedVertex(vertex);
       }
     }
     notifyChange(transitType, direction, routeName, route);
+    updateRoutingIndex(delta);
     /* serialize system map if new route is added */
     SerializeManager.getInstance().writeObject();
   }
 
+  /**
+   * Add an edge from one vertex to another, and record the change in this graph delta.
+   *
+   * @param from the vertex this edge starts from.
+   * @param to the vertex this edge goes to.
+   * @param edge distance of this edge.
+   * @param delta the graph delta of this change.
+   */
+  private void addEdge(Vertex from, Vertex to, double edge, GraphDelta delta) {
+    Double previousEdge = from.getAdjacentVertices().get(to);
+    if (previousEdge != null) {
+      if (previousEdge == edge) {
+        return; // this edge already exists
+      }
+      delta.recordRemovedEdge(from, to, previousEdge);
+    }
+    from.addAdjacentVertex(to, edge);
+    delta.recordAddedEdge(from, to, edge);
+  }
+
   private void notifyChange(
       Ride.TransitType transitType, String direction, String routeName, String route) {
     setChanged();
@@ -121,20 +204,20 @@ public class SystemMap extends Observable implements Serializable {
   }
 
   /**
-   * Get the Vertex corresponding to its name.
+   * Get the Vertex corresponding to its name, creating it if it does not exist.
    *
    * @param vertexName the name of this vertex.
    */
-  public map.Vertex getVertex(String vertexName) {
+  public synchronized map.Vertex getVertex(String vertexName) {
     /* check if this station/stop name already exists in this system map */
-    for (map.Vertex vertex : graph) {
-      if (vertex.getValue().equals(vertexName)) { // this station/stop name already exists
-        return vertex;
-      }
+    map.Vertex vertex = verticesByName.get(vertexName);
+    if (vertex != null) { // this station/stop name already exists
+      return vertex;
     }
     /* this station/stop name is new */
-    map.Vertex newVertex = new map.Vertex(vertexName);
+    map.Vertex newVertex = new map.Vertex(vertexName, nextVertexId++);
     graph.add(newVertex); // store this new station/stop in graph
+    verticesByName.put(vertexName, newVertex);
     return newVertex;
   }
 
@@ -153,17 +236,479 @@ public class SystemMap extends Observable implements Serializable {
   }
 
   /**
-   * Get the shortest path of this ride.
+   * Add passenger flow of a ride to all stations/stops on its path at once: tap in times at the
+   * first station/stop, arrived times at every other station/stop, and tap out times at the last
+   * station/stop. A path with only one station/stop counts it as arrived as well.
+   *
+   * @param path stations/stops on the path of this ride, in order.
+   * @param tapInTimeInMillis tap in time of this ride.
+   * @param tapOutTimeInMillis tap out time of this ride, or tap in time if it has no tap out.
+   */
+  public void addPassengerFlow(List<Vertex> path, long tapInTimeInMillis, long tapOutTimeInMillis) {
+    path.get(0).recordPassengerFlow(tapInTimeInMillis, "TAP IN TIMES");
+    for (Vertex vertex : path.subList(1, path.size())) {
+      vertex.recordPassengerFlow(tapOutTimeInMillis, "ARRIVED TIMES");
+    }
+    if (path.size() == 1) {
+      path.get(0).recordPassengerFlow(tapOutTimeInMillis, "ARRIVED TIMES");
+    }
+    path.get(path.size() - 1).recordPassengerFlow(tapOutTimeInMillis, "TAP OUT TIMES");
+    /* taps were recorded live when they happened, only passing through is known now */
+    for (Vertex vertex : path.size() == 1 ? path : path.subList(1, path.size())) {
+      getStationLoadMonitor().record(vertex, "ARRIVED TIMES", tapOutTimeInMillis);
+    }
+    setChanged();
+    notifyObservers(
+        "Passenger Flow Added From "
+            + path.get(0)
+            + " To "
+            + path.get(path.size() - 1)
+            + " Through "
+            + path.size()
+            + " Stations/Stops!");
+    /* serialize system map once if passenger flow of a path is added */
+    SerializeManager.getInstance().writeObject();
+  }
+
+  /**
+   * Record a tap at a station/stop in the station load monitor, as soon as it happens.
+   *
+   * @param vertexName name of this vertex(station/stop), ignored if it is not in this system map.
+   * @param reportContent report content, "TAP IN TIMES" or "TAP OUT TIMES"
+   * @param timeInMillis the time of this tap.
+   */
+  public void recordStationLoad(String vertexName, String reportContent, long timeInMillis) {
+    Vertex vertex = verticesByName.get(vertexName);
+    if (vertex != null) {
+      getStationLoadMonitor().record(vertex, reportContent, timeInMillis);
+    }
+  }
+
+  /**
+   * Get the station load monitor of this system map, which keeps taps of the latest minutes.
+   *
+   * @return the station load monitor of this system map.
+   */
+  public synchronized StationLoadMonitor getStationLoadMonitor() {
+    if (stationLoadMonitor == null) { // not serialized, create a new one after de-serialization
+      stationLoadMonitor = new StationLoadMonitor(STATION_LOAD_WINDOW_MINUTES);
+    }
+    return stationLoadMonitor;
+  }
+
+  /**
+   * Add a finished ride to the origin destination matrix of its day and transit type.
+   *
+   * @param transitType transit type of this ride.
+   * @param origin the station/stop where this ride started.
+   * @param destination the station/stop where this ride ended.
+   * @param timeInMillis the time of this ride.
+   */
+  public void addOriginDestination(
+      Ride.TransitType transitType, Vertex origin, Vertex destination, long timeInMillis) {
+    if (originDestinationMatrixEnabled) {
+      getOriginDestinationAccumulator()
+          .record(transitType, origin.getId(), destination.getId(), timeInMillis);
+    }
+  }
+
+  /**
+   * Write the origin destination matrices with rides not written yet to their files, for example
+   * at the end of a batch of rides or when the transit system stops.
+   */
+  public void flushOriginDestinationMatrices() {
+    getOriginDestinationAccumulator().flush();
+  }
+
+  /**
+   * Enable or disable the origin destination matrices of this system map. A network too large
+   * for a matrix of every pair of stations/stops can still find its busiest pairs approximately
+   * with the heavy hitter tracker.
+   *
+   * @param enabled whether finished rides should be added to origin destination matrices.
+   */
+  public void setOriginDestinationMatrixEnabled(boolean enabled) {
+    this.originDestinationMatrixEnabled = enabled;
+    setChanged();
+    notifyObservers(
+        "Origin Destination Matrix is set to: " + (enabled ? "Enabled" : "Disabled") + "!");
+    /* serialize system map if origin destination matrix is enabled or disabled */
+    SerializeManager.getInstance().writeObject();
+  }
+
+  /**
+   * Add a finished ride to the heavy hitter tracker, from the first to the last station/stop on
+   * its path. A ride without a path is ignored.
+   *
+   * @param ride the finished ride.
+   */
+  public void trackFinishedRide(Ride ride) {
+    List<Vertex> path = ride.getPath();
+    if (path != null && !path.isEmpty()) {
+      getHeavyHitterTracker().record(path.get(0), path.get(path.size() - 1));
+    }
+  }
+
+  /**
+   * Get the path pool of this system map, which interns the paths of rides.
+   *
+   * @return the path pool of this system map.
+   */
+  public synchronized PathPool getPathPool() {
+    if (pathPool == null) { // snapshots before interned paths have no path pool
+      pathPool = new PathPool();
+    }
+    return pathPool;
+  }
+
+  /**
+   * Get the heavy hitter tracker of this system map, which finds the busiest origin destination
+   * pairs and stations/stops in bounded memory.
+   *
+   * @return the heavy hitter tracker of this system map.
+   */
+  public synchronized HeavyHitterTracker getHeavyHitterTracker() {
+    if (heavyHitterTracker == null) { // not serialized, create a new one after de-serialization
+      heavyHitterTracker = new HeavyHitterTracker();
+    }
+    return heavyHitterTracker;
+  }
+
+  /**
+   * Get the origin destination pairs with most rides in a period, for example the top 50 pairs of
+   * this month. Rides from or to a station/stop no longer in this system map are left out.
+   *
+   * @param transitType transit type of rides, or null for rides of all transit types.
+   * @param fromTimeInMillis a time in the first day of this period.
+   * @param toTimeInMillis a time in the last day of this period.
+   * @param count the maximum number of pairs to get.
+   * @return origin destination pairs in this period, the most rides first.
+   */
+  public List<OriginDestinationPair> getTopOriginDestinationPairs(
+      Ride.TransitType transitType, long fromTimeInMillis, long toTimeInMillis, int count) {
+    OriginDestinationMatrix matrix =
+        getOriginDestinationAccumulator()
+            .getMatrix(
+                transitType,
+                PassengerFlow.getDay(fromTimeInMillis),
+                PassengerFlow.getDay(toTimeInMillis));
+    Vertex[] vertices = new Vertex[nextVertexId];
+    for (Vertex vertex : graph) {
+      vertices[vertex.getId()] = vertex;
+    }
+    for (int id = 0; id < vertices.length; id++) {
+      if (vertices[id] == null) { // this station/stop has been removed
+        matrix.clearStation(id);
+      }
+    }
+    List<OriginDestinationPair> result = new ArrayList<>();
+    for (int[] pair : matrix.getTopPairs(count)) {
+      result.add(new OriginDestinationPair(vertices[pair[0]], vertices[pair[1]], pair[2]));
+    }
+    return result;
+  }
+
+  /**
+   * Get the origin destination accumulator of this system map.
+   *
+   * @return the origin destination accumulator of this system map.
+   */
+  private synchronized OriginDestinationAccumulator getOriginDestinationAccumulator() {
+    if (originDestinationAccumulator == null) { // not serialized, create a new one
+      originDestinationAccumulator = new OriginDestinationAccumulator(ORIGIN_DESTINATION_DIRECTORY);
+    }
+    return originDestinationAccumulator;
+  }
+
+  /**
+   * Get the shortest path of this ride. The distance of the path is kept in its last vertex until
+   * the next path query, so a caller in another thread should hold the lock of this system map
+   * until it has read the distance. Check that the end point can be reached first, the distance
+   * of an end point that cannot be reached is infinite.
    *
    * @param startVertexName the name of start point Vertex.
    * @param endVertexName the name of end point Vertex.
-   * @return A LinkedList of Vertex representing the shortest path.
+   * @return A LinkedList of Vertex representing the shortest path, null if either station/stop is
+   *     not in this system map.
    */
-  public LinkedList<map.Vertex> getShortestPath(String startVertexName, String endVertexName) {
+  public synchronized LinkedList<map.Vertex> getShortestPath(
+      String startVertexName, String endVertexName) {
+    map.Vertex startVertex = verticesByName.get(startVertexName);
+    map.Vertex endVertex = verticesByName.get(endVertexName);
+    if (startVertex == null || endVertex == null) {
+      return null; // never add a station/stop for a query
+    }
+    if (!shortestPathTreesDisabled) {
+      LinkedList<map.Vertex> cachedPath =
+          getShortestPathTrees().getShortestPath(startVertex, endVertex);
+      if (cachedPath != null) {
+        return cachedPath;
+      }
+    }
+    ContractionHierarchy hierarchy = getContractionHierarchy();
+    if (hierarchy != null && hierarchy.contains(startVertex) && hierarchy.contains(endVertex)) {
+      /* only search upward in the hierarchy instead of the whole graph */
+      return hierarchy.getShortestPath(startVertex, endVertex);
+    }
     /* clear information stored in stations/stops from last calculation to start new calculation */
     clear();
-    return shortestPathCalculator.getShortestPath(
-        getVertex(startVertexName), getVertex(endVertexName));
+    LinkedList<map.Vertex> path = shortestPathCalculator.getShortestPath(startVertex, endVertex);
+    if (!shortestPathTreesDisabled) {
+      /* keep the shortest path tree from this start vertex for later queries */
+      getShortestPathTrees().put(startVertex, graph, nextVertexId);
+    }
+    return path;
+  }
+
+  /**
+   * Enable or disable the cache of shortest path trees of this system map. Every shortest path
+   * query searches the hierarchy or the whole graph if it is disabled, which is only useful to
+   * measure the searches. Cached trees are dropped either way. This setting is not serialized.
+   *
+   * @param enabled whether shortest path trees should be cached for later queries.
+   */
+  public synchronized void setShortestPathTreeCacheEnabled(boolean enabled) {
+    shortestPathTreesDisabled = !enabled;
+    shortestPathTrees = null;
+  }
+
+  /**
+   * Enable or disable the contraction hierarchy of this system map. Shortest path queries search
+   * the whole graph if it is disabled.
+   *
+   * @param enabled whether shortest path queries should use the contraction hierarchy.
+   */
+  public void setContractionHierarchyEnabled(boolean enabled) {
+    this.contractionHierarchyEnabled = enabled;
+    setChanged();
+    notifyObservers("Contraction Hierarchy is set to: " + (enabled ? "Enabled" : "Disabled") + "!");
+    /* serialize system map if contraction hierarchy is enabled or disabled */
+    SerializeManager.getInstance().writeObject();
+  }
+
+  /**
+   * Check whether shortest path queries use a contraction hierarchy for current graph.
+   *
+   * @return true if the contraction hierarchy is enabled and ready for current graph.
+   */
+  public boolean isContractionHierarchyReady() {
+    ContractionHierarchy hierarchy = contractionHierarchy;
+    return contractionHierarchyEnabled
+        && hierarchy != null
+        && hierarchy.getGraphVersion() == graphVersion;
+  }
+
+  /**
+   * Get the contraction hierarchy for current graph if it is ready. Request a new one to be built
+   * in the background if it is not.
+   *
+   * @return the contraction hierarchy for current graph, null if it is not ready or disabled.
+   */
+  private ContractionHierarchy getContractionHierarchy() {
+    if (!contractionHierarchyEnabled) {
+      return null;
+    }
+    ContractionHierarchy hierarchy = contractionHierarchy;
+    if (hierarchy != null && hierarchy.getGraphVersion() == graphVersion) {
+      return hierarchy;
+    }
+    requestContractionHierarchy();
+    return null;
+  }
+
+  /**
+   * Increase the version of graph, and repair routing indices that are affected by this change.
+   * Notify observers with this graph delta, so structures derived from graph outside this system
+   * map can repair themselves as well.
+   *
+   * @param delta how the graph has changed.
+   */
+  private void updateRoutingIndex(GraphDelta delta) {
+    graphVersion++;
+    reachabilityIndices = buildReachabilityIndices();
+    getShortestPathTrees().update(delta, nextVertexId);
+    ContractionHierarchy hierarchy = contractionHierarchy;
+    if (hierarchy != null
+        && hierarchy.getGraphVersion() == graphVersion - 1
+        && hierarchy.isUnaffectedBy(delta)) {
+      /* no shortest distance has changed, keep using this hierarchy */
+      hierarchy.setGraphVersion(graphVersion);
+    } else if (contractionHierarchyEnabled) {
+      requestContractionHierarchy();
+    }
+    if (subwayDistanceTable != null) { // keep the table in use up to date
+      requestSubwayDistanceTable();
+    }
+    setChanged();
+    notifyObservers(delta);
+  }
+
+  /**
+   * Check whether one station/stop can be reached from another on routes of this transit type,
+   * without searching the graph.
+   *
+   * @param transitType the transit type of routes to travel on.
+   * @param startVertexName the name of start point Vertex.
+   * @param endVertexName the name of end point Vertex.
+   * @return true if both stations/stops are on routes of this transit type, and the end point can
+   *     be reached from the start point.
+   */
+  public boolean canReach(
+      Ride.TransitType transitType, String startVertexName, String endVertexName) {
+    map.Vertex startVertex = verticesByName.get(startVertexName);
+    map.Vertex endVertex = verticesByName.get(endVertexName);
+    if (startVertex == null || endVertex == null) {
+      return false;
+    }
+    EnumMap<Ride.TransitType, ReachabilityIndex> indices = reachabilityIndices;
+    if (indices == null) { // not serialized, build them after de-serialization
+      indices = getReachabilityIndices();
+    }
+    return indices.get(transitType).canReach(startVertex, endVertex);
+  }
+
+  /**
+   * Get the reachability indices of current graph, building them if they have not been built
+   * since de-serialization.
+   *
+   * @return reachability indices by transit type.
+   */
+  private synchronized EnumMap<Ride.TransitType, ReachabilityIndex> getReachabilityIndices() {
+    if (reachabilityIndices == null) {
+      reachabilityIndices = buildReachabilityIndices();
+    }
+    return reachabilityIndices;
+  }
+
+  /**
+   * Build a reachability index for routes of each transit type.
+   *
+   * @return reachability indices by transit type.
+   */
+  private EnumMap<Ride.TransitType, ReachabilityIndex> buildReachabilityIndices() {
+    EnumMap<Ride.TransitType, ReachabilityIndex> result = new EnumMap<>(Ride.TransitType.class);
+    for (Ride.TransitType transitType : Ride.TransitType.values()) {
+      result.put(
+          transitType,
+          new ReachabilityIndex(getRoutes(transitType), verticesByName, nextVertexId));
+    }
+    return result;
+  }
+
+  /**
+   * Get the cache of shortest path trees of this system map.
+   *
+   * @return the cache of shortest path trees of this system map.
+   */
+  private ShortestPathTreeCache getShortestPathTrees() {
+    if (shortestPathTrees == null) { // not serialized, create a new one after de-serialization
+      shortestPathTrees = new ShortestPathTreeCache();
+    }
+    return shortestPathTrees;
+  }
+
+  /**
+   * Take a snapshot of current graph and contract it in the background, unless a hierarchy for
+   * current graph is already being built. The new hierarchy is only used if the graph has not
+   * changed again when it is ready.
+   */
+  private synchronized void requestContractionHierarchy() {
+    if (pendingContractionHierarchy != null
+        && pendingContractionHierarchy.getGraphVersion() == graphVersion) {
+      return;
+    }
+    ContractionHierarchy hierarchy = new ContractionHierarchy(graph, graphVersion);
+    pendingContractionHierarchy = hierarchy;
+    getRoutingIndexBuilder()
+        .execute(
+            () -> {
+              if (hierarchy.getGraphVersion() == graphVersion) { // skip outdated snapshot
+                hierarchy.contract();
+                publishContractionHierarchy(hierarchy);
+              }
+            });
+  }
+
+  /**
+   * Use this contraction hierarchy for queries if the graph has not changed since its snapshot.
+   *
+   * @param hierarchy a contraction hierarchy that is ready.
+   */
+  private synchronized void publishContractionHierarchy(ContractionHierarchy hierarchy) {
+    if (hierarchy.getGraphVersion() == graphVersion) {
+      contractionHierarchy = hierarchy;
+    }
+  }
+
+  /**
+   * Get the distance table of every pair of subway stations for current graph if it is ready.
+   * Request a new one to be built in the background if it is not. A table is never built for more
+   * subway stations than a table of every pair can hold.
+   *
+   * @return the subway distance table for current graph, null if it is not ready.
+   */
+  public StationDistanceTable getSubwayDistanceTable() {
+    StationDistanceTable table = subwayDistanceTable;
+    if (table != null && table.getGraphVersion() == graphVersion) {
+      return table;
+    }
+    requestSubwayDistanceTable();
+    return null;
+  }
+
+  /**
+   * Take a snapshot of current graph and build a subway distance table from it in the background,
+   * unless a table for current graph is already being built. The new table is only used if the
+   * graph has not changed again when it is ready.
+   */
+  private synchronized void requestSubwayDistanceTable() {
+    if (pendingSubwayDistanceTable != null
+        && pendingSubwayDistanceTable.getGraphVersion() == graphVersion) {
+      return;
+    }
+    StationDistanceTable table =
+        new StationDistanceTable(graph, graphVersion, Ride.TransitType.SUBWAY, getPathPool());
+    pendingSubwayDistanceTable = table;
+    if (table.getStationCount() > MAX_DISTANCE_TABLE_STATIONS) {
+      return; // too many stations, search paths instead
+    }
+    getRoutingIndexBuilder()
+        .execute(
+            () -> {
+              if (table.getGraphVersion() == graphVersion) { // skip outdated snapshot
+                table.build();
+                publishSubwayDistanceTable(table);
+              }
+            });
+  }
+
+  /**
+   * Use this subway distance table for queries if the graph has not changed since its snapshot.
+   *
+   * @param table a subway distance table that is ready.
+   */
+  private synchronized void publishSubwayDistanceTable(StationDistanceTable table) {
+    if (table.getGraphVersion() == graphVersion) {
+      subwayDistanceTable = table;
+    }
+  }
+
+  /**
+   * Get the single background thread that builds routing indices of this system map.
+   *
+   * @return an executor service that builds routing indices.
+   */
+  private ExecutorService getRoutingIndexBuilder() {
+    if (routingIndexBuilder == null) {
+      routingIndexBuilder =
+          Executors.newSingleThreadExecutor(
+              runnable -> {
+                Thread thread = new Thread(runnable, "Routing Index Builder");
+                thread.setDaemon(true); // do not keep the application running
+                return thread;
+              });
+    }
+    return routingIndexBuilder;
   }
 
   /**
@@ -174,9 +719,24 @@ public class SystemMap extends Observable implements Serializable {
    * @return the path from this vertex to the farthest end of the route that contains this vertex.
    */
   public LinkedList<Vertex> getPathToFarthestEnd(String vertexName, Ride ride) {
+    return getPathToFarthestEnd(
+        vertexName, ride.getTransitType(), "(Missed Tap In)".equals(ride.getTapInLocation()));
+  }
+
+  /**
+   * Get the path from this vertex to the farthest end of the route that contains this vertex,
+   * for a ride with missed tap in or missed tap out.
+   *
+   * @param vertexName name of this vertex(station/stop)
+   * @param transitType transit type of this ride
+   * @param missedTapIn true if this ride has missed tap in, false if it has missed tap out
+   * @return the path from this vertex to the farthest end of the route that contains this vertex.
+   */
+  public synchronized LinkedList<Vertex> getPathToFarthestEnd(
+      String vertexName, Ride.TransitType transitType, boolean missedTapIn) {
     /* clear information stored in stations/stops from last calculation to start new calculation */
     clear();
-    return farthestPathCalculator.getPathToFarthestEnd(vertexName, ride);
+    return farthestPathCalculator.getPathToFarthestEnd(vertexName, transitType, missedTapIn);
   }
 
   /**
@@ -207,24 +767,131 @@ public class SystemMap extends Observable implements Serializable {
    *
    * @param routeName - the name of the route to remove.
    */
-  public void removeRoute(String routeName) {
+  public synchronized void removeRoute(String routeName) {
+    Pair<String, ArrayList<String>> route = null;
+    Ride.TransitType transitType = null;
     if (subwayRoutes.containsKey(routeName)) {
-      ArrayList<Vertex> vertices = getVerticesList(subwayRoutes.get(routeName).getValue());
-      graph.removeAll(vertices);
-      subwayRoutes.remove(routeName);
-      setChanged();
-      notifyObservers("Route " + routeName + " deleted!");
+      route = subwayRoutes.remove(routeName);
+      transitType = Ride.TransitType.SUBWAY;
     } else if (busRoutes.containsKey(routeName)) {
-      ArrayList<Vertex> vertices = getVerticesList(busRoutes.get(routeName).getValue());
-      graph.removeAll(vertices);
-      busRoutes.remove(routeName);
+      route = busRoutes.remove(routeName);
+      transitType = Ride.TransitType.BUS;
+    }
+    if (route != null) {
+      updateServedTransitTypes(transitType, route);
+      GraphDelta delta = removeFromGraph(routeName, route);
       setChanged();
       notifyObservers("Route " + routeName + " deleted!");
+      updateRoutingIndex(delta);
     }
     /* serialize system map if route is removed */
     SerializeManager.getInstance().writeObject();
   }
 
+  /**
+   * Stop marking stations/stops of a removed route as served by its transit type, unless another
+   * route of the same transit type stops at them.
+   *
+   * @param transitType the transit type of the route that has been removed.
+   * @param route whether this route is both way or one way, and all adjacent vertices on it.
+   */
+  private void updateServedTransitTypes(
+      Ride.TransitType transitType, Pair<String, ArrayList<String>> route) {
+    Set<Vertex> stillServed = new HashSet<>();
+    for (Pair<String, ArrayList<String>> remainingRoute : getRoutes(transitType)) {
+      stillServed.addAll(getVerticesList(remainingRoute.getValue()));
+    }
+    for (Vertex vertex : getVerticesList(route.getValue())) {
+      if (!stillServed.contains(vertex)) {
+        vertex.setServedBy(transitType, false);
+      }
+    }
+  }
+
+  /**
+   * Remove edges of a route that has been removed from graph, unless another route has the same
+   * edge. Remove its stations/stops from graph, unless another route stops at them.
+   *
+   * @param routeName name of the route that has been removed.
+   * @param route whether this route is both way or one way, and all adjacent vertices on it.
+   * @return the graph delta of this change.
+   */
+  private GraphDelta removeFromGraph(String routeName, Pair<String, ArrayList<String>> route) {
+    GraphDelta delta = new GraphDelta(routeName);
+    /* edges and vertices of all remaining routes */
+    HashMap<String, Double> remainingEdges = new HashMap<>();
+    Set<String> remainingVertices = new HashSet<>();
+    List<Pair<String, ArrayList<String>>> remainingRoutes = new ArrayList<>(busRoutes.values());
+    remainingRoutes.addAll(subwayRoutes.values());
+    for (Pair<String, ArrayList<String>> remainingRoute : remainingRoutes) {
+      for (String neighbor : remainingRoute.getValue()) {
+        String[] vertices = neighbor.split("->");
+        remainingEdges.put(vertices[0] + "->" + vertices[2], Double.valueOf(vertices[1]));
+        if (remainingRoute.getKey().equals("BOTH WAY")) {
+          remainingEdges.put(vertices[2] + "->" + vertices[0], Double.valueOf(vertices[1]));
+        }
+        remainingVertices.add(vertices[0]);
+        remainingVertices.add(vertices[2]);
+      }
+    }
+    for (String neighbor : route.getValue()) {
+      String[] vertices = neighbor.split("->");
+      removeEdge(vertices[0], vertices[2], remainingEdges, delta);
+      if (route.getKey().equals("BOTH WAY")) {
+        removeEdge(vertices[2], vertices[0], remainingEdges, delta);
+      }
+    }
+    List<Vertex> verticesToRemove = new ArrayList<>();
+    for (Vertex vertex : new LinkedHashSet<>(getVerticesList(route.getValue()))) {
+      if (!remainingVertices.contains(vertex.getValue())) {
+        verticesToRemove.add(vertex);
+        delta.recordRemovedVertex(vertex);
+      }
+    }
+    removeVertices(verticesToRemove);
+    return delta;
+  }
+
+  /**
+   * Remove the edge from one vertex to another, or restore its distance on a remaining route if
+   * another route has the same edge. Record the change in this graph delta.
+   *
+   * @param fromName name of the vertex this edge starts from.
+   * @param toName name of the vertex this edge goes to.
+   * @param remainingEdges distance of edges on remaining routes.
+   * @param delta the graph delta of this change.
+   */
+  private void removeEdge(
+      String fromName, String toName, HashMap<String, Double> remainingEdges, GraphDelta delta) {
+    Vertex from = verticesByName.get(fromName);
+    Vertex to = verticesByName.get(toName);
+    if (from == null || to == null || !from.getAdjacentVertices().containsKey(to)) {
+      return; // this edge has been removed already
+    }
+    double edge = from.getAdjacentVertices().get(to);
+    Double remainingEdge = remainingEdges.get(fromName + "->" + toName);
+    if (remainingEdge == null) {
+      from.removeAdjacentVertex(to);
+      delta.recordRemovedEdge(from, to, edge);
+    } else if (remainingEdge != edge) {
+      from.addAdjacentVertex(to, remainingEdge);
+      delta.recordRemovedEdge(from, to, edge);
+      delta.recordAddedEdge(from, to, remainingEdge);
+    }
+  }
+
+  /**
+   * Remove these vertices from graph of this system map.
+   *
+   * @param vertices vertices to remove.
+   */
+  private void removeVertices(List<Vertex> vertices) {
+    graph.removeAll(vertices);
+    for (Vertex vertex : vertices) {
+      verticesByName.remove(vertex.getValue());
+    }
+  }
+
   /**
    * Get a list of vertex from string information of all adjacent vertices on a route.
    *
@@ -243,6 +910,80 @@ public class SystemMap extends Observable implements Serializable {
     return result;
   }
 
+  /**
+   * Find the Vertex corresponding to its name, without creating it if it does not exist.
+   *
+   * @param vertexName the name of this vertex.
+   * @return the Vertex of this name, null if it is not in this system map.
+   */
+  public Vertex findVertex(String vertexName) {
+    return verticesByName.get(vertexName);
+  }
+
+  /**
+   * Check whether a route of this transit type stops at a station/stop, without creating the
+   * station/stop if it does not exist.
+   *
+   * @param vertexName name of this vertex(station/stop).
+   * @param transitType the transit type to check.
+   * @return true if this station/stop exists and a route of this transit type stops at it.
+   */
+  public boolean isServedBy(String vertexName, Ride.TransitType transitType) {
+    Vertex vertex = verticesByName.get(vertexName);
+    return vertex != null && vertex.isServedBy(transitType);
+  }
+
+  /**
+   * Give a new id to every station/stop in a path that has none. A path of a ride in a snapshot
+   * before vertices had ids can go through stations/stops removed from graph before that
+   * snapshot was written, which were not given ids when the system map was read, and must not
+   * share an id with a station/stop in graph.
+   *
+   * @param path the stations/stops of a path.
+   */
+  public synchronized void assignMissingIds(Collection<Vertex> path) {
+    for (Vertex vertex : path) {
+      if (!vertex.hasId()) {
+        vertex.setId(nextVertexId++);
+      }
+    }
+  }
+
+  /**
+   * Read a system map from a snapshot. The first snapshots have no stations/stops by name, so they
+   * are found in graph again, given ids in order of their names and marked as served by the
+   * transit types of the routes stopping at them, and routing indices are enabled as they are
+   * for a new system map.
+   *
+   * @param in the stream to read this system map from.
+   */
+  private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+    in.defaultReadObject();
+    if (verticesByName instanceof ConcurrentHashMap) {
+      return;
+    }
+    if (verticesByName != null) { // kept in a hash map before they were read without a lock
+      verticesByName = new ConcurrentHashMap<>(verticesByName);
+      return;
+    }
+    verticesByName = new ConcurrentHashMap<>();
+    List<Vertex> vertices = new ArrayList<>(graph);
+    vertices.sort(Comparator.comparing(Vertex::getValue));
+    for (Vertex vertex : vertices) {
+      vertex.setId(nextVertexId++);
+      verticesByName.put(vertex.getValue(), vertex);
+    }
+    for (Ride.TransitType transitType : Ride.TransitType.values()) {
+      for (Pair<String, ArrayList<String>> route : getRoutes(transitType)) {
+        for (Vertex vertex : getVerticesList(route.getValue())) {
+          vertex.setServedBy(transitType, true);
+        }
+      }
+    }
+    contractionHierarchyEnabled = true;
+    originDestinationMatrixEnabled = true;
+  }
+
   /**
    * Get a list of vertex by specific transit type.
    *
@@ -251,15 +992,23 @@ public class SystemMap extends Observable implements Serializable {
    */
   public List<Vertex> getVerticesByTransitType(Ride.TransitType transitType) {
     List<Vertex> result = new ArrayList<>();
-    Collection<Pair<String, ArrayList<String>>> routes;
-    if (transitType.equals(Ride.TransitType.BUS)) {
-      routes = busRoutes.values();
-    } else {
-      routes = subwayRoutes.values();
-    }
-    for (Pair<String, ArrayList<String>> busRoute : routes) {
+    for (Pair<String, ArrayList<String>> busRoute : getRoutes(transitType)) {
       result.addAll(getVerticesList(busRoute.getValue()));
     }
     return result;
   }
+
+  /**
+   * Get bus routes for bus transit and subway routes for subway transit.
+   *
+   * @param transitType bus or subway transit
+   * @return routes for this transit type.
+   */
+  private Collection<Pair<String, ArrayList<String>>> getRoutes(Ride.TransitType transitType) {
+    if (transitType.equals(Ride.TransitType.BUS)) {
+      return busRoutes.values();
+    } else {
+      return subwayRoutes.values();
+    }
+  }
 }
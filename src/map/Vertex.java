@@ -1,14 +1,14 @@
 package map;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
-import java.util.ArrayList;
-import java.util.Calendar;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 import java.util.Observable;
 import javafx.util.Pair;
 import log.LogManager;
+import ride.Ride;
 import serialize.SerializeManager;
 
 /**
@@ -20,10 +20,19 @@ import serialize.SerializeManager;
  */
 public class Vertex extends Observable implements Serializable {
 
-  private final String value;
-  private final HashMap<Vertex, Double> adjacentVertices;
+  /* serialVersionUID of the first vertex, whose snapshots are migrated in readObject */
+  private static final long serialVersionUID = 3429276016648476741L;
+  /* id of a vertex read from a snapshot before ids, until its system map gives it one */
+  static final int NO_ID = -1;
+  /* fields are only assigned in the constructor and when this vertex is read from a snapshot */
+  private String value;
+  /* id of this vertex in its system map, never reused by another vertex */
+  private int id;
+  private HashMap<Vertex, Double> adjacentVertices;
   /* store tap in times, tap out times, arrived times by day */
-  private final Map<Long, Map<String, Integer>> passengerFlow;
+  private PassengerFlow passengerFlow;
+  /* bitset of transit types of routes stopping at this vertex, one bit per transit type */
+  private int transitTypes;
   private Vertex prev;
   private double distance;
   private Pair<Integer, Integer> coordinate;
@@ -32,12 +41,14 @@ public class Vertex extends Observable implements Serializable {
    * Construct a new Vertex.
    *
    * @param value the value/name for this Vertex.
+   * @param id the id for this Vertex in its system map.
    */
-  Vertex(String value) {
+  Vertex(String value, int id) {
     this.distance = Double.POSITIVE_INFINITY;
     this.value = value;
+    this.id = id;
     this.adjacentVertices = new HashMap<>();
-    this.passengerFlow = new HashMap<>();
+    this.passengerFlow = new PassengerFlow();
     this.addObserver(LogManager.getInstance());
     this.setChanged();
     this.notifyObservers("New Station/Stop Added: " + value + "!");
@@ -101,6 +112,68 @@ public class Vertex extends Observable implements Serializable {
     SerializeManager.getInstance().writeObject();
   }
 
+  /**
+   * Record the distance of this Vertex on a path found by a routing index. Unlike setDistance, this
+   * does not notify observers or serialize the system map, since it is only the result of a query.
+   *
+   * @param distance A double representing the distance from the start of the path.
+   */
+  void setPathDistance(double distance) {
+    this.distance = distance;
+  }
+
+  /**
+   * Get the id of this Vertex.
+   *
+   * @return An int representing the id of this Vertex in its system map.
+   */
+  public int getId() {
+    return id;
+  }
+
+  /**
+   * Check whether this Vertex has an id. A Vertex read from a snapshot before vertices had ids
+   * has none until its system map gives it one.
+   *
+   * @return true if this Vertex has an id, false otherwise.
+   */
+  boolean hasId() {
+    return id != NO_ID;
+  }
+
+  /**
+   * Set the id of a Vertex read from a snapshot before vertices had ids.
+   *
+   * @param id the id for this Vertex in its system map.
+   */
+  void setId(int id) {
+    this.id = id;
+  }
+
+  /**
+   * Check whether a route of this transit type stops at this Vertex.
+   *
+   * @param transitType the transit type to check.
+   * @return true if a route of this transit type stops at this Vertex.
+   */
+  public boolean isServedBy(Ride.TransitType transitType) {
+    return (transitTypes & (1 << transitType.ordinal())) != 0;
+  }
+
+  /**
+   * Set whether a route of this transit type stops at this Vertex.
+   *
+   * @param transitType the transit type to set.
+   * @param served whether a route of this transit type stops at this Vertex.
+   */
+  void setServedBy(Ride.TransitType transitType, boolean served) {
+    if (served) {
+      transitTypes |= 1 << transitType.ordinal();
+    } else {
+      transitTypes &= ~(1 << transitType.ordinal());
+    }
+  }
+
   /**
    * Get the name/value of this Vertex.
    *
@@ -130,125 +203,65 @@ public class Vertex extends Observable implements Serializable {
   }
 
   /**
-   * Get the passenger flow according to report period and report content.
+   * Remove a neighbor Vertex from adjacent vertices.
    *
-   * @param reportPeriod report period, DAY or WEEK or MONTH
-   * @param reportContent report content, TAP IN TIMES or TAP OUT TIMES or ARRIVED TIMES
-   * @return passenger flow according to report period and report content.
+   * @param neighbor A Vertex which is no longer next to this Vertex.
    */
-  public int getPassengerFlow(String reportPeriod, String reportContent) {
-    int result = 0;
-    List<Map<String, Integer>> flowForPeriod = getPassengerFlowForPeriod(reportPeriod);
-    for (Map<String, Integer> flow : flowForPeriod) {
-      result += flow.get(reportContent);
-    }
-    return result;
+  void removeAdjacentVertex(Vertex neighbor) {
+    adjacentVertices.remove(neighbor);
   }
 
   /**
-   * Get passenger flow statistics according to report period.
+   * Get the passenger flow according to report period and report content.
    *
-   * @param reportPeriod report period, , DAY or WEEK or MONTH
-   * @return list of passenger flow statistics according to report period.
+   * @param reportPeriod report period, DAY or WEEK or MONTH
+   * @param reportContent report content, TAP IN TIMES or TAP OUT TIMES or ARRIVED TIMES
+   * @return passenger flow according to report period and report content.
    */
-  private List<Map<String, Integer>> getPassengerFlowForPeriod(String reportPeriod) {
-    List<Map<String, Integer>> result = new ArrayList<>();
-    long keyOfToday = getKey(System.currentTimeMillis());
-    Calendar today = Calendar.getInstance();
-    today.setTimeInMillis(keyOfToday);
-    switch (reportPeriod) {
-      case "DAY":
-        result.add(passengerFlow.get(keyOfToday));
-        break;
-      case "WEEK":
-        result = getWeeklyPassengerFlow(today);
-        break;
-      case "MONTH":
-        result = getMonthlyPassengerFlow(today);
-        break;
-      default:
-        break;
-    }
-    return result;
+  public int getPassengerFlow(String reportPeriod, String reportContent) {
+    return passengerFlow.get(reportPeriod, reportContent, System.currentTimeMillis());
   }
 
   /**
-   * Get passenger flow in this week.
+   * Get the passenger flow from one time to another, counted in 15 minute buckets.
    *
-   * @param today a Calendar represents today
-   * @return list of passenger flow statistics in this week.
+   * @param fromInMillis start of this time range, in millis.
+   * @param toInMillis end of this time range, in millis.
+   * @param reportContent report content, TAP IN TIMES or TAP OUT TIMES or ARRIVED TIMES
+   * @return passenger flow in this time range.
    */
-  private List<Map<String, Integer>> getWeeklyPassengerFlow(Calendar today) {
-    List<Map<String, Integer>> result = new ArrayList<>();
-    for (Long dayInMillis : passengerFlow.keySet()) {
-      Calendar day = Calendar.getInstance();
-      day.setTimeInMillis(dayInMillis);
-      if (day.get(Calendar.YEAR) == today.get(Calendar.YEAR)
-          && day.get(Calendar.MONTH) == today.get(Calendar.MONTH)
-          && day.get(Calendar.WEEK_OF_MONTH) == today.get(Calendar.WEEK_OF_MONTH)) {
-        result.add(passengerFlow.get(dayInMillis));
-      }
-    }
-    return result;
+  public int getPassengerFlow(long fromInMillis, long toInMillis, String reportContent) {
+    return passengerFlow.get(fromInMillis, toInMillis, reportContent);
   }
 
   /**
-   * Get passenger flow in this month.
+   * Get the passenger flow in each hour of a day, to find peak hours of this station/stop.
    *
-   * @param today a Calendar represents today
-   * @return list of passenger flow statics in this month
+   * @param dayInMillis a long representation of the day.
+   * @param reportContent report content, TAP IN TIMES or TAP OUT TIMES or ARRIVED TIMES
+   * @return passenger flow in each of the 24 hours of this day.
    */
-  private List<Map<String, Integer>> getMonthlyPassengerFlow(Calendar today) {
-    List<Map<String, Integer>> result = new ArrayList<>();
-    for (Long dayInMillis : passengerFlow.keySet()) {
-      Calendar day = Calendar.getInstance();
-      day.setTimeInMillis(dayInMillis);
-      if (day.get(Calendar.YEAR) == today.get(Calendar.YEAR)
-          && day.get(Calendar.MONTH) == today.get(Calendar.MONTH)) {
-        result.add(passengerFlow.get(dayInMillis));
-      }
-    }
-    return result;
+  public int[] getHourlyPassengerFlow(long dayInMillis, String reportContent) {
+    return passengerFlow.getHourly(dayInMillis, reportContent);
   }
 
   /**
-   * Get the key value in passenger flow map that represent this day.
+   * Visit the passenger flow of every 15 minutes kept with any count, oldest first. 15 minute
+   * buckets are only kept for recent days.
    *
-   * @param dayInMillis this day represented in millis
-   * @return the key in passenger flow map that represent this day.
+   * @param visitor the visitor of buckets, given 15 minutes since epoch in local time.
    */
-  private Long getKey(long dayInMillis) {
-    Calendar day = Calendar.getInstance();
-    day.setTimeInMillis(dayInMillis);
-    for (long key : passengerFlow.keySet()) {
-      Calendar keyDay = Calendar.getInstance();
-      keyDay.setTimeInMillis(key);
-      if (day.get(Calendar.YEAR) == keyDay.get(Calendar.YEAR)
-          && day.get(Calendar.MONTH) == keyDay.get(Calendar.MONTH)
-          && day.get(Calendar.DAY_OF_MONTH) == keyDay.get(Calendar.DAY_OF_MONTH)) {
-        return key;
-      }
-    }
-    return initializeFlowForNewDay();
+  public void visitQuarterHourPassengerFlow(PassengerFlowVisitor visitor) {
+    passengerFlow.visitQuarterHours(visitor);
   }
 
   /**
-   * Initialize the passenger flow statistics for a new day.
+   * Visit the passenger flow of every day with any count, oldest first.
    *
-   * @return the key of passenger flow statistics for this new day.
+   * @param visitor the visitor of buckets, given days since epoch in local time.
    */
-  private long initializeFlowForNewDay() {
-    Map<String, Integer> flow = new HashMap<>();
-    flow.put("TAP IN TIMES", 0);
-    flow.put("TAP OUT TIMES", 0);
-    flow.put("ARRIVED TIMES", 0);
-    long day = System.currentTimeMillis();
-    passengerFlow.put(day, flow);
-    setChanged();
-    notifyObservers("Passenger of " + value + " is initialized:" + "!");
-    /* serialize system map if passenger flow of a vertex is initialized*/
-    SerializeManager.getInstance().writeObject();
-    return day;
+  public void visitDailyPassengerFlow(PassengerFlowVisitor visitor) {
+    passengerFlow.visitDays(visitor);
   }
 
   /**
@@ -258,14 +271,24 @@ public class Vertex extends Observable implements Serializable {
    * @param reportContent report content, "TAP IN TIMES" or "TAP OUT TIMES" or "ARRIVED TIMES"
    */
   public void addPassengerFlow(Long dayInMillis, String reportContent) {
-    Long day = getKey(dayInMillis);
-    passengerFlow.get(day).put(reportContent, passengerFlow.get(day).get(reportContent) + 1);
+    recordPassengerFlow(dayInMillis, reportContent);
     this.setChanged();
     this.notifyObservers(value + " " + reportContent + " Has Been Added By One!");
     /* serialize system map if passenger flow of a vertex is added*/
     SerializeManager.getInstance().writeObject();
   }
 
+  /**
+   * Add to passenger flow statistics of this vertex without notifying observers or serializing
+   * the system map, for a change that does both once for many vertices.
+   *
+   * @param timeInMillis the time that the passenger flow is added at.
+   * @param reportContent report content, "TAP IN TIMES" or "TAP OUT TIMES" or "ARRIVED TIMES"
+   */
+  void recordPassengerFlow(long timeInMillis, String reportContent) {
+    passengerFlow.add(timeInMillis, reportContent);
+  }
+
   /** Clear the Vertex information of prev and (shortest) distance. */
   void clear() {
     prev = null;
@@ -281,4 +304,51 @@ public class Vertex extends Observable implements Serializable {
   public String toString() {
     return this.value;
   }
+
+  /**
+   * Read a vertex from a snapshot. A snapshot before primitive passenger flow keeps counts in a
+   * map of report contents by a time in each day, which are added to a new passenger flow. Such a
+   * vertex has no id and no transit types yet, they are set by its system map.
+   *
+   * @param in the stream to read this vertex from.
+   */
+  @SuppressWarnings("unchecked")
+  private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+    ObjectInputStream.GetField fields = in.readFields();
+    value = (String) fields.get("value", null);
+    id = fields.get("id", NO_ID);
+    adjacentVertices = (HashMap<Vertex, Double>) fields.get("adjacentVertices", null);
+    transitTypes = fields.get("transitTypes", 0);
+    prev = (Vertex) fields.get("prev", null);
+    distance = fields.get("distance", Double.POSITIVE_INFINITY);
+    coordinate = (Pair<Integer, Integer>) fields.get("coordinate", null);
+    Object flow = fields.get("passengerFlow", null);
+    if (flow instanceof PassengerFlow) {
+      passengerFlow = (PassengerFlow) flow;
+    } else {
+      passengerFlow = new PassengerFlow();
+      if (flow != null) {
+        for (Map.Entry<Long, Map<String, Integer>> day :
+            ((Map<Long, Map<String, Integer>>) flow).entrySet()) {
+          for (Map.Entry<String, Integer> count : day.getValue().entrySet()) {
+            passengerFlow.add(day.getKey(), count.getKey(), count.getValue());
+          }
+        }
+      }
+    }
+  }
+
+  /** A passenger flow visitor is given the counts of one bucket of passenger flow. */
+  public interface PassengerFlowVisitor {
+
+    /**
+     * Visit a bucket of passenger flow.
+     *
+     * @param bucket index of this bucket since epoch in local time.
+     * @param tapInTimes tap in times in this bucket.
+     * @param tapOutTimes tap out times in this bucket.
+     * @param arrivedTimes arrived times in this bucket.
+     */
+    void visit(long bucket, long tapInTimes, long tapOutTimes, long arrivedTimes);
+  }
 }
@@ -0,0 +1,102 @@
+package money;
+
+/**
+ * Money keeps amounts of money in this transit system as whole cents in a long, so that balances
+ * and fares add up exactly without rounding after every calculation. A distance travelled is kept
+ * in hundredths of a unit the same way, and a fare per unit of distance in hundredths of a cent.
+ * The fare of a distance is the exact product of the two, rounded once to a cent.
+ */
+public final class Money {
+
+  /* cents in a dollar, and hundredths in a unit of distance */
+  private static final int SCALE = 100;
+  /* hundredths of a cent in a dollar */
+  private static final int RATE_SCALE = SCALE * SCALE;
+  /* a half lost to binary representation, like 2.675 * 100, still rounds up */
+  private static final double HALF_TOLERANCE = 1e-6;
+
+  private Money() {}
+
+  /**
+   * Round an amount in dollars to whole cents, half away from zero.
+   *
+   * @param dollars an amount in dollars, for example entered by a user.
+   * @return the amount in cents.
+   */
+  public static long toCents(double dollars) {
+    return round(dollars, SCALE);
+  }
+
+  /**
+   * Get an amount in cents in dollars, to show to a user.
+   *
+   * @param cents an amount in cents.
+   * @return the amount in dollars.
+   */
+  public static double toDollars(long cents) {
+    return (double) cents / SCALE;
+  }
+
+  /**
+   * Round a distance to hundredths of a unit, half away from zero.
+   *
+   * @param distance a distance in units.
+   * @return the distance in hundredths of a unit.
+   */
+  public static long toHundredths(double distance) {
+    return round(distance, SCALE);
+  }
+
+  /**
+   * Get a distance in hundredths of a unit in units, to show to a user.
+   *
+   * @param hundredths a distance in hundredths of a unit.
+   * @return the distance in units.
+   */
+  public static double toUnits(long hundredths) {
+    return toDollars(hundredths);
+  }
+
+  /**
+   * Round a fare per unit of distance to hundredths of a cent, half away from zero.
+   *
+   * @param dollarsPerUnit a fare per unit of distance in dollars.
+   * @return the fare per unit in hundredths of a cent.
+   */
+  public static long toRate(double dollarsPerUnit) {
+    return round(dollarsPerUnit, RATE_SCALE);
+  }
+
+  /**
+   * Get the fare of a distance, rounded half away from zero to whole cents.
+   *
+   * @param rate fare of a unit of distance in hundredths of a cent.
+   * @param hundredths a distance in hundredths of a unit.
+   * @return the fare of this distance in cents.
+   */
+  public static long multiply(long rate, long hundredths) {
+    long product = rate * hundredths;
+    if (product < 0) {
+      return -((-product + RATE_SCALE / 2) / RATE_SCALE);
+    }
+    return (product + RATE_SCALE / 2) / RATE_SCALE;
+  }
+
+  /**
+   * Round a value to a fixed point of this scale, half away from zero.
+   *
+   * @param value the value to round.
+   * @param scale fixed point units in a unit of this value.
+   * @return the value in fixed point units.
+   */
+  private static long round(double value, int scale) {
+    if (Double.isNaN(value) || Double.isInfinite(value)) {
+      throw new IllegalArgumentException("Not a finite amount: " + value);
+    }
+    double scaled = value * scale;
+    if (scaled < 0) {
+      return -Math.round(-scaled + HALF_TOLERANCE);
+    }
+    return Math.round(scaled + HALF_TOLERANCE);
+  }
+}
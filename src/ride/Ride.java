@@ -1,10 +1,15 @@
 package ride;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
-import java.math.BigDecimal;
 import java.util.Calendar;
 import java.util.LinkedList;
+import java.util.List;
+import map.PathPool;
+import map.RidePath;
 import map.Vertex;
+import money.Money;
 import serialize.SerializeManager;
 
 /**
@@ -14,16 +19,24 @@ import serialize.SerializeManager;
  * and tap out.). A ride records information including time, location, fare charged for this ride,
  * distance travelled in this ride, transit path of this ride and transit type of this ride.
  */
-public class Ride implements Serializable {
+public class Ride implements Serializable, TripLeg {
 
+  /* serialVersionUID of the first ride, its fare and distance go fixed point in readObject */
+  private static final long serialVersionUID = -7216925308858342254L;
   private final Calendar tapInTime;
   private final String tapInLocation;
   private final TransitType transitType;
   private Calendar tapOutTime;
   private String tapOutLocation;
+  private long distanceInHundredths;
+  private long fareInCents;
+  /* distance and fare of snapshots before fixed point money, only read to migrate them */
   private double distanceTravelled;
   private double fare;
+  /* path of snapshots before interned paths, only kept until it is interned */
   private LinkedList<Vertex> path;
+  /* interned path shared with other rides that have gone through it */
+  private RidePath ridePath;
 
   /**
    * Create a new ride,start record by storing tap in time, tap in location and transit type.
@@ -60,6 +73,16 @@ public class Ride implements Serializable {
     return this.tapInTime;
   }
 
+  /**
+   * Get the tap in time of this ride in millis.
+   *
+   * @return tap in time in millis, null if this ride has missed tap in.
+   */
+  @Override
+  public Long getTapInTimeInMillis() {
+    return tapInTime == null ? null : tapInTime.getTimeInMillis();
+  }
+
   /**
    * Get the tap out time of this ride.
    *
@@ -85,6 +108,7 @@ public class Ride implements Serializable {
    *
    * @return A String representing where this ride start.
    */
+  @Override
   public String getTapInLocation() {
     return this.tapInLocation;
   }
@@ -94,6 +118,7 @@ public class Ride implements Serializable {
    *
    * @return A String representing where this ride end.
    */
+  @Override
   public String getTapOutLocation() {
     return this.tapOutLocation;
   }
@@ -115,7 +140,16 @@ public class Ride implements Serializable {
    * @return A double representing the total number of stations travelled of this ride.
    */
   public double getDistanceTravelled() {
-    return this.distanceTravelled;
+    return Money.toUnits(distanceInHundredths);
+  }
+
+  /**
+   * Get the number of stations this ride has go through, in hundredths of a unit.
+   *
+   * @return A long representing the distance travelled of this ride in hundredths of a unit.
+   */
+  public long getDistanceInHundredths() {
+    return distanceInHundredths;
   }
 
   /**
@@ -124,10 +158,16 @@ public class Ride implements Serializable {
    * @param distanceTravelled A double representing the total number of stations travelled.
    */
   public void setDistanceTravelled(double distanceTravelled) {
-    BigDecimal bigDecimal = new BigDecimal(Double.valueOf(distanceTravelled).toString());
-    bigDecimal = bigDecimal.setScale(2, BigDecimal.ROUND_HALF_UP);
-    distanceTravelled = bigDecimal.doubleValue();
-    this.distanceTravelled = distanceTravelled;
+    setDistanceInHundredths(Money.toHundredths(distanceTravelled));
+  }
+
+  /**
+   * Set the number of stations this ride has go through, in hundredths of a unit.
+   *
+   * @param distanceInHundredths the distance travelled in hundredths of a unit.
+   */
+  public void setDistanceInHundredths(long distanceInHundredths) {
+    this.distanceInHundredths = distanceInHundredths;
     /* serialize cards if distance travelled of a ride of card is set up*/
     SerializeManager.getInstance().writeObject();
   }
@@ -138,7 +178,17 @@ public class Ride implements Serializable {
    * @return A double representing the fare of this ride.
    */
   public double getFare() {
-    return this.fare;
+    return Money.toDollars(fareInCents);
+  }
+
+  /**
+   * Get the fare need to charge for this ride, in cents.
+   *
+   * @return A long representing the fare of this ride in cents.
+   */
+  @Override
+  public long getFareInCents() {
+    return fareInCents;
   }
 
   /**
@@ -148,28 +198,63 @@ public class Ride implements Serializable {
    */
   public void setFare(double fare) {
     /* round to 2 decimal point if there are more than 2 decimal point */
-    BigDecimal bigDecimal = new BigDecimal(Double.valueOf(fare).toString());
-    bigDecimal = bigDecimal.setScale(2, BigDecimal.ROUND_HALF_UP);
-    this.fare = bigDecimal.doubleValue();
+    setFareInCents(Money.toCents(fare));
+  }
+
+  /**
+   * Set the fare need to charge for this ride, in cents.
+   *
+   * @param fareInCents the fare of this ride in cents.
+   */
+  public void setFareInCents(long fareInCents) {
+    this.fareInCents = fareInCents;
     /* serialize cards if fare of a ride of card is set up*/
     SerializeManager.getInstance().writeObject();
   }
 
-  public LinkedList<Vertex> getPath() {
-    return path;
+  /**
+   * Get the path of this ride.
+   *
+   * @return A list of Vertex representing the path, not to be changed, null if it is not known
+   *     yet.
+   */
+  public List<Vertex> getPath() {
+    return ridePath == null ? path : ridePath.getVertices();
+  }
+
+  /**
+   * Get the interned path of this ride.
+   *
+   * @return the RidePath of this ride, null if it is not known yet or not interned yet.
+   */
+  public RidePath getRidePath() {
+    return ridePath;
   }
 
   /**
    * Set the path of this ride.
    *
-   * @param path A LinkedList of Vertex representing the path.
+   * @param ridePath A RidePath interned in the path pool of the system map.
    */
-  public void setPath(LinkedList<Vertex> path) {
-    this.path = path;
+  public void setPath(RidePath ridePath) {
+    this.ridePath = ridePath;
+    this.path = null;
     /* serialize cards if path of a ride of card is set up*/
     SerializeManager.getInstance().writeObject();
   }
 
+  /**
+   * Intern the path of a snapshot before interned paths, so it is shared with other rides.
+   *
+   * @param pathPool the path pool of the system map.
+   */
+  public void internPath(PathPool pathPool) {
+    if (path != null) {
+      ridePath = pathPool.intern(path);
+      path = null;
+    }
+  }
+
   public TransitType getTransitType() {
     return this.transitType;
   }
@@ -188,14 +273,14 @@ public class Ride implements Serializable {
     tapOutInfo += timeToString(tapOutTime);
     tapOutInfo +=
         "Distance Travelled: "
-            + distanceTravelled
+            + getDistanceTravelled()
             + " unit"
             + System.lineSeparator()
             + "Fare Charged: "
-            + fare
+            + getFare()
             + System.lineSeparator()
             + "Path: "
-            + path;
+            + getPath();
 
     return "--------------------------------------"
         + System.lineSeparator()
@@ -205,6 +290,24 @@ public class Ride implements Serializable {
         + "--------------------------------------";
   }
 
+  /**
+   * Read a ride from a snapshot, moving distance and fare of a snapshot before fixed point money
+   * into hundredths and cents.
+   *
+   * @param in the stream to read this ride from.
+   */
+  private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+    in.defaultReadObject();
+    if (distanceTravelled != 0) {
+      distanceInHundredths = Money.toHundredths(distanceTravelled);
+      distanceTravelled = 0;
+    }
+    if (fare != 0) {
+      fareInCents = Money.toCents(fare);
+      fare = 0;
+    }
+  }
+
   /**
    * Get a string representation of this time.
    *
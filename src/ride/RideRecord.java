@@ -1,25 +1,33 @@
 package ride;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Calendar;
 
 /**
  * A RideRecord is a container with all ride records of this card. Current records are ride records
- * within reach cap time.
+ * within reach cap time, which is given by the fare policy of this transit system. A RideRecord
+ * keeps a trip accumulator of its rides, with the fare collected in the trip of its latest ride
+ * and the fare deducted from this card in the day and week of its latest charge.
  */
 public class RideRecord implements Serializable {
 
+  /* serialVersionUID of the first ride record, its reach cap time moves to the fare manager */
+  private static final long serialVersionUID = 9109583847834040066L;
+
   private final ArrayList<Ride> contents; // all ride records of this card
+  /* reach cap time in milliseconds of snapshots before a policy-wide one, only read to move it */
   private double reachCapTime;
+  /* trip state of the latest ride and fare deducted in the day and week of the latest charge */
+  private TripAccumulator<Ride> tripAccumulator;
 
   /** Construct a new RideRecord. */
   public RideRecord() {
     /* create a new list to store all ride records of this card in order */
     this.contents = new ArrayList<>();
-    /* set reach cap time to 2 hour by default, can be changed by admin user */
-    /* in this transit system */
-    this.reachCapTime = 2 * 3600 * 1000;
+    this.tripAccumulator = new TripAccumulator<>(contents);
   }
 
   /**
@@ -29,82 +37,86 @@ public class RideRecord implements Serializable {
    */
   public void add(Ride item) {
     contents.add(item);
+    tripAccumulator.rideAdded();
   }
 
   /**
-   * Set the reach cap time.
+   * Get the rides within reach cap time.
    *
-   * @param reachCapTime the reach cap time of this transit system.
+   * @param reachCapTime the reach cap time in milliseconds of the fare policy.
+   * @return An ArrayList of Ride including all rides not exceed reach cap time.
    */
-  public void setReachCapTime(double reachCapTime) {
-    this.reachCapTime = reachCapTime;
+  public ArrayList<Ride> getCurrentRides(long reachCapTime) {
+    return tripAccumulator.getCurrentRides(reachCapTime);
   }
 
   /**
-   * Get the rides within reach cap time.
+   * Get total fare in cents collected in the continuous trip of the latest ride within reach cap
+   * time, before the latest ride. A trip is continuous if every ride's tap in location is same as
+   * previous ride's tap out location.
    *
-   * @return An ArrayList of Ride including all rides not exceed reach cap time.
+   * @param reachCapTime the reach cap time in milliseconds of the fare policy.
+   * @return total fare in cents collected in this continuous trip(if there is) within cap time.
    */
-  public ArrayList<Ride> getCurrentRides() {
-    ArrayList<Ride> currentContent = new ArrayList<>();
-    Ride latestRide = getLatestRide();
-    if (latestRide != null) { // there are rides within reach cap time
-      Calendar latestTapInTime = latestRide.getTapInTime();
-      /* if the latest ride has missed tap in, it will not be capped as a punishment. */
-      if (latestTapInTime != null) {
-        for (int i = contents.size() - 1; i >= 0; i--) { // check from latest to previous ride
-          if (contents.get(i).getTapInTime() == null) { // this ride has missed tap in time
-            if (rideMissedTapInTimeWithinCapTime(i, latestTapInTime)) {
-              currentContent.add(0, contents.get(i));
-            }
-          } else if (withinCapTime(contents.get(i).getTapInTime(), latestTapInTime)) {
-            currentContent.add(0, contents.get(i));
-          }
-        }
-      }
-    }
-    return currentContent;
+  public long getFareThisTripInCents(long reachCapTime) {
+    return tripAccumulator.getFareThisTripInCents(reachCapTime);
   }
 
   /**
-   * Check whether previous ride of this ride with missed tap in time is within cap time or not. If
-   * its previous ride is within reach cap time, then this ride with missed tap in time is also
-   * within cap time. Consider this ride within missed tap in time without reach cap time if there
-   * is no previous ride to compare.
+   * Get the fare in cents deducted from this card in a day.
    *
-   * @param indexOfRideWithMissedTapInTime index in of this ride with missed tap in time in all
-   *     rides
-   * @param latestTapInTime the latest tap in time of this card
-   * @return whether this ride with missed tap in time is within cap time.
+   * @param epochDay the day, counting from the epoch.
+   * @return the fare in cents deducted in this day, 0 if nothing was deducted in it.
    */
-  private boolean rideMissedTapInTimeWithinCapTime(
-      int indexOfRideWithMissedTapInTime, Calendar latestTapInTime) {
-    int indexOfThisRide = indexOfRideWithMissedTapInTime;
-    if (indexOfThisRide > 0) {
-      while (contents.get(indexOfThisRide - 1).getTapInTime() == null && indexOfThisRide - 1 >= 0) {
-        indexOfThisRide--;
-      }
-      /* if its previous ride is within cap time, */
-      /*this ride with missed tap in time is also within cap time. */
-      return indexOfThisRide - 1 >= 0 // find a previous ride that has tap in time
-          && withinCapTime(
-              contents.get(indexOfThisRide - 1).getTapInTime(),
-              latestTapInTime); // previous ride is within cap time
-    }
-    /* consider this ride with missed tap in without cap time */
-    /* if there is no previous ride to compare */
-    return false;
+  public long getDaySpendInCents(long epochDay) {
+    return tripAccumulator.getDaySpendInCents(epochDay);
   }
 
   /**
-   * Check whether this ride is within cap time.
+   * Get the fare in cents deducted from this card in a week.
    *
-   * @param thisTapInTime tap in time of this ride
-   * @param latestTapInTime tap in time of the latest ride of this card
-   * @return true if this ride is within cap time, false otherwise.
+   * @param epochWeek the week, counting from the epoch.
+   * @return the fare in cents deducted in this week, 0 if nothing was deducted in it.
    */
-  private boolean withinCapTime(Calendar thisTapInTime, Calendar latestTapInTime) {
-    return latestTapInTime.getTimeInMillis() - thisTapInTime.getTimeInMillis() <= reachCapTime;
+  public long getWeekSpendInCents(long epochWeek) {
+    return tripAccumulator.getWeekSpendInCents(epochWeek);
+  }
+
+  /**
+   * Add a fare deducted from this card to the fare deducted in its day and week.
+   *
+   * @param epochDay the day of this deduction, counting from the epoch.
+   * @param epochWeek the week of this deduction, counting from the epoch.
+   * @param amountInCents the fare deducted in cents.
+   * @see TripAccumulator#addSpend(long, long, long)
+   */
+  public void addSpend(long epochDay, long epochWeek, long amountInCents) {
+    tripAccumulator.addSpend(epochDay, epochWeek, amountInCents);
+  }
+
+  /**
+   * Take the reach cap time of a ride record read from a snapshot before a policy-wide reach cap
+   * time, so it is only migrated once.
+   *
+   * @return the reach cap time in milliseconds of this ride record, 0 if it has none.
+   */
+  public long takeSnapshotReachCapTime() {
+    long result = Math.round(reachCapTime);
+    reachCapTime = 0;
+    return result;
+  }
+
+  /**
+   * Read a ride record from a snapshot. A snapshot before trip accumulators has none, a new one
+   * is created for its rides, with no fare deducted in any day or week yet.
+   *
+   * @param in the stream to read this ride record from.
+   */
+  private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+    in.defaultReadObject();
+    if (tripAccumulator == null) {
+      tripAccumulator = new TripAccumulator<>(contents);
+    }
   }
 
   /**
@@ -0,0 +1,207 @@
+package ride;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A trip accumulator keeps the state of the trip of the latest ride of a card as rides are added,
+ * so the fare collected in this trip within reach cap time is known without going through
+ * previous rides. It also keeps the fare deducted from the card in the day and week of its latest
+ * charge, for daily and weekly caps. A ride record keeps one for its rides, and a fare replay
+ * keeps one for the rides of a card replayed so far, so both charge a card the same way.
+ *
+ * @param <T> the type of rides of this trip accumulator.
+ */
+public final class TripAccumulator<T extends TripLeg> implements Serializable {
+
+  /* serialVersionUID of the first trip accumulator, its serialized fields are unchanged */
+  private static final long serialVersionUID = -3539358789870301117L;
+  private final List<T> rides; // all rides of the card, in order
+  /* trip state of the latest ride is not serialized, it is rebuilt from rides when needed */
+  private transient boolean tripStateReady;
+  /* reach cap time in milliseconds the trip state is kept for */
+  private transient long tripReachCapTime;
+  /* index of the first ride of the continuous trip that ends with the latest ride */
+  private transient int tripStart;
+  /* index of the first ride within reach cap time of the latest ride */
+  private transient int windowStart;
+  /* fare collected in cents by rides of this trip within reach cap time, before the latest ride */
+  private transient long tripFareInCents;
+  /* epoch day and fare deducted in cents in it, updated on each deduction */
+  private long spendEpochDay;
+  private long daySpendInCents;
+  /* epoch week and fare deducted in cents in it, updated on each deduction */
+  private long spendEpochWeek;
+  private long weekSpendInCents;
+
+  /**
+   * Create a new trip accumulator.
+   *
+   * @param rides the rides of a card, in order. Rides are only added to its end, and a ride added
+   *     must be passed to {@link #rideAdded()}.
+   */
+  public TripAccumulator(List<T> rides) {
+    this.rides = rides;
+  }
+
+  /** Update the trip state after a ride is added to the end of the rides. */
+  public void rideAdded() {
+    if (tripStateReady) {
+      updateTripState(rides.size() - 1);
+    }
+  }
+
+  /**
+   * Get the rides within reach cap time of the latest ride.
+   *
+   * @param reachCapTime the reach cap time in milliseconds of the fare policy.
+   * @return An ArrayList of rides within reach cap time, empty if the latest ride has missed tap
+   *     in.
+   */
+  public ArrayList<T> getCurrentRides(long reachCapTime) {
+    if (!isCapped()) {
+      return new ArrayList<>();
+    }
+    prepareTripState(reachCapTime);
+    return new ArrayList<>(rides.subList(windowStart, rides.size()));
+  }
+
+  /**
+   * Get total fare in cents collected in the continuous trip of the latest ride within reach cap
+   * time, before the latest ride. A trip is continuous if every ride's tap in location is same as
+   * previous ride's tap out location.
+   *
+   * @param reachCapTime the reach cap time in milliseconds of the fare policy.
+   * @return total fare in cents collected in this continuous trip(if there is) within cap time.
+   */
+  public long getFareThisTripInCents(long reachCapTime) {
+    if (!isCapped()) {
+      return 0;
+    }
+    prepareTripState(reachCapTime);
+    return tripFareInCents;
+  }
+
+  /**
+   * Get the fare in cents deducted from the card in a day.
+   *
+   * @param epochDay the day, counting from the epoch.
+   * @return the fare in cents deducted in this day, 0 if nothing was deducted in it.
+   */
+  public long getDaySpendInCents(long epochDay) {
+    return epochDay == spendEpochDay ? daySpendInCents : 0;
+  }
+
+  /**
+   * Get the fare in cents deducted from the card in a week.
+   *
+   * @param epochWeek the week, counting from the epoch.
+   * @return the fare in cents deducted in this week, 0 if nothing was deducted in it.
+   */
+  public long getWeekSpendInCents(long epochWeek) {
+    return epochWeek == spendEpochWeek ? weekSpendInCents : 0;
+  }
+
+  /**
+   * Add a fare deducted from the card to the fare deducted in its day and week. The total of a
+   * day or week starts over when a later day or week comes, and a deduction in an earlier day or
+   * week than the one kept is not counted in it.
+   *
+   * @param epochDay the day of this deduction, counting from the epoch.
+   * @param epochWeek the week of this deduction, counting from the epoch.
+   * @param amountInCents the fare deducted in cents.
+   */
+  public void addSpend(long epochDay, long epochWeek, long amountInCents) {
+    if (epochDay > spendEpochDay) {
+      spendEpochDay = epochDay;
+      daySpendInCents = 0;
+    }
+    if (epochDay == spendEpochDay) {
+      daySpendInCents += amountInCents;
+    }
+    if (epochWeek > spendEpochWeek) {
+      spendEpochWeek = epochWeek;
+      weekSpendInCents = 0;
+    }
+    if (epochWeek == spendEpochWeek) {
+      weekSpendInCents += amountInCents;
+    }
+  }
+
+  /**
+   * Check whether the latest ride can be capped. If the latest ride has missed tap in, it will
+   * not be capped as a punishment.
+   *
+   * @return true if there is a latest ride and it has tapped in, false otherwise.
+   */
+  private boolean isCapped() {
+    return !rides.isEmpty() && rides.get(rides.size() - 1).getTapInTimeInMillis() != null;
+  }
+
+  /**
+   * Rebuild the trip state from all rides, if it is not kept up to date or is kept for another
+   * reach cap time.
+   *
+   * @param reachCapTime the reach cap time in milliseconds of the fare policy.
+   */
+  private void prepareTripState(long reachCapTime) {
+    if (!tripStateReady || tripReachCapTime != reachCapTime) {
+      /* rides out of the old reach cap time may be within the new one */
+      tripReachCapTime = reachCapTime;
+      tripStart = 0;
+      windowStart = 0;
+      tripFareInCents = 0;
+      for (int i = 0; i < rides.size(); i++) {
+        updateTripState(i);
+      }
+      tripStateReady = true;
+    }
+  }
+
+  /**
+   * Update the trip state after a ride is added as the latest ride. The previous ride joins the
+   * trip if it continues to this ride, otherwise a new trip starts from this ride. Rides out of
+   * reach cap time of this ride leave the window, and their fare is no longer collected in this
+   * trip. A ride is only charged while it is the latest ride, or the ride before it with missed
+   * tap out, which never continues to the next ride, so fares collected in a trip do not change.
+   *
+   * @param index index of the ride that has been added.
+   */
+  private void updateTripState(int index) {
+    T ride = rides.get(index);
+    T previousRide = index > 0 ? rides.get(index - 1) : null;
+    if (previousRide != null && ride.getTapInLocation().equals(previousRide.getTapOutLocation())) {
+      if (index - 1 >= windowStart) {
+        tripFareInCents += previousRide.getFareInCents();
+      }
+    } else { // disjoint trip
+      tripStart = index;
+      tripFareInCents = 0;
+    }
+    /* the window of a ride with missed tap in is empty, keep the window of the ride before it */
+    Long tapInTime = ride.getTapInTimeInMillis();
+    if (tapInTime != null) {
+      while (windowStart < index && !withinCapTime(windowStart, tapInTime)) {
+        if (windowStart >= tripStart) {
+          tripFareInCents -= rides.get(windowStart).getFareInCents();
+        }
+        windowStart++;
+      }
+    }
+  }
+
+  /**
+   * Check whether the ride at the start of the window is within cap time. A ride with missed tap
+   * in is within cap time if its previous ride is, but every ride before the start of the window
+   * is already out of cap time.
+   *
+   * @param index index of the ride at the start of the window.
+   * @param latestTapInTime tap in time of the latest ride in millis.
+   * @return true if this ride is within cap time, false otherwise.
+   */
+  private boolean withinCapTime(int index, long latestTapInTime) {
+    Long thisTapInTime = rides.get(index).getTapInTimeInMillis();
+    return thisTapInTime != null && latestTapInTime - thisTapInTime <= tripReachCapTime;
+  }
+}
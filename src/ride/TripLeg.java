@@ -0,0 +1,36 @@
+package ride;
+
+/**
+ * A trip leg is a ride as a trip accumulator sees it: where it tapped in and out, when it tapped
+ * in and the fare collected for it. A ride and a snapshot of a ride are both trip legs.
+ */
+public interface TripLeg {
+
+  /**
+   * Get the tap in location of this ride.
+   *
+   * @return where this ride started.
+   */
+  String getTapInLocation();
+
+  /**
+   * Get the tap out location of this ride.
+   *
+   * @return where this ride ended, null if it has not tapped out.
+   */
+  String getTapOutLocation();
+
+  /**
+   * Get the tap in time of this ride.
+   *
+   * @return tap in time in millis, null if this ride has missed tap in.
+   */
+  Long getTapInTimeInMillis();
+
+  /**
+   * Get the fare collected for this ride.
+   *
+   * @return the fare in cents collected for this ride.
+   */
+  long getFareInCents();
+}
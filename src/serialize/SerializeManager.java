@@ -1,6 +1,8 @@
 package serialize;
 
+import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
@@ -14,6 +16,9 @@ public class SerializeManager extends Observable {
   private static final String filePath = "src/serialize/serial";
   private static SerializeManager instance;
   private TransitSystem transitSystem;
+  /* depth of nested batches, writes are deferred until the outermost batch ends */
+  private int batchDepth;
+  private boolean batchDirty;
 
   private SerializeManager() {
     instance = this;
@@ -38,8 +43,38 @@ public class SerializeManager extends Observable {
     this.transitSystem = transitSystem;
   }
 
-  /** Write the object in serial file. */
-  public void writeObject() {
+  /**
+   * Begin a batch of changes. Until the batch ends, writes are deferred, so that the transit
+   * system is written once for all changes in the batch. Batches can be nested.
+   */
+  public synchronized void beginBatch() {
+    batchDepth++;
+  }
+
+  /** End a batch of changes, and write the object if it has changed in the outermost batch. */
+  public synchronized void endBatch() {
+    if (batchDepth == 0) {
+      return; // no batch to end
+    }
+    batchDepth--;
+    if (batchDepth == 0 && batchDirty) {
+      batchDirty = false;
+      writeObject();
+    }
+  }
+
+  /**
+   * Write the object in serial file, unless no transit system is set up to be written. Within a
+   * batch, the write is deferred to the end of the batch.
+   */
+  public synchronized void writeObject() {
+    if (transitSystem == null) {
+      return; // nothing to serialize, keep the serial file of last transit system
+    }
+    if (batchDepth > 0) {
+      batchDirty = true;
+      return;
+    }
     try (ObjectOutputStream objectOutputStream =
         new ObjectOutputStream(new FileOutputStream(filePath))) {
       objectOutputStream.writeObject(transitSystem);
@@ -48,11 +83,28 @@ public class SerializeManager extends Observable {
     }
   }
 
-  /** Read the object from serial file. */
+  /**
+   * Read the object from serial file. A serial file that exists but cannot be read is moved
+   * aside, so it is never overwritten by the transit system created in place of it.
+   */
   public Object readObject() throws IOException, ClassNotFoundException {
+    Object result;
     /* Object Deserialization */
-    ObjectInputStream objectInputStream = new ObjectInputStream(new FileInputStream(filePath));
-    Object result = objectInputStream.readObject();
+    try (ObjectInputStream objectInputStream =
+        new ObjectInputStream(new FileInputStream(filePath))) {
+      result = objectInputStream.readObject();
+    } catch (FileNotFoundException e) {
+      throw e; // no serialization history
+    } catch (IOException | ClassNotFoundException | RuntimeException e) {
+      File unreadableFile = new File(filePath + ".unreadable." + System.currentTimeMillis());
+      boolean moved = new File(filePath).renameTo(unreadableFile);
+      setChanged();
+      notifyObservers(
+          "Fail to De-serialize Transit System: "
+              + e
+              + (moved ? ", Serial File is Kept As " + unreadableFile : ""));
+      throw e;
+    }
     if (result != null) {
       setChanged();
       notifyObservers("Transit System De-serialized!");
@@ -0,0 +1,96 @@
+package serialize;
+
+import card.Card;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import log.LogManager;
+import map.SystemMap;
+import map.Vertex;
+import money.Money;
+import ride.Ride;
+import system.TransitSystem;
+
+/**
+ * A snapshot check reads a serial file of a transit system, the way the transit system reads it
+ * when it starts, and reports what was read. Run it on a serial file written by an earlier version
+ * before releasing a change to serialized classes: a snapshot that cannot be read is reported with
+ * its exception, where the transit system would have started a new one.
+ *
+ * <p>Usage: SnapshotCheck [serial file], src/serialize/serial by default. The serial file is only
+ * read, never written or moved.
+ */
+public class SnapshotCheck {
+
+  private SnapshotCheck() {}
+
+  /**
+   * Read a serial file and report its transit system.
+   *
+   * @param args the serial file to read, optional.
+   */
+  public static void main(String[] args) {
+    /* log manager turns logging on when it is initialized, turn it off for checks */
+    LogManager.getInstance();
+    Logger.getLogger("Transit System Logger").setLevel(Level.OFF);
+    String filePath = args.length > 0 ? args[0] : "src/serialize/serial";
+    TransitSystem transitSystem;
+    try (ObjectInputStream objectInputStream =
+        new ObjectInputStream(new FileInputStream(filePath))) {
+      transitSystem = (TransitSystem) objectInputStream.readObject();
+    } catch (IOException | ClassNotFoundException | RuntimeException e) {
+      System.out.println("Fail to Read " + filePath + ": " + e);
+      System.exit(1);
+      return;
+    }
+    System.out.println("Read " + filePath);
+
+    SystemMap systemMap = transitSystem.getSystemMap();
+    Set<Integer> ids = new HashSet<>();
+    int unknown = 0;
+    for (Vertex vertex : systemMap.getGraph()) {
+      ids.add(vertex.getId());
+      if (systemMap.findVertex(vertex.getValue()) != vertex) {
+        unknown++;
+      }
+    }
+    System.out.println(
+        "Stations/Stops: "
+            + systemMap.getGraph().size()
+            + ", Distinct Ids: "
+            + ids.size()
+            + ", Not Found By Name: "
+            + unknown);
+
+    int rides = 0;
+    long balanceInCents = 0;
+    long fareInCents = 0;
+    long distanceInHundredths = 0;
+    for (Card card : transitSystem.getCardManager().getCardPool().values()) {
+      balanceInCents += card.getBalanceInCents();
+      for (Ride ride : card.getRideRecords().getAllRides()) {
+        rides++;
+        fareInCents += ride.getFareInCents();
+        distanceInHundredths += ride.getDistanceInHundredths();
+      }
+    }
+    System.out.println(
+        "Cards: "
+            + transitSystem.getCardManager().getCardPool().size()
+            + ", Rides: "
+            + rides
+            + ", Balance: $"
+            + Money.toDollars(balanceInCents)
+            + ", Fare Collected: $"
+            + Money.toDollars(fareInCents)
+            + ", Distance Travelled: "
+            + Money.toUnits(distanceInHundredths));
+    System.out.println(
+        "Cardholders: " + transitSystem.getCardholderManager().getCardholderPool().size());
+    System.out.println("Fare Policy: " + transitSystem.getFareManager().getFarePolicy().keySet());
+  }
+}
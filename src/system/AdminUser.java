@@ -5,6 +5,8 @@ import fare.BusStrategy;
 import fare.CapStrategy;
 import fare.FareStrategy;
 import fare.SubwayStrategy;
+import fare.TimeOfDayStrategy;
+import fare.ZoneStrategy;
 import java.io.File;
 import java.io.Serializable;
 import java.util.HashMap;
@@ -18,12 +20,14 @@ import serialize.SerializeManager;
 /**
  * An admin user has a employee ID. An admin user has access to information stored in this transit
  * system. An admin user can add or remove fare strategy, set one time fare in bus strategy, set
- * fare per station in subway strategy, set max fare per trip in cap strategy, set reach cap time in
- * ride record. An admin user can also collect statistics including fare collected, total distance
+ * fare per station in subway strategy, set max fare per trip in cap strategy, set reach cap time of
+ * fare policy. An admin user can also collect statistics including fare collected, total distance
  * travelled, total stations covered in all rides by day, week or month.
  */
 public class AdminUser extends Observable implements Serializable {
 
+  /* serialVersionUID of the first admin user, its serialized fields are unchanged */
+  private static final long serialVersionUID = 3769916561154151480L;
   private final String employeeId;
   private final TransitSystem transitSystem;
   private String password;
@@ -82,6 +86,7 @@ public class AdminUser extends Observable implements Serializable {
    */
   public void addFareStrategy(String strategyName, FareStrategy fareStrategy) {
     transitSystem.getFareManager().getFarePolicy().put(strategyName, fareStrategy);
+    transitSystem.getFareManager().publishFarePolicy();
     setChanged();
     notifyObservers("New Fare Strategy added! Strategy Name: " + strategyName + ".");
     /* serialize fare manager if a fare strategy is added */
@@ -97,6 +102,7 @@ public class AdminUser extends Observable implements Serializable {
     HashMap<String, FareStrategy> farePolicy = transitSystem.getFareManager().getFarePolicy();
     if (farePolicy.keySet().contains(strategyName)) {
       farePolicy.remove(strategyName);
+      transitSystem.getFareManager().publishFarePolicy();
       setChanged();
       notifyObservers(strategyName + " Fare Strategy Has Been Removed!");
     } else {
@@ -108,7 +114,7 @@ public class AdminUser extends Observable implements Serializable {
   }
 
   /**
-   * Modify one time fare of a BusStrategy.
+   * Modify one time fare of a BusStrategy, or of the base strategy of a TimeOfDayStrategy.
    *
    * @param newOneTimeFare the new fare for this bus trip.
    * @param strategyName the name of the strategy.
@@ -116,8 +122,9 @@ public class AdminUser extends Observable implements Serializable {
   public void setOneTimeFare(String strategyName, double newOneTimeFare) {
     BusStrategy strategy;
     try {
-      strategy = (BusStrategy) (transitSystem.getFareManager().getFarePolicy().get(strategyName));
+      strategy = (BusStrategy) getStrategyWithFare(strategyName);
       strategy.setOneTimeFare(newOneTimeFare);
+      transitSystem.getFareManager().publishFarePolicy();
       setChanged();
       notifyObservers(
           strategyName
@@ -135,7 +142,7 @@ public class AdminUser extends Observable implements Serializable {
   }
 
   /**
-   * Modify fare per station of a SubwayStrategy.
+   * Modify fare per station of a SubwayStrategy, or of the base strategy of a TimeOfDayStrategy.
    *
    * @param newPerStationFare the new fare for each station of the subway.
    * @param strategyName the name of the strategy.
@@ -143,9 +150,9 @@ public class AdminUser extends Observable implements Serializable {
   public void setPerStationFare(String strategyName, double newPerStationFare) {
     SubwayStrategy strategy;
     try {
-      strategy =
-          (SubwayStrategy) (transitSystem.getFareManager().getFarePolicy().get(strategyName));
+      strategy = (SubwayStrategy) getStrategyWithFare(strategyName);
       strategy.setFarePerUnit(newPerStationFare);
+      transitSystem.getFareManager().publishFarePolicy();
       setChanged();
       notifyObservers(
           strategyName
@@ -162,6 +169,21 @@ public class AdminUser extends Observable implements Serializable {
     }
   }
 
+  /**
+   * Get the strategy that keeps the one time fare or fare per station of a fare strategy, which is
+   * the base strategy of a TimeOfDayStrategy, or the fare strategy itself.
+   *
+   * @param strategyName the name of the strategy.
+   * @return the strategy with the fare of this strategy, null if there is no such strategy.
+   */
+  private FareStrategy getStrategyWithFare(String strategyName) {
+    FareStrategy strategy = transitSystem.getFareManager().getFarePolicy().get(strategyName);
+    if (strategy instanceof TimeOfDayStrategy) { // its fare is scaled from its base strategy
+      return ((TimeOfDayStrategy) strategy).getBaseStrategy();
+    }
+    return strategy;
+  }
+
   /**
    * Modify reach cap fare of a CapStrategy.
    *
@@ -173,6 +195,7 @@ public class AdminUser extends Observable implements Serializable {
     try {
       strategy = (CapStrategy) transitSystem.getFareManager().getFarePolicy().get(strategyName);
       strategy.setReachCapFare(newReachCapFare);
+      transitSystem.getFareManager().publishFarePolicy();
       setChanged();
       notifyObservers(
           strategyName
@@ -200,6 +223,7 @@ public class AdminUser extends Observable implements Serializable {
     try {
       strategy = (CapStrategy) transitSystem.getFareManager().getFarePolicy().get(strategyName);
       strategy.setMaxFarePerTrip(newMaxFarePerTrip);
+      transitSystem.getFareManager().publishFarePolicy();
       setChanged();
       notifyObservers(
           strategyName
@@ -217,21 +241,182 @@ public class AdminUser extends Observable implements Serializable {
   }
 
   /**
-   * Modify the reach cap time in RideRecord. the input new cap time should be in minutes.
+   * Modify the rate of a time bucket of a TimeOfDayStrategy.
+   *
+   * @param strategyName the name of the strategy.
+   * @param timeBucket the time bucket to modify.
+   * @param newRatePercent the new percent of the fare of base strategy charged in this bucket.
+   */
+  public void setTimeBucketRate(
+      String strategyName, TimeOfDayStrategy.TimeBucket timeBucket, double newRatePercent) {
+    TimeOfDayStrategy strategy;
+    try {
+      strategy =
+          (TimeOfDayStrategy) transitSystem.getFareManager().getFarePolicy().get(strategyName);
+      strategy.setRate(timeBucket, newRatePercent);
+      transitSystem.getFareManager().publishFarePolicy();
+      setChanged();
+      notifyObservers(
+          strategyName
+              + " Fare Strategy is Changed!"
+              + System.lineSeparator()
+              + timeBucket
+              + " Rate is set to: "
+              + newRatePercent
+              + "% .");
+      /* serialize fare manager if rate of a time bucket is changed */
+      SerializeManager.getInstance().writeObject();
+    } catch (IllegalArgumentException e) { // a negative rate
+      setChanged();
+      notifyObservers(
+          strategyName + " Fare Strategy DOES NOT take A Rate Of " + newRatePercent + "%!");
+    } catch (Exception e) {
+      setChanged();
+      notifyObservers(strategyName + " Fare Strategy DOES NOT have Time Buckets!");
+    }
+  }
+
+  /**
+   * Modify the fare zone of a station/stop in a ZoneStrategy.
+   *
+   * @param strategyName the name of the strategy.
+   * @param stationName the name of the station/stop.
+   * @param newZone the new zone of this station/stop, from 1.
+   */
+  public void setStationZone(String strategyName, String stationName, int newZone) {
+    ZoneStrategy strategy;
+    try {
+      strategy = (ZoneStrategy) transitSystem.getFareManager().getFarePolicy().get(strategyName);
+      strategy.setZone(stationName, newZone);
+      transitSystem.getFareManager().publishFarePolicy();
+      setChanged();
+      notifyObservers(
+          strategyName
+              + " Fare Strategy is Changed!"
+              + System.lineSeparator()
+              + "Zone Of "
+              + stationName
+              + " is set to: "
+              + newZone
+              + " .");
+      /* serialize fare manager if zone of a station is changed */
+      SerializeManager.getInstance().writeObject();
+    } catch (IllegalArgumentException e) { // the strategy has fewer zones
+      setChanged();
+      notifyObservers(strategyName + " Fare Strategy DOES NOT have Zone " + newZone + "!");
+    } catch (Exception e) {
+      setChanged();
+      notifyObservers(strategyName + " Fare Strategy DOES NOT have Zones!");
+    }
+  }
+
+  /**
+   * Modify the fare between two zones in a ZoneStrategy.
+   *
+   * @param strategyName the name of the strategy.
+   * @param fromZone the zone a ride starts at, from 1.
+   * @param toZone the zone a ride ends at, from 1.
+   * @param newZoneFare the new fare of a ride between these zones.
+   */
+  public void setZoneFare(String strategyName, int fromZone, int toZone, double newZoneFare) {
+    ZoneStrategy strategy;
+    try {
+      strategy = (ZoneStrategy) transitSystem.getFareManager().getFarePolicy().get(strategyName);
+      strategy.setZoneFare(fromZone, toZone, newZoneFare);
+      transitSystem.getFareManager().publishFarePolicy();
+      setChanged();
+      notifyObservers(
+          strategyName
+              + " Fare Strategy is Changed!"
+              + System.lineSeparator()
+              + "Fare From Zone "
+              + fromZone
+              + " To Zone "
+              + toZone
+              + " is set to: "
+              + newZoneFare
+              + " .");
+      /* serialize fare manager if fare between zones is changed */
+      SerializeManager.getInstance().writeObject();
+    } catch (IllegalArgumentException e) { // the strategy has fewer zones
+      setChanged();
+      notifyObservers(
+          strategyName + " Fare Strategy DOES NOT have Zone " + fromZone + " Or " + toZone + "!");
+    } catch (Exception e) {
+      setChanged();
+      notifyObservers(strategyName + " Fare Strategy DOES NOT have Zones!");
+    }
+  }
+
+  /**
+   * Modify the reach cap time of the fare policy. the input new cap time should be in minutes.
    *
    * @param newCapTime the new cap time for this transit system.
    */
   public void setReachCapTime(double newCapTime) {
-    HashMap<String, Card> cardPool = transitSystem.getCardManager().getCardPool();
-    for (Card card : cardPool.values()) {
-      card.getRideRecords().setReachCapTime(newCapTime * 60 * 1000);
-    }
+    transitSystem.getFareManager().setReachCapTime(Math.round(newCapTime * 60 * 1000));
     setChanged();
     notifyObservers("Reach Cap Time is set to: " + newCapTime + " .");
-    /* serialize cards if reach cap time is changed */
+    /* serialize fare manager if reach cap time is changed */
+    SerializeManager.getInstance().writeObject();
+  }
+
+  /**
+   * Modify the most fare deducted from a card in a day, 0 for no daily cap.
+   *
+   * @param newDailyCap the new daily cap.
+   */
+  public void setDailyCap(double newDailyCap) {
+    transitSystem.getFareManager().setDailyCap(newDailyCap);
+    setChanged();
+    notifyObservers("Daily Cap is set to: " + newDailyCap + " .");
+    /* serialize fare manager if daily cap is changed */
+    SerializeManager.getInstance().writeObject();
+  }
+
+  /**
+   * Modify the most fare deducted from a card in a week, 0 for no weekly cap.
+   *
+   * @param newWeeklyCap the new weekly cap.
+   */
+  public void setWeeklyCap(double newWeeklyCap) {
+    transitSystem.getFareManager().setWeeklyCap(newWeeklyCap);
+    setChanged();
+    notifyObservers("Weekly Cap is set to: " + newWeeklyCap + " .");
+    /* serialize fare manager if weekly cap is changed */
     SerializeManager.getInstance().writeObject();
   }
 
+  /**
+   * Modify the reach cap time of a CapStrategy, which overrides the reach cap time of the fare
+   * policy for this strategy. the input new cap time should be in minutes, 0 to use the reach cap
+   * time of the fare policy again.
+   *
+   * @param strategyName the name of the strategy.
+   * @param newCapTime the new cap time for this strategy.
+   */
+  public void setReachCapTime(String strategyName, double newCapTime) {
+    CapStrategy strategy;
+    try {
+      strategy = (CapStrategy) transitSystem.getFareManager().getFarePolicy().get(strategyName);
+      strategy.setReachCapTime(Math.round(newCapTime * 60 * 1000));
+      transitSystem.getFareManager().publishFarePolicy();
+      setChanged();
+      notifyObservers(
+          strategyName
+              + " Fare Strategy is Changed!"
+              + System.lineSeparator()
+              + "Reach Cap Time is set to: "
+              + newCapTime
+              + " .");
+      /* serialize fare manager if reach cap time is changed */
+      SerializeManager.getInstance().writeObject();
+    } catch (Exception e) {
+      setChanged();
+      notifyObservers(strategyName + " Fare Strategy DOES NOT have Reach Cap Time!");
+    }
+  }
+
   /**
    * Modify the initial balance of new cards that will be created later.
    *
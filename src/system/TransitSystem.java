@@ -11,6 +11,7 @@ import java.io.Serializable;
 import java.util.HashMap;
 import java.util.Observable;
 import log.LogManager;
+import map.PathPool;
 import map.SystemMap;
 import ride.Ride;
 import serialize.SerializeManager;
@@ -35,9 +36,10 @@ public class TransitSystem extends Observable implements Serializable {
     SerializeManager.getInstance().setTransitSystem(this);
     this.systemMap = new SystemMap();
     this.cardholderManager = new CardholderManager();
-    this.cardManager = new CardManager();
+    this.cardManager = new CardManager(systemMap);
     this.fareManager =
         new FareManager(
+            systemMap,
             CapStrategy.getNewFareStrategyInstance(systemMap, Ride.TransitType.BUS),
             CapStrategy.getNewFareStrategyInstance(systemMap, Ride.TransitType.SUBWAY));
     this.adminUsers = new HashMap<>();
@@ -55,16 +57,71 @@ public class TransitSystem extends Observable implements Serializable {
       transitSystem = (TransitSystem) SerializeManager.getInstance().readObject();
       /* set up LogManager Observer for this transit system */
       transitSystem.setObservers(transitSystem);
+      /* managers read from a snapshot before they kept the system map share this one */
+      transitSystem.restoreSystemMap();
+      /* keep the reach cap time an admin user set on cards before a policy-wide one */
+      transitSystem.restoreReachCapTime();
+      /* share paths of rides read from a snapshot before interned paths */
+      transitSystem.internRidePaths();
       /* set up transit system for the Serialize Manager */
       /* if successfully de-serialized transit system */
       SerializeManager.getInstance().setTransitSystem(transitSystem);
     } catch (Exception e) {
-      /* create a new transit system if no serialization history */
+      /* create a new transit system if no serialization history, or it cannot be read and */
+      /* has been kept aside by SerializeManager */
       transitSystem = new TransitSystem();
     }
     return transitSystem;
   }
 
+  /** Set the system map of managers that have not kept one since they were read. */
+  private void restoreSystemMap() {
+    cardManager.restoreSystemMap(systemMap);
+    fareManager.restoreSystemMap(systemMap);
+  }
+
+  /**
+   * Move the reach cap time of cards read from a snapshot before a policy-wide reach cap time into
+   * the fare manager. An admin user set it on every card there was, so the first card created has
+   * the latest one set.
+   */
+  private void restoreReachCapTime() {
+    Card firstCard = null;
+    for (Card card : cardManager.getCardPool().values()) {
+      if (firstCard == null
+          || Integer.parseInt(card.getCardId()) < Integer.parseInt(firstCard.getCardId())) {
+        firstCard = card;
+      }
+    }
+    long reachCapTime = 0;
+    for (Card card : cardManager.getCardPool().values()) {
+      long snapshotReachCapTime = card.getRideRecords().takeSnapshotReachCapTime();
+      if (card == firstCard) {
+        reachCapTime = snapshotReachCapTime;
+      }
+    }
+    if (reachCapTime > 0) {
+      fareManager.restoreReachCapTime(reachCapTime);
+    }
+  }
+
+  /**
+   * Intern the paths of all rides that are not interned yet in the path pool of system map. A
+   * station/stop on such a path that was removed before the snapshot was written is given a new
+   * id first, so it is interned as itself.
+   */
+  private void internRidePaths() {
+    PathPool pathPool = systemMap.getPathPool();
+    for (Card card : cardManager.getCardPool().values()) {
+      for (Ride ride : card.getRideRecords().getAllRides()) {
+        if (ride.getRidePath() == null && ride.getPath() != null) {
+          systemMap.assignMissingIds(ride.getPath());
+        }
+        ride.internPath(pathPool);
+      }
+    }
+  }
+
   private void setObservers(TransitSystem transitSystem) {
     LogManager logManager = LogManager.getInstance();
     transitSystem.addObserver(logManager);